@@ -0,0 +1,403 @@
+
+package subscriptionmanager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The Benchmarks class measures the hot paths of the program on a file of
+ * synthetic subscriptions, so a change can be checked for a regression:
+ * <ul>
+ * <li>parse - reading the file with the SubscriptionParser into a
+ * SubscriptionStore, as Summary.loadFile() does for a small file.</li>
+ * <li>parse-mapped - reading the file with the MappedSubscriptionLoader, as
+ * Summary.loadFile() does for a large file.</li>
+ * <li>price - Subscription.calculateCost(), used by setTotalCost().</li>
+ * <li>summary - updating a new SummaryCube with the store and reading the
+ * overall SummaryReport, as Summary.calculateSummary() does.</li>
+ * <li>month-summary - the same with the report of a month, as
+ * MonthSummary.calculateSummary() does.</li>
+ * <li>search - the CustomerIndex search of SearchSubscription for a set of
+ * partial customer names.</li>
+ * </ul>
+ * Each benchmark is run on 1 thread and then on each of the thread counts
+ * given, every thread calling the benchmark for the length of an iteration.
+ * A number of warm up iterations are run and discarded before the measured
+ * iterations. The throughput is reported in the unit of the benchmark per
+ * second, rows, prices or searches, with the scaling from a single thread.
+ * The bytes allocated by every thread of the JVM during the measured
+ * iterations are read from the ThreadMXBean, and reported as an allocation
+ * rate and as bytes per operation, with the number of garbage collections.
+ * <p>
+ * The options are:
+ * <pre>
+ * --rows 1000000        rows of the synthetic file, from 10K to 100M
+ * --file path           file to read rather than a synthetic file
+ * --threads 1,2,4       thread counts to run each benchmark with
+ * --warmup 3            warm up iterations
+ * --iterations 5        measured iterations
+ * --time 1000           milliseconds of each iteration
+ * --only parse,search   benchmarks to run, every benchmark by default
+ * </pre>
+ * The synthetic file is written once to build/bench and kept for the next
+ * run with the same number of rows. The benchmarks are run from Ant with
+ * <pre>ant bench -Dbench.args="--rows 100000 --threads 1,2"</pre>
+ * and a file of 100M rows needs a larger heap, given with bench.jvmargs.
+ *
+ * @see DatasetGenerator
+ */
+public class Benchmarks {
+
+    private static final long SEED = 42;
+    private static final int PRICES = 1024;
+    private static final String[] SEARCH_TERMS = {"smith", "J Sm", "son",
+        "a", "ck", "Robbins", "T W", "Clarke", "ar", "x"};
+
+    private static volatile long sink;
+
+    private final Map<String, Benchmark> benchmarks = new LinkedHashMap<>();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private int warmup = 3;
+    private int iterations = 5;
+    private long iterationMillis = 1000;
+
+    /**
+     * An operation measured by the Benchmarks, called by several threads at
+     * once.
+     */
+    private interface Benchmark {
+
+        /**
+         * Runs the operation once.
+         *
+         * @return long number of units done, i.e. rows read.
+         * @throws Exception if the operation fails.
+         */
+        long run() throws Exception;
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args String[] options of the run.
+     * @throws Exception if the file can not be written or read, or a
+     *     benchmark fails.
+     */
+    public static void main(String[] args) throws Exception {
+
+        Map<String, String> options = new LinkedHashMap<>();
+        for(int i = 0; i + 1 < args.length; i += 2) {
+            if(!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option "
+                        + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        if(args.length % 2 != 0) {
+            throw new IllegalArgumentException("No value for "
+                    + args[args.length - 1]);
+        }
+
+        long rows = Long.parseLong(options.getOrDefault("rows", "1000000"));
+        File file;
+        if(options.containsKey("file")) {
+            file = new File(options.get("file"));
+        } else {
+            File dir = new File("build", "bench");
+            dir.mkdirs();
+            file = new File(dir, "synthetic-" + rows + ".txt");
+            if(!file.exists()) {
+                System.out.println("Writing " + rows + " rows to " + file);
+                File partial = new File(dir, file.getName() + ".tmp");
+                new DatasetGenerator(SEED).write(partial, rows);
+                if(!partial.renameTo(file)) {
+                    throw new IOException("Unable to rename " + partial);
+                }
+            }
+        }
+
+        Benchmarks bench = new Benchmarks();
+        bench.warmup = Integer.parseInt(options.getOrDefault("warmup", "3"));
+        bench.iterations = Integer.parseInt(options.getOrDefault(
+                "iterations", "5"));
+        bench.iterationMillis = Long.parseLong(options.getOrDefault("time",
+                "1000"));
+        bench.setUp(file);
+
+        List<String> names = new ArrayList<>(bench.benchmarks.keySet());
+        if(options.containsKey("only")) {
+            names = Arrays.asList(options.get("only").split(","));
+        }
+        List<Integer> threadCounts = new ArrayList<>();
+        threadCounts.add(1);
+        for(String count: options.getOrDefault("threads", "1,2,4")
+                .split(",")) {
+            int threadCount = Integer.parseInt(count.trim());
+            if(!threadCounts.contains(threadCount)) {
+                threadCounts.add(threadCount);
+            }
+        }
+
+        System.out.println("File: " + file + ", " + file.length()
+                + " bytes, processors: "
+                + Runtime.getRuntime().availableProcessors());
+        System.out.println(String.format("%n%-14s %7s %16s %-9s %8s %12s "
+                + "%12s %6s", "Benchmark", "Threads", "Ops/s", "Unit",
+                "Scaling", "Alloc MB/s", "Bytes/op", "GCs"));
+        for(String name: names) {
+            Benchmark benchmark = bench.benchmarks.get(name.trim());
+            if(benchmark == null) {
+                throw new IllegalArgumentException("Unknown benchmark "
+                        + name);
+            }
+            double single = 0;
+            for(int threadCount: threadCounts) {
+                Result result = bench.measure(benchmark, threadCount);
+                if(threadCount == 1) {
+                    single = result.opsPerSecond();
+                }
+                System.out.println(String.format("%-14s %7d %,16.0f %-9s "
+                        + "%7.2fx %,12.1f %,12.1f %6d", name.trim(),
+                        threadCount, result.opsPerSecond(),
+                        bench.unit(name.trim()), result.opsPerSecond()
+                                / single, result.allocRate(),
+                        result.bytesPerOp(), result.collections));
+            }
+        }
+    }
+
+    /**
+     * Reads the file once for the benchmarks which need a store, and defines
+     * each benchmark.
+     */
+    private void setUp(File file) throws IOException {
+
+        SubscriptionParser.RowHandler errors = errorHandler();
+        SubscriptionStore store = new SubscriptionStore();
+        new MappedSubscriptionLoader().load(file, store, errors);
+        CustomerIndex index = new CustomerIndex();
+        index.update(store);
+
+        Random random = new Random(SEED);
+        PackageType[] packages = new PackageType[PRICES];
+        Duration[] durations = new Duration[PRICES];
+        int[] discounts = new int[PRICES];
+        PaymentType[] payments = new PaymentType[PRICES];
+        for(int i = 0; i < PRICES; i++) {
+            packages[i] = PackageType.values()[random.nextInt(
+                    PackageType.values().length)];
+            durations[i] = Duration.values()[random.nextInt(
+                    Duration.values().length)];
+            discounts[i] = random.nextInt(10);
+            payments[i] = PaymentType.values()[random.nextInt(
+                    PaymentType.values().length)];
+        }
+
+        benchmarks.put("parse", () -> {
+            SubscriptionStore parsed = new SubscriptionStore();
+            try(InputStream in = new FileInputStream(file)) {
+                new SubscriptionParser().parse(in,
+                        new SubscriptionParser.RowHandler() {
+                    @Override
+                    public void row(SubscriptionParser.ParsedRow row) {
+                        parsed.add(row);
+                    }
+
+                    @Override
+                    public void malformed(long line, int column,
+                            String reason) {
+                    }
+                });
+            }
+            return parsed.size();
+        });
+        benchmarks.put("parse-mapped", () -> {
+            SubscriptionStore parsed = new SubscriptionStore();
+            new MappedSubscriptionLoader().load(file, parsed, errors);
+            return parsed.size();
+        });
+        benchmarks.put("price", () -> {
+            long total = 0;
+            for(int i = 0; i < PRICES; i++) {
+                total += Subscription.calculateCost(packages[i], durations[i],
+                        discounts[i], payments[i]);
+            }
+            sink += total;
+            return PRICES;
+        });
+        benchmarks.put("summary", () -> {
+            SummaryCube cube = new SummaryCube();
+            cube.update(store);
+            sink += SummaryReport.overall(cube).getTotalSubs();
+            return store.size();
+        });
+        int[] month = {0};
+        benchmarks.put("month-summary", () -> {
+            SummaryCube cube = new SummaryCube();
+            cube.update(store);
+            sink += SummaryReport.month(cube, 0, month[0]++ % 12)
+                    .getTotalSubs();
+            return store.size();
+        });
+        benchmarks.put("search", () -> {
+            long matches = 0;
+            for(String term: SEARCH_TERMS) {
+                matches += index.search(term).length;
+            }
+            sink += matches;
+            return SEARCH_TERMS.length;
+        });
+    }
+
+    private String unit(String name) {
+        switch(name) {
+            case "price":
+                return "prices";
+            case "search":
+                return "searches";
+            default:
+                return "rows";
+        }
+    }
+
+    private static SubscriptionParser.RowHandler errorHandler() {
+        return new SubscriptionParser.RowHandler() {
+            @Override
+            public void row(SubscriptionParser.ParsedRow row) {
+            }
+
+            @Override
+            public void malformed(long line, int column, String reason) {
+            }
+        };
+    }
+
+    /**
+     * Runs the warm up and measured iterations of a benchmark on a number of
+     * threads, the threads are kept for every iteration so the bytes they
+     * allocate can be read after each iteration.
+     */
+    private Result measure(Benchmark benchmark, int threadCount)
+            throws InterruptedException, ExecutionException {
+
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+        try {
+            for(int i = 0; i < warmup; i++) {
+                iteration(pool, benchmark, threadCount);
+            }
+            Result total = new Result();
+            long allocatedBefore = allocatedBytes();
+            long collectionsBefore = collections();
+            for(int i = 0; i < iterations; i++) {
+                Result result = iteration(pool, benchmark, threadCount);
+                total.ops += result.ops;
+                total.nanos += result.nanos;
+            }
+            total.allocated = allocatedBytes() - allocatedBefore;
+            total.collections = collections() - collectionsBefore;
+            return total;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Starts every thread at once and runs the benchmark on each until the
+     * iteration time has passed, each thread finishing its last operation.
+     */
+    private Result iteration(ExecutorService pool, Benchmark benchmark,
+            int threadCount) throws InterruptedException, ExecutionException {
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> futures = new ArrayList<>();
+        for(int t = 0; t < threadCount; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                long deadline = System.nanoTime() + iterationMillis
+                        * 1000000;
+                long ops = 0;
+                do {
+                    ops += benchmark.run();
+                } while(System.nanoTime() < deadline);
+                return ops;
+            }));
+        }
+        Result result = new Result();
+        long began = System.nanoTime();
+        start.countDown();
+        for(Future<Long> future: futures) {
+            result.ops += future.get();
+        }
+        result.nanos = System.nanoTime() - began;
+        return result;
+    }
+
+    /**
+     * Gets the bytes allocated by every live thread, or 0 if the JVM does
+     * not count the bytes allocated.
+     */
+    private long allocatedBytes() {
+        if(!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return 0;
+        }
+        com.sun.management.ThreadMXBean allocations =
+                (com.sun.management.ThreadMXBean) threads;
+        long total = 0;
+        for(long bytes: allocations.getThreadAllocatedBytes(
+                threads.getAllThreadIds())) {
+            if(bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    private static long collections() {
+        long total = 0;
+        for(GarbageCollectorMXBean gc:
+                ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    /**
+     * The operations done, time taken, and bytes allocated by the measured
+     * iterations of a benchmark.
+     */
+    private static final class Result {
+
+        private long ops;
+        private long nanos;
+        private long allocated;
+        private long collections;
+
+        private double opsPerSecond() {
+            return ops * 1e9 / nanos;
+        }
+
+        private double allocRate() {
+            return allocated * 1e9 / nanos / (1 << 20);
+        }
+
+        private double bytesPerOp() {
+            return (double) allocated / ops;
+        }
+    }
+}
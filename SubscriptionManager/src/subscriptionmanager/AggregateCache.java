@@ -0,0 +1,325 @@
+
+package subscriptionmanager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * The AggregateCache class saves the SummaryCube of a subscriptions file next
+ * to it, i.e. current.txt.agg, so the summaries of a file which has not
+ * changed are given without reading the file at all.
+ * <p>
+ * The cache records the size and last modified time of the file when it was
+ * summarised, and a CRC32 of the first and of the last 64KB of it. When the
+ * file has the same size, time and checksums the cube is loaded from the
+ * cache. When the file has grown and the bytes summarised before still have
+ * the same checksums and end with a line separator, the file is taken to have
+ * been appended to, as subscriptions.txt is, and only the lines after the old
+ * size are parsed and added to the cube. Any other change means the whole
+ * file is summarised again. The file is read in blocks and each row is added
+ * straight to the cube, so no SubscriptionStore is built. A file of 16MB or
+ * more which is summarised from the start is mapped and parsed in parallel by
+ * the MappedSubscriptionLoader instead, as Summary reads such files, a
+ * cube for each chunk being merged into the cube of the file.
+ * <p>
+ * Each load is recorded as a FileLoad event noting whether the cache was
+ * used, and any lines read as an Aggregation event and in the aggregation
+ * time of the Metrics, as a file loaded into a store and summarised is.
+ * <p>
+ * The format is big endian and laid out as:
+ * <pre>
+ * header  int magic, int version, long size, long modified, long lines,
+ *         long head CRC32, long tail CRC32, boolean ends with a line separator
+ * cube    the SummaryCube, written by SummaryCube.write()
+ * </pre>
+ *
+ * @see SummaryCube
+ * @see Summary#readFile()
+ * @see SubscriptionSnapshot
+ */
+public class AggregateCache {
+
+    public static final String EXTENSION = ".agg";
+
+    private static final int MAGIC = 0x53554241;
+    private static final int VERSION = 1;
+    private static final int SAMPLE_SIZE = 1 << 16;
+    private static final int BLOCK_SIZE = 1 << 22;
+    private static final long MAPPED_FILE_SIZE = 1L << 24;
+
+    /**
+     * Private constructor as the class only has static methods.
+     */
+    private AggregateCache() {
+    }
+
+    /**
+     * Gets the cache file for a subscription file.
+     *
+     * @param source File of subscriptions in the tabbed format.
+     * @return File the cache is saved to.
+     */
+    public static File cacheFile(File source) {
+        return new File(source.getPath() + EXTENSION);
+    }
+
+    /**
+     * Gets the summary of every subscription in a file, from the cache if the
+     * file has not changed, adding only the new lines if it has been appended
+     * to, otherwise reading the whole file. The cache is saved again whenever
+     * any of the file was read.
+     *
+     * @param source File of subscriptions in the tabbed format.
+     * @param messages PrintStream the skipped lines and cache errors are
+     *     reported to.
+     * @return SummaryCube of the subscriptions in the file.
+     * @throws FileNotFoundException if the file does not exist.
+     * @throws IOException if the file can not be read.
+     */
+    public static SummaryCube load(File source, PrintStream messages)
+            throws IOException {
+
+        if(!source.isFile()) {
+            throw new FileNotFoundException(source.getPath());
+        }
+        long start = Metrics.start();
+        PipelineEvents.FileLoad event = new PipelineEvents.FileLoad();
+        event.begin();
+        event.file = source.getPath();
+        File cache = cacheFile(source);
+        Entry cached = read(cache);
+        try(FileChannel channel = FileChannel.open(source.toPath(),
+                StandardOpenOption.READ)) {
+
+            long size = channel.size();
+            long modified = source.lastModified();
+            event.bytes = size;
+            Entry entry;
+            if(cached != null && cached.size <= size
+                    && cached.headCrc == crc(channel, 0, Math.min(
+                            SAMPLE_SIZE, cached.size))
+                    && cached.tailCrc == crc(channel, Math.max(0,
+                            cached.size - SAMPLE_SIZE), cached.size)) {
+                if(cached.size == size && cached.modified == modified) {
+                    event.cached = true;
+                    event.rows = cached.cube.getCount();
+                    event.commit();
+                    return cached.cube;
+                }
+                if(cached.size < size && cached.endsWithLine) {
+                    entry = cached;
+                } else {
+                    entry = new Entry();
+                }
+            } else {
+                entry = new Entry();
+            }
+
+            long before = entry.cube.getCount();
+            event.tail = entry == cached;
+            long aggregationStart = Metrics.start();
+            PipelineEvents.Aggregation aggregation =
+                    new PipelineEvents.Aggregation();
+            aggregation.begin();
+            aggregate(channel, entry, size, messages, aggregation);
+            aggregation.rows = entry.cube.getCount() - before;
+            aggregation.storeRows = entry.cube.getCount();
+            aggregation.commit();
+            Metrics.time(Metrics.AGGREGATION, aggregationStart);
+            entry.modified = modified;
+            entry.headCrc = crc(channel, 0, Math.min(SAMPLE_SIZE, size));
+            entry.tailCrc = crc(channel, Math.max(0, size - SAMPLE_SIZE),
+                    size);
+            Metrics.recordLoad(start, entry.cube.getCount() - before);
+            event.rows = entry.cube.getCount();
+            event.commit();
+            try {
+                write(entry, cache);
+            } catch(IOException e) {
+                messages.println("\nUnable to save summary of file.");
+            }
+            return entry.cube;
+        }
+    }
+
+    /**
+     * Adds the lines of the file from the size of the entry up to a new size
+     * to the cube of the entry, a final line without a line separator is
+     * added as it is. A large file summarised from the start is parsed in
+     * parallel, which is noted on the event.
+     */
+    private static void aggregate(FileChannel channel, Entry entry,
+            long size, PrintStream messages,
+            PipelineEvents.Aggregation event) throws IOException {
+
+        SummaryCube cube = entry.cube;
+        long firstLine = entry.lines + 1;
+        SubscriptionParser.RowHandler handler =
+                new SubscriptionParser.RowHandler() {
+            @Override
+            public void row(SubscriptionParser.ParsedRow row) {
+                cube.add(row.getEpochDay(), row.getPackageType().ordinal(),
+                        row.getDuration().ordinal(),
+                        row.getPaymentType().ordinal(), row.getTotalCost());
+            }
+
+            @Override
+            public void malformed(long line, int column, String reason) {
+                messages.println("\nSkipping line " + line + ", column "
+                        + column + ": " + reason + ".");
+            }
+        };
+        if(entry.size == 0 && size >= MAPPED_FILE_SIZE) {
+            event.parallel = true;
+            firstLine += new MappedSubscriptionLoader().aggregate(channel,
+                    size, cube, handler);
+        } else {
+            firstLine += aggregate(channel, entry.size, size, firstLine,
+                    handler);
+        }
+        entry.lines = firstLine - 1;
+        entry.size = size;
+        if(size > 0) {
+            ByteBuffer lastByte = ByteBuffer.allocate(1);
+            channel.read(lastByte, size - 1);
+            entry.endsWithLine = lastByte.get(0) == '\n';
+        }
+    }
+
+    /**
+     * Parses the lines of the file between two positions in blocks, on the
+     * calling thread.
+     *
+     * @return long number of lines read.
+     */
+    private static long aggregate(FileChannel channel, long from, long size,
+            long firstLine, SubscriptionParser.RowHandler handler)
+            throws IOException {
+
+        SubscriptionParser parser = new SubscriptionParser();
+        ByteBuffer buf = ByteBuffer.allocate(BLOCK_SIZE);
+        long line = firstLine;
+        long position = from;
+        while(position < size) {
+            int limit = (int) Math.min(buf.capacity(), size - position
+                    + buf.position());
+            buf.limit(limit);
+            while(buf.hasRemaining()) {
+                if(channel.read(buf, position + buf.position()) < 0) {
+                    throw new IOException("File shorter than expected");
+                }
+            }
+            int filled = buf.position();
+            boolean last = position + filled == size;
+            int end = filled;
+            if(!last) {
+                while(end > 0 && buf.get(end - 1) != '\n') {
+                    end--;
+                }
+                if(end == 0) {
+                    ByteBuffer larger = ByteBuffer.allocate(buf.capacity()
+                            * 2);
+                    buf.flip();
+                    larger.put(buf);
+                    buf = larger;
+                    continue;
+                }
+            }
+            line += parser.parse(buf, 0, end, line, handler);
+            position += end;
+            buf.clear();
+        }
+        return line - firstLine;
+    }
+
+    /**
+     * Calculates the CRC32 of the bytes of a file between two positions.
+     */
+    private static long crc(FileChannel channel, long from, long to)
+            throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buf = ByteBuffer.allocate((int) (to - from));
+        while(buf.hasRemaining()) {
+            if(channel.read(buf, from + buf.position()) < 0) {
+                break;
+            }
+        }
+        buf.flip();
+        crc.update(buf);
+        return crc.getValue();
+    }
+
+    /**
+     * Reads a cache file, an entry which does not exist or can not be read
+     * is treated as no entry, so the file is summarised again.
+     */
+    private static Entry read(File cache) {
+        if(!cache.isFile()) {
+            return null;
+        }
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(cache)))) {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            Entry entry = new Entry();
+            entry.size = in.readLong();
+            entry.modified = in.readLong();
+            entry.lines = in.readLong();
+            entry.headCrc = in.readLong();
+            entry.tailCrc = in.readLong();
+            entry.endsWithLine = in.readBoolean();
+            entry.cube = SummaryCube.read(in);
+            return entry;
+        } catch(IOException e) {
+            return null;
+        }
+    }
+
+    private static void write(Entry entry, File cache) throws IOException {
+        File temp = new File(cache.getPath() + ".tmp");
+        try(DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(entry.size);
+            out.writeLong(entry.modified);
+            out.writeLong(entry.lines);
+            out.writeLong(entry.headCrc);
+            out.writeLong(entry.tailCrc);
+            out.writeBoolean(entry.endsWithLine);
+            entry.cube.write(out);
+        }
+        if(cache.exists() && !cache.delete() || !temp.renameTo(cache)) {
+            temp.delete();
+            throw new IOException("Unable to replace " + cache);
+        }
+    }
+
+    /**
+     * The summary of a file and the fingerprint of the file when it was
+     * summarised.
+     */
+    private static final class Entry {
+
+        private long size;
+        private long modified;
+        private long lines;
+        private long headCrc;
+        private long tailCrc;
+        private boolean endsWithLine;
+        private SummaryCube cube = new SummaryCube();
+    }
+}
@@ -0,0 +1,750 @@
+
+package subscriptionmanager;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The BatchMode class runs summaries and searches from the command line
+ * without requesting anything from the user, so they can be scripted.
+ * A query is a command followed by its options:
+ * <pre>
+ * summary [--year 2020] [--month Jul]
+ * month --month Jul [--year 2020]
+ * search --customer Smith [--limit 100] [--offset 0] [--style table]
+ * top --by customers|subscriptions|codes [--limit 10] [--month Jul]
+ *     [--year 2020]
+ * range --range 2020-01-01..2020-03-31
+ * range --last 30
+ * generate --output big.txt --rows 100000000 [--seed 1]
+ * follow [--month Jul] [--year 2020] [--interval 5] [--updates 10]
+ * </pre>
+ * A single query is given as the program arguments, i.e.
+ * <pre>java -jar SubscriptionManager.jar summary --file current.txt</pre>
+ * or a file of queries, one per line, is given with --queries. Any of --file,
+ * the file summarised, current.txt by default, --format, text or json, and
+ * --parallel, to aggregate in parallel, given with the program arguments
+ * apply to every query unless the query sets them itself. Values with spaces
+ * can be written in double quotes. Each command only takes the options listed
+ * for it and these three, any other option fails the query, so a misspelt
+ * option is reported rather than ignored. A summary given a month is the
+ * summary of that month, as the month command.
+ * <p>
+ * Each file is read once and kept with its SummaryCube, CustomerIndex and
+ * DateIndex for every query of the batch. The results are written to the
+ * standard output through a single buffered writer, the json format writes
+ * one JSON object per query on a line of its own. Any skipped lines and
+ * invalid queries are reported to the standard error, an invalid query does
+ * not stop the batch.
+ * <p>
+ * The search command writes the subscriptions found with a ResultRenderer,
+ * as the tabbed lines of the subscription files unless --style sets card or
+ * table, or as JSON with the json format. --offset and --limit give a page
+ * of the results, the JSON has the offset of the next page. The rows are
+ * written to the output as they are rendered, inside the JSON object of the
+ * query, rather than the whole result being held first.
+ * <p>
+ * The range command summarises the subscriptions between two dates, or of
+ * the last days given up to the latest subscription in the file, with the
+ * DateIndex.
+ * <p>
+ * The top command ranks the customers by spend, the subscriptions by price
+ * or the discount codes by use with a RankingQuery, of every subscription or
+ * of the month or year given.
+ * <p>
+ * The generate command writes a file of made up subscriptions with the
+ * DatasetGenerator, for load testing the other commands. The follow command
+ * follows a file, subscriptions.txt unless --file is given, with a
+ * SubscriptionTailer and writes the summary again each time subscriptions are
+ * appended to it, for as many updates as given or until it is stopped.
+ *
+ * @see SubscriptionManager#main(String[])
+ * @see SummaryReport
+ * @see ResultRenderer
+ * @see RankingQuery
+ * @see DatasetGenerator
+ * @see SubscriptionTailer
+ */
+public class BatchMode {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int DEFAULT_LIMIT = Integer.MAX_VALUE;
+    private static final int DEFAULT_TOP = 10;
+
+    private final Map<String, Dataset> datasets = new HashMap<>();
+    private final Writer out;
+
+    /**
+     * The constructor takes the writer the results are written to.
+     *
+     * @param out Writer of the results.
+     */
+    public BatchMode(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Runs the query or queries given as program arguments and writes the
+     * results to the standard output.
+     *
+     * @param args String[] the command line arguments.
+     * @return int exit status, 0 if every query succeeded.
+     */
+    public static int run(String[] args) {
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out,
+                StandardCharsets.UTF_8), BUFFER_SIZE);
+        try {
+            int failed = new BatchMode(out).runArguments(Arrays.asList(args));
+            out.flush();
+            return failed == 0 ? 0 : 1;
+        } catch(IllegalArgumentException e) {
+            System.err.println("Error, " + e.getMessage());
+            System.err.println(usage());
+            return 2;
+        } catch(IOException e) {
+            System.err.println("Error writing results, " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Runs the queries given by the program arguments.
+     *
+     * @param args List of the command line arguments.
+     * @return int number of queries which failed.
+     * @throws IOException if the results can not be written.
+     * @throws IllegalArgumentException if the arguments are invalid.
+     */
+    public int runArguments(List<String> args) throws IOException {
+
+        Query defaults = Query.parse(args);
+        String queries = defaults.options.remove("queries");
+        if(queries == null) {
+            if(defaults.command == null) {
+                throw new IllegalArgumentException("no command given");
+            }
+            return runQuery(defaults, null) ? 0 : 1;
+        }
+        if(defaults.command != null) {
+            throw new IllegalArgumentException("unexpected "
+                    + defaults.command + " with --queries");
+        }
+        for(String name: defaults.options.keySet()) {
+            if(!Query.COMMON.contains(name)) {
+                throw new IllegalArgumentException("--" + name + " can not "
+                        + "be given for every query, only --file, --format "
+                        + "and --parallel");
+            }
+        }
+
+        int failed = 0;
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(queries), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if(line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                Query query;
+                try {
+                    query = Query.parse(tokenize(line));
+                } catch(IllegalArgumentException e) {
+                    System.err.println("Error in query " + lineNumber + ", "
+                            + e.getMessage());
+                    failed++;
+                    continue;
+                }
+                for(Map.Entry<String, String> option:
+                        defaults.options.entrySet()) {
+                    query.options.putIfAbsent(option.getKey(),
+                            option.getValue());
+                }
+                if(!runQuery(query, line)) {
+                    failed++;
+                }
+            }
+        } catch(FileNotFoundException e) {
+            throw new IllegalArgumentException("query file not found: "
+                    + queries);
+        }
+        return failed;
+    }
+
+    /**
+     * Runs a single query and writes its result.
+     *
+     * @return boolean true if the query succeeded.
+     */
+    private boolean runQuery(Query query, String text) throws IOException {
+
+        String format = query.options.getOrDefault("format", "text");
+        if(!format.equals("text") && !format.equals("json")) {
+            System.err.println("Error in query " + describe(query, text)
+                    + ", unknown format " + format);
+            return false;
+        }
+        boolean json = format.equals("json");
+        StringBuilder result = new StringBuilder();
+        boolean written = false;
+        try {
+            if(query.command == null) {
+                throw new IllegalArgumentException("no command given");
+            }
+            query.checkOptions();
+            if(query.command.equals("generate")) {
+                generate(query, json, result);
+            } else if(query.command.equals("follow")) {
+                follow(query, text, json, result);
+            } else if(query.command.equals("search")) {
+                search(query, text, json);
+                written = true;
+            } else {
+                query(query, json, result);
+            }
+        } catch(UncheckedIOException e) {
+            throw e.getCause();
+        } catch(IllegalArgumentException e) {
+            System.err.println("Error in query " + describe(query, text)
+                    + ", " + e.getMessage());
+            return false;
+        } catch(IOException e) {
+            if(query.command.equals("generate")) {
+                System.err.println("Error writing " + query.options.get(
+                        "output") + ", " + e.getMessage());
+            } else {
+                System.err.println("Error reading " + query.options
+                        .getOrDefault("file", "current.txt") + ", "
+                        + e.getMessage());
+            }
+            return false;
+        }
+        if(!written) {
+            writeResult(query, text, json, result);
+        }
+        return true;
+    }
+
+    /**
+     * Writes the result of a query, the json format writes it on a line of
+     * its own with the query.
+     */
+    private void writeResult(Query query, String text, boolean json,
+            CharSequence result) throws IOException {
+        beginResult(query, text, json);
+        out.append(result);
+        endResult(json);
+    }
+
+    /**
+     * Writes what comes before the result of a query, the query itself, so a
+     * result can be written straight to the output after it.
+     */
+    private void beginResult(Query query, String text, boolean json)
+            throws IOException {
+        if(json) {
+            StringBuilder line = new StringBuilder("{\"query\":");
+            Json.appendString(line, describe(query, text));
+            out.append(line).append(",\"result\":");
+        } else {
+            out.append("# ").append(describe(query, text))
+                    .append(System.lineSeparator());
+        }
+    }
+
+    /**
+     * Writes what comes after the result of a query.
+     */
+    private void endResult(boolean json) throws IOException {
+        if(json) {
+            out.append('}');
+        }
+        out.append(System.lineSeparator());
+    }
+
+    /**
+     * Runs a query of the subscriptions of a file.
+     */
+    private void query(Query query, boolean json, StringBuilder result)
+            throws IOException {
+        Dataset data = dataset(query.options.getOrDefault("file",
+                "current.txt"), query.options.containsKey("parallel"));
+        switch(query.command) {
+            case "summary":
+                summary(data, query, json, result);
+                break;
+            case "month":
+                month(data, query, json, result);
+                break;
+            case "range":
+                range(data, query, json, result);
+                break;
+            case "top":
+                top(data, query, json, result);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown command "
+                        + query.command);
+        }
+    }
+
+    /**
+     * Writes a file of generated subscriptions, the file summarised is not
+     * read.
+     */
+    private void generate(Query query, boolean json, StringBuilder result)
+            throws IOException {
+        String output = query.options.get("output");
+        if(output == null || output.isEmpty()) {
+            throw new IllegalArgumentException("--output must be given");
+        }
+        String rowsOption = query.options.get("rows");
+        long rows;
+        long seed;
+        try {
+            rows = Long.parseLong(rowsOption);
+            seed = Long.parseLong(query.options.getOrDefault("seed", "1"));
+        } catch(NumberFormatException e) {
+            throw new IllegalArgumentException("--rows must be a number and "
+                    + "--seed a number if given");
+        }
+        if(rows < 0) {
+            throw new IllegalArgumentException("invalid --rows " + rows);
+        }
+        int firstYear = intOption(query, "first-year", 2019);
+        int lastYear = intOption(query, "last-year", Math.max(firstYear,
+                2021));
+        int threads = intOption(query, "threads",
+                Runtime.getRuntime().availableProcessors());
+        DatasetGenerator generator = new DatasetGenerator(seed, firstYear,
+                lastYear, threads);
+        datasets.remove(output);
+        long bytes = generator.write(new File(output), rows);
+        if(json) {
+            result.append("{\"file\":");
+            Json.appendString(result, output);
+            result.append(",\"rows\":").append(rows).append(",\"bytes\":")
+                    .append(bytes).append(",\"seed\":").append(seed)
+                    .append('}');
+        } else {
+            result.append("Subscriptions written: ").append(rows)
+                    .append(System.lineSeparator()).append("Bytes written: ")
+                    .append(bytes).append(System.lineSeparator())
+                    .append("Seed: ").append(seed)
+                    .append(System.lineSeparator());
+        }
+    }
+
+    /**
+     * Follows a file with a SubscriptionTailer, writing the summary, or the
+     * summary of a month, when the query starts and again each time
+     * subscriptions are appended to the file. The results are flushed as they
+     * are written. The query runs until the number of updates given has been
+     * written, or until the program is stopped, the last update is the result
+     * of the query.
+     */
+    private void follow(Query query, String text, boolean json,
+            StringBuilder result) throws IOException {
+
+        int monthIndex = query.options.containsKey("month")
+                ? monthIndex(query) : SummaryCube.ALL;
+        int year = intOption(query, "year", 0);
+        int interval = intOption(query, "interval", 5);
+        int updates = intOption(query, "updates", 0);
+        SubscriptionTailer tailer = new SubscriptionTailer(new File(
+                query.options.getOrDefault("file", "subscriptions.txt")));
+        Semaphore changed = new Semaphore(0);
+        tailer.setListener(changed::release);
+        tailer.poll();
+        tailer.start(Math.max(1, interval) * 1000L);
+        try {
+            for(int update = 1; ; update++) {
+                StringBuilder report = update == updates ? result
+                        : new StringBuilder();
+                SummaryReport figures = monthIndex == SummaryCube.ALL
+                        ? tailer.overall() : tailer.month(year, monthIndex);
+                if(json) {
+                    report.append("{\"rows\":").append(tailer.getRows())
+                            .append(",\"summary\":");
+                    figures.appendJson(report);
+                    report.append('}');
+                } else {
+                    report.append("Subscriptions read: ").append(
+                            tailer.getRows()).append(System.lineSeparator());
+                    figures.appendText(report);
+                }
+                if(update == updates) {
+                    break;
+                }
+                writeResult(query, text, json, report);
+                out.flush();
+                changed.acquire();
+                changed.drainPermits();
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            tailer.close();
+        }
+    }
+
+    private void summary(Dataset data, Query query, boolean json,
+            StringBuilder result) {
+        if(query.options.containsKey("month")) {
+            month(data, query, json, result);
+            return;
+        }
+        SummaryReport report;
+        int year = intOption(query, "year", 0);
+        if(year == 0) {
+            report = SummaryReport.overall(data.cube());
+        } else {
+            SummaryCube yearCube = data.dates().summarise(
+                    EpochDays.of(year, 1, 1), EpochDays.of(year, 12, 31));
+            report = SummaryReport.overall(yearCube);
+        }
+        appendReport(report, json, result);
+    }
+
+    private void month(Dataset data, Query query, boolean json,
+            StringBuilder result) {
+        appendReport(SummaryReport.month(data.cube(), intOption(query,
+                "year", 0), monthIndex(query)), json, result);
+    }
+
+    private static int monthIndex(Query query) {
+        String month = query.options.get("month");
+        for(int i = 0; month != null && i < EpochDays.SHORT_MONTHS.length;
+                i++) {
+            if(EpochDays.SHORT_MONTHS[i].equalsIgnoreCase(month)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("--month must be a short month "
+                + "name, i.e. Jul");
+    }
+
+    /**
+     * Searches the customers and writes the subscriptions found straight to
+     * the output as they are rendered, so a search of millions of rows is
+     * never held as a whole. The query is checked and the search run before
+     * anything is written, an error in writing the output is thrown as an
+     * UncheckedIOException.
+     */
+    private void search(Query query, String text, boolean json)
+            throws IOException {
+        String customer = query.options.get("customer");
+        if(customer == null || customer.isEmpty()) {
+            throw new IllegalArgumentException("--customer must be given");
+        }
+        int limit = intOption(query, "limit", DEFAULT_LIMIT);
+        int offset = intOption(query, "offset", 0);
+        ResultRenderer renderer = ResultRenderer.forFormat(json ? "json"
+                : query.options.getOrDefault("style", "tsv"));
+        Dataset data = dataset(query.options.getOrDefault("file",
+                "current.txt"), query.options.containsKey("parallel"));
+        int[] rows = data.customers().search(customer);
+        try {
+            beginResult(query, text, json);
+            if(!json) {
+                out.append("Subscriptions found: ").append(String.valueOf(
+                        rows.length)).append(System.lineSeparator());
+            }
+            renderer.render(data.store, rows, offset, limit, out);
+            endResult(json);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void top(Dataset data, Query query, boolean json,
+            StringBuilder result) {
+        String by = query.options.get("by");
+        if(by == null) {
+            throw new IllegalArgumentException("--by must be given");
+        }
+        RankingQuery ranking = new RankingQuery(data.store);
+        ranking.setPeriod(intOption(query, "year", 0),
+                query.options.containsKey("month") ? monthIndex(query)
+                : SummaryCube.ALL);
+        ranking.setParallel(query.options.containsKey("parallel"));
+        RankingQuery.Ranking top = ranking.top(RankingQuery.By.parse(by),
+                intOption(query, "limit", DEFAULT_TOP));
+        if(json) {
+            top.appendJson(result);
+        } else {
+            top.appendText(result);
+        }
+    }
+
+    private void range(Dataset data, Query query, boolean json,
+            StringBuilder result) {
+        String range = query.options.get("range");
+        String last = query.options.get("last");
+        if((range == null) == (last == null)) {
+            throw new IllegalArgumentException("either --range or --last "
+                    + "must be given");
+        }
+        DateIndex dates = data.dates();
+        SummaryCube cube;
+        if(range != null) {
+            int[] days = DateIndex.parseRange(range);
+            cube = dates.summarise(days[0], days[1]);
+        } else {
+            int length = intOption(query, "last", 0);
+            if(length == 0) {
+                throw new IllegalArgumentException("invalid --last " + last);
+            }
+            cube = dates.window(dates.getLastDay(), length);
+        }
+        appendReport(SummaryReport.overall(cube), json, result);
+    }
+
+    private static void appendReport(SummaryReport report, boolean json,
+            StringBuilder result) {
+        if(json) {
+            report.appendJson(result);
+        } else {
+            report.appendText(result);
+        }
+    }
+
+    private static int intOption(Query query, String name, int defaultValue) {
+        String value = query.options.get(name);
+        if(value == null) {
+            return defaultValue;
+        }
+        try {
+            int number = Integer.parseInt(value);
+            if(number < 0) {
+                throw new NumberFormatException();
+            }
+            return number;
+        } catch(NumberFormatException e) {
+            throw new IllegalArgumentException("invalid --" + name + " "
+                    + value);
+        }
+    }
+
+    private static String describe(Query query, String text) {
+        return text != null ? text : query.toString();
+    }
+
+    /**
+     * Gets the dataset of a file, reading the file the first time it is used.
+     */
+    private Dataset dataset(String filename, boolean parallel)
+            throws IOException {
+        Dataset data = datasets.get(filename);
+        if(data == null) {
+            data = new Dataset(Summary.loadFile(new File(filename),
+                    System.err));
+            datasets.put(filename, data);
+        }
+        if(parallel) {
+            data.cube.setParallel(true);
+        }
+        return data;
+    }
+
+    /**
+     * Splits a query into words, a value in double quotes is kept as one
+     * word.
+     *
+     * @param line String query.
+     * @return List of the words of the query.
+     * @throws IllegalArgumentException if a quote is not closed.
+     */
+    public static List<String> tokenize(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean quoted = false;
+        boolean inWord = false;
+        for(int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if(c == '"') {
+                quoted = !quoted;
+                inWord = true;
+            } else if(Character.isWhitespace(c) && !quoted) {
+                if(inWord) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+            } else {
+                word.append(c);
+                inWord = true;
+            }
+        }
+        if(quoted) {
+            throw new IllegalArgumentException("missing closing quote");
+        }
+        if(inWord) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    /**
+     * Gets the usage message listing the queries and options.
+     *
+     * @return String usage message.
+     */
+    public static String usage() {
+        return "Usage: SubscriptionManager <command> [options]\n"
+                + "       SubscriptionManager --queries <file> [options]\n"
+                + "Commands:\n"
+                + "  summary [--year <year>] [--month <Jan-Dec>]\n"
+                + "  month --month <Jan-Dec> [--year <year>]\n"
+                + "  search --customer <name> [--limit <n>] [--offset <n>]\n"
+                + "         [--style tsv|table|card]\n"
+                + "  range --range <yyyy-mm-dd..yyyy-mm-dd> | --last <days>\n"
+                + "  top --by customers|subscriptions|codes [--limit <n>]\n"
+                + "      [--month <Jan-Dec>] [--year <year>]\n"
+                + "  generate --output <file> --rows <n> [--seed <n>] "
+                + "[--first-year <year>]\n"
+                + "           [--last-year <year>] [--threads <n>]\n"
+                + "  follow [--month <Jan-Dec>] [--year <year>] "
+                + "[--interval <seconds>]\n"
+                + "         [--updates <n>]\n"
+                + "Options:\n"
+                + "  --file <file>       file to summarise, current.txt by "
+                + "default\n"
+                + "  --format text|json  format of the results\n"
+                + "  --parallel          aggregate in parallel";
+    }
+
+    /**
+     * A command and its options, an option without a value, i.e.
+     * --parallel, has the value true.
+     */
+    private static final class Query {
+
+        private static final List<String> FLAGS = Arrays.asList("parallel");
+        private static final List<String> COMMON = Arrays.asList("file",
+                "format", "parallel");
+        private static final Map<String, List<String>> COMMANDS =
+                new HashMap<>();
+
+        static {
+            COMMANDS.put("summary", Arrays.asList("year", "month"));
+            COMMANDS.put("month", Arrays.asList("month", "year"));
+            COMMANDS.put("search", Arrays.asList("customer", "limit",
+                    "offset", "style"));
+            COMMANDS.put("range", Arrays.asList("range", "last"));
+            COMMANDS.put("top", Arrays.asList("by", "limit", "month",
+                    "year"));
+            COMMANDS.put("generate", Arrays.asList("output", "rows", "seed",
+                    "first-year", "last-year", "threads"));
+            COMMANDS.put("follow", Arrays.asList("month", "year",
+                    "interval", "updates"));
+        }
+
+        private String command;
+        private final Map<String, String> options = new HashMap<>();
+
+        /**
+         * Checks the command is known and every option is one it takes.
+         *
+         * @throws IllegalArgumentException naming the unknown command or
+         *     option.
+         */
+        void checkOptions() {
+            List<String> allowed = COMMANDS.get(command);
+            if(allowed == null) {
+                throw new IllegalArgumentException("unknown command "
+                        + command);
+            }
+            for(String name: options.keySet()) {
+                if(!allowed.contains(name) && !COMMON.contains(name)) {
+                    throw new IllegalArgumentException("unknown option --"
+                            + name + " for " + command);
+                }
+            }
+        }
+
+        static Query parse(List<String> words) {
+            Query query = new Query();
+            for(int i = 0; i < words.size(); i++) {
+                String word = words.get(i);
+                if(word.startsWith("--")) {
+                    String name = word.substring(2);
+                    if(name.isEmpty()) {
+                        throw new IllegalArgumentException("missing option "
+                                + "name");
+                    }
+                    if(!FLAGS.contains(name) && i + 1 < words.size()
+                            && !words.get(i + 1).startsWith("--")) {
+                        query.options.put(name, words.get(++i));
+                    } else {
+                        query.options.put(name, "true");
+                    }
+                } else if(query.command == null) {
+                    query.command = word.toLowerCase();
+                } else {
+                    throw new IllegalArgumentException("unexpected " + word);
+                }
+            }
+            return query;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(String.valueOf(command));
+            for(Map.Entry<String, String> option: options.entrySet()) {
+                text.append(" --").append(option.getKey()).append(' ')
+                        .append(option.getValue());
+            }
+            return text.toString();
+        }
+    }
+
+    /**
+     * The subscriptions of a file, with the summary and indexes kept for
+     * every query of the batch, each is only built when a query needs it.
+     */
+    private static final class Dataset {
+
+        private final SubscriptionStore store;
+        private final SummaryCube cube = new SummaryCube();
+        private final CustomerIndex customers = new CustomerIndex();
+        private final DateIndex dates = new DateIndex();
+
+        Dataset(SubscriptionStore store) {
+            this.store = store;
+        }
+
+        SummaryCube cube() {
+            cube.update(store);
+            return cube;
+        }
+
+        CustomerIndex customers() {
+            customers.update(store);
+            return customers;
+        }
+
+        DateIndex dates() {
+            dates.update(store);
+            return dates;
+        }
+    }
+}
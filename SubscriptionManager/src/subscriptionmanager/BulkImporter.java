@@ -0,0 +1,144 @@
+
+package subscriptionmanager;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The BulkImporter class creates subscriptions from a file of orders without
+ * requesting anything from the user, for importing large numbers of sign ups
+ * at once.
+ * Each line of the orders file holds the customer name, package type,
+ * duration, discount code and payment type of an order, separated by tabs or
+ * commas, i.e.
+ * <pre>J Smith,Gold,12,YM21L7,O</pre>
+ * A first line starting with the word customer is treated as a header and
+ * skipped. Each order is validated and priced as a SubscriptionOrder and
+ * dated today, any order which is invalid is reported with its line number and
+ * skipped. The valid orders are appended to the subscriptions file in batches,
+ * through the SubscriptionLog shared for the file, rather than opening the file
+ * for each subscription. Each batch is written as a whole so the orders are
+ * never interleaved with subscriptions created at the same time.
+ *
+ * @see SubscriptionOrder
+ * @see SubscriptionLog
+ * @see SubscriptionManager
+ */
+public class BulkImporter {
+
+    private static final int BATCH_SIZE = 10000;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final File target;
+    private long imported;
+    private long rejected;
+
+    /**
+     * The constructor takes the subscriptions file the imported subscriptions
+     * are appended to.
+     *
+     * @param target File of subscriptions, i.e. subscriptions.txt.
+     */
+    public BulkImporter(File target) {
+        this.target = target;
+    }
+
+    /**
+     * Imports every valid order in a file.
+     *
+     * @param orders File of orders, one per line.
+     * @return long number of subscriptions imported from the file.
+     * @throws IOException if the orders can not be read or the subscriptions
+     *     written.
+     */
+    public long importFile(File orders) throws IOException {
+
+        long before = imported;
+        LocalDate today = LocalDate.now();
+        String date = EpochDays.format((int) today.toEpochDay());
+
+        SubscriptionLog log = SubscriptionLog.forFile(target);
+        CompletableFuture<Void> written = CompletableFuture.completedFuture(
+                null);
+
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(orders), StandardCharsets.UTF_8),
+                BUFFER_SIZE)) {
+
+            StringBuilder batch = new StringBuilder();
+            int batchSize = 0;
+            String delimiter = null;
+            String current;
+            long line = 0;
+
+            while((current = reader.readLine()) != null) {
+                line++;
+                if(current.trim().isEmpty()) {
+                    continue;
+                }
+                if(delimiter == null) {
+                    delimiter = current.indexOf('\t') >= 0 ? "\t" : ",";
+                    if(current.trim().toLowerCase().startsWith("customer")) {
+                        continue;
+                    }
+                }
+                String[] fields = current.split(delimiter, -1);
+                if(fields.length != 5) {
+                    reject(line, "expected 5 fields but found "
+                            + fields.length);
+                    continue;
+                }
+                SubscriptionOrder order;
+                try {
+                    order = SubscriptionOrder.parse(fields[0], fields[1],
+                            fields[2], fields[3], fields[4], today);
+                } catch(IllegalArgumentException e) {
+                    reject(line, e.getMessage());
+                    continue;
+                }
+                batch.append(order.toRecord(date))
+                        .append(System.lineSeparator());
+                imported++;
+                if(++batchSize == BATCH_SIZE) {
+                    written = CompletableFuture.allOf(written,
+                            log.appendBatch(batch));
+                    batch.setLength(0);
+                    batchSize = 0;
+                }
+            }
+            if(batchSize > 0) {
+                written = CompletableFuture.allOf(written,
+                        log.appendBatch(batch));
+            }
+        }
+        try {
+            written.get();
+        } catch(ExecutionException e) {
+            throw new IOException("Error writing subscriptions", e.getCause());
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        }
+        return imported - before;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    private void reject(long line, String reason) {
+        rejected++;
+        System.out.println("\nSkipping line " + line + ": " + reason);
+    }
+}
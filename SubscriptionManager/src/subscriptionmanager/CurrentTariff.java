@@ -0,0 +1,141 @@
+
+package subscriptionmanager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The CurrentTariff class holds the Tariff used to price new subscriptions and
+ * check discount codes, which can be replaced while the program is running.
+ * The tariff is kept in an AtomicReference, pricing reads the reference once
+ * and uses that Tariff for the whole calculation, so a subscription is always
+ * priced with a single tariff even if the tariff is replaced part way through.
+ * As a Tariff can not be changed, reading it needs no lock and replacing it is
+ * a single write, reloading the file happens entirely on the thread reloading
+ * it and never pauses pricing.
+ * <p>
+ * The tariff starts as the STANDARD tariff, or the tariff file named by the
+ * subscriptionmanager.tariff system property, which is then watched and
+ * reloaded each time it changes. A tariff file which can not be read or has
+ * an invalid value is reported and the current tariff is kept.
+ *
+ * @see Tariff
+ * @see Subscription#calculateCost
+ * @see Validator#checkCode
+ */
+public class CurrentTariff {
+
+    private static final AtomicReference<Tariff> TARIFF =
+            new AtomicReference<>(Tariff.STANDARD);
+
+    static {
+        String file = System.getProperty("subscriptionmanager.tariff");
+        if(file != null) {
+            reload(new File(file));
+            watch(new File(file));
+        }
+    }
+
+    /**
+     * Private constructor as the class only has static methods.
+     */
+    private CurrentTariff() {
+    }
+
+    /**
+     * Gets the tariff in use, a caller which needs the tariff more than once
+     * for a single subscription should keep the Tariff returned rather than
+     * calling get() again.
+     *
+     * @return Tariff currently in use.
+     */
+    public static Tariff get() {
+        return TARIFF.get();
+    }
+
+    /**
+     * Replaces the tariff in use.
+     *
+     * @param tariff Tariff to use from now on.
+     * @return Tariff which was replaced.
+     */
+    public static Tariff set(Tariff tariff) {
+        if(tariff == null) {
+            throw new IllegalArgumentException("Tariff can not be null");
+        }
+        return TARIFF.getAndSet(tariff);
+    }
+
+    /**
+     * Reads a tariff file and replaces the tariff in use with it, if the file
+     * can not be read or is invalid the tariff in use is kept.
+     *
+     * @param file File of the tariff.
+     * @return boolean true if the tariff was replaced.
+     */
+    public static boolean reload(File file) {
+        try {
+            set(Tariff.load(file));
+            return true;
+        } catch(IOException e) {
+            System.out.println("\nError reading tariff file " + file + ".");
+        } catch(IllegalArgumentException e) {
+            System.out.println("\nError in tariff file " + file + ", "
+                    + e.getMessage() + ".");
+        }
+        return false;
+    }
+
+    /**
+     * Starts a daemon thread which reloads a tariff file each time it is
+     * created or changed.
+     *
+     * @param file File of the tariff.
+     * @return Thread watching the file.
+     */
+    public static Thread watch(File file) {
+        Thread watcher = new Thread(() -> watchFile(file.getAbsoluteFile()),
+                "tariff-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        return watcher;
+    }
+
+    private static void watchFile(File file) {
+
+        Path directory = file.getParentFile().toPath();
+        Path name = file.toPath().getFileName();
+        try(WatchService service = FileSystems.getDefault()
+                .newWatchService()) {
+            directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            while(true) {
+                WatchKey key = service.take();
+                boolean changed = false;
+                for(WatchEvent<?> event: key.pollEvents()) {
+                    if(name.equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                if(changed) {
+                    reload(file);
+                }
+                if(!key.reset()) {
+                    return;
+                }
+            }
+        } catch(IOException | ClosedWatchServiceException e) {
+            System.out.println("\nError watching tariff file " + file + ".");
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
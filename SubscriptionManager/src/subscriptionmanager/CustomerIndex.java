@@ -0,0 +1,299 @@
+
+package subscriptionmanager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The CustomerIndex class finds the subscriptions of any customer whose name
+ * contains a search term, without checking the name of every subscription.
+ * Two lists are kept, using the customer ids of the names in the
+ * SubscriptionStore dictionary:
+ * <ul>
+ * <li>for each customer, the rows of that customer's subscriptions.</li>
+ * <li>for each n-gram of one, two or three characters, the customers whose
+ * lowercase name contains that n-gram.</li>
+ * </ul>
+ * A search term of up to three characters is itself an n-gram, so its list
+ * holds exactly the matching customers. For a longer term the lists of each of
+ * its three character n-grams are intersected, starting with the shortest, and
+ * the few customers left are checked for the whole term. The time of a search
+ * then depends on the number of matches rather than the number of
+ * subscriptions, giving the same partial matches as searching each name, i.e.
+ * 'J', 'Sm' or 'ith'.
+ * <p>
+ * The index remembers how many rows of the store it holds, update() only adds
+ * the rows appended to the store since the last update.
+ * <p>
+ * The rows found by search() are kept in a SearchCache, so a term searched
+ * for again is answered without intersecting or sorting the lists. When
+ * update() adds rows, only the results of the terms contained in the names of
+ * the customers of the new rows are removed from the cache, the rest are still
+ * correct. The index may be searched by several threads at once, as long as
+ * it is not updated at the same time.
+ *
+ * @see SearchCache
+ * @see SearchSubscription
+ * @see SubscriptionStore
+ */
+public class CustomerIndex {
+
+    private static final int MAX_GRAM = 3;
+    private static final int MAX_INVALIDATED_ROWS = 256;
+
+    private final HashMap<Long, IntList> grams = new HashMap<>();
+    private final List<IntList> customerRows = new ArrayList<>();
+    private final SearchCache<int[]> cache;
+
+    private SubscriptionStore source;
+    private int rows;
+
+    /**
+     * The default constructor caches results within the default budget of a
+     * SearchCache.
+     */
+    public CustomerIndex() {
+        this(SearchCache.DEFAULT_BUDGET);
+    }
+
+    /**
+     * Overloaded constructor to set the budget of the cache of results.
+     *
+     * @param cacheBudget long bytes the cached results may use, 0 for no
+     *     cache.
+     */
+    public CustomerIndex(long cacheBudget) {
+        this(cacheBudget, SearchCache.DEFAULT_MAX_ENTRY_PERCENT);
+    }
+
+    /**
+     * Overloaded constructor to set the budget of the cache of results and
+     * the largest result it keeps.
+     *
+     * @param cacheBudget long bytes the cached results may use, 0 for no
+     *     cache.
+     * @param maxEntryPercent int largest result cached as a percent of the
+     *     budget.
+     */
+    public CustomerIndex(long cacheBudget, int maxEntryPercent) {
+        cache = new SearchCache<>(cacheBudget, maxEntryPercent,
+                matches -> 16 + 4L * matches.length);
+    }
+
+    /**
+     * Adds the rows appended to a store since the last update, if the store is
+     * not the store of the last update the index is rebuilt for every row of
+     * the store.
+     *
+     * @param store SubscriptionStore to index.
+     */
+    public void update(SubscriptionStore store) {
+
+        if(store != source) {
+            grams.clear();
+            customerRows.clear();
+            source = store;
+            rows = 0;
+            cache.clear();
+        }
+        StringDictionary names = store.getCustomerNames();
+        for(int id = customerRows.size(); id < names.size(); id++) {
+            customerRows.add(new IntList());
+            addGrams(id, names.get(id).toLowerCase());
+        }
+        int[] customers = store.getCustomerIds();
+        int size = store.size();
+        for(int i = rows; i < size; i++) {
+            customerRows.get(customers[i]).add(i);
+        }
+        invalidate(names, customers, rows, size);
+        rows = size;
+    }
+
+    /**
+     * Removes the cached results changed by new rows. Each cached term is
+     * checked against the name of each new customer, so for a large batch of
+     * rows the whole cache is cleared instead.
+     */
+    private void invalidate(StringDictionary names, int[] customers,
+            int from, int to) {
+        if(from == to || cache.size() == 0) {
+            return;
+        }
+        if(to - from > MAX_INVALIDATED_ROWS) {
+            cache.clear();
+            return;
+        }
+        int last = -1;
+        for(int i = from; i < to; i++) {
+            if(customers[i] != last) {
+                last = customers[i];
+                cache.invalidate(names.get(last).toLowerCase());
+            }
+        }
+    }
+
+    /**
+     * Finds the customers whose name contains the search term, ignoring case.
+     *
+     * @param term String part of a customer name.
+     * @return int[] of the matching customer ids in ascending order.
+     */
+    public int[] findCustomers(String term) {
+
+        String lower = term.toLowerCase();
+        if(lower.isEmpty()) {
+            int[] all = new int[customerRows.size()];
+            for(int id = 0; id < all.length; id++) {
+                all[id] = id;
+            }
+            return all;
+        }
+        if(lower.length() <= MAX_GRAM) {
+            IntList list = grams.get(gramKey(lower, 0, lower.length()));
+            return list == null ? new int[0] : list.toArray();
+        }
+
+        IntList[] lists = new IntList[lower.length() - MAX_GRAM + 1];
+        for(int i = 0; i < lists.length; i++) {
+            lists[i] = grams.get(gramKey(lower, i, MAX_GRAM));
+            if(lists[i] == null) {
+                return new int[0];
+            }
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size(), b.size()));
+
+        StringDictionary names = source.getCustomerNames();
+        IntList matches = new IntList();
+        IntList shortest = lists[0];
+        int[] positions = new int[lists.length];
+        for(int i = 0; i < shortest.size(); i++) {
+            int id = shortest.get(i);
+            if(inAll(id, lists, positions)
+                    && names.get(id).toLowerCase().contains(lower)) {
+                matches.add(id);
+            }
+        }
+        return matches.toArray();
+    }
+
+    /**
+     * Finds the subscriptions of the customers whose name contains the search
+     * term, ignoring case. The array may be held in the cache and returned by
+     * later searches, so it must not be changed.
+     *
+     * @param term String part of a customer name.
+     * @return int[] of the matching rows of the store in ascending order.
+     */
+    public int[] search(String term) {
+
+        long start = Metrics.start();
+        PipelineEvents.Search event = new PipelineEvents.Search();
+        event.begin();
+        String key = term.toLowerCase();
+        int[] matches = cache.get(key);
+        if(matches == null) {
+            matches = find(term, event);
+            cache.put(key, matches);
+        } else {
+            event.cached = true;
+        }
+        event.term = term;
+        event.rows = matches.length;
+        event.commit();
+        Metrics.time(Metrics.SEARCH, start);
+        return matches;
+    }
+
+    public SearchCache<int[]> getCache() {
+        return cache;
+    }
+
+    /**
+     * Finds the rows of the customers matching a term for search(), noting
+     * the number of customers on the event.
+     */
+    private int[] find(String term, PipelineEvents.Search event) {
+
+        int[] customers = findCustomers(term);
+        int count = 0;
+        for(int id: customers) {
+            count += customerRows.get(id).size();
+        }
+        int[] matches = new int[count];
+        int pos = 0;
+        for(int id: customers) {
+            IntList list = customerRows.get(id);
+            for(int i = 0; i < list.size(); i++) {
+                matches[pos++] = list.get(i);
+            }
+        }
+        if(customers.length > 1) {
+            Arrays.sort(matches);
+        }
+        event.customers = customers.length;
+        return matches;
+    }
+
+    /**
+     * Gets the rows of a single customer.
+     *
+     * @param customerId int id of the customer name in the store.
+     * @return int[] of the customer's rows in ascending order.
+     */
+    public int[] getRows(int customerId) {
+        return customerRows.get(customerId).toArray();
+    }
+
+    /**
+     * Checks if every list contains the id, the lists are in ascending order
+     * so each position only moves forward through its list.
+     */
+    private static boolean inAll(int id, IntList[] lists, int[] positions) {
+        for(int l = 1; l < lists.length; l++) {
+            IntList list = lists[l];
+            int pos = positions[l];
+            while(pos < list.size() && list.get(pos) < id) {
+                pos++;
+            }
+            positions[l] = pos;
+            if(pos == list.size() || list.get(pos) != id) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds a customer to the list of each distinct n-gram of its name, the
+     * customer ids are added in ascending order so the lists stay sorted.
+     */
+    private void addGrams(int id, String name) {
+        for(int length = 1; length <= MAX_GRAM; length++) {
+            for(int i = 0; i + length <= name.length(); i++) {
+                Long key = gramKey(name, i, length);
+                IntList list = grams.get(key);
+                if(list == null) {
+                    list = new IntList();
+                    grams.put(key, list);
+                }
+                if(list.last() != id) {
+                    list.add(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Packs up to three characters and the length into a long key.
+     */
+    private static long gramKey(String text, int start, int length) {
+        long key = length;
+        for(int i = 0; i < length; i++) {
+            key = (key << 16) | text.charAt(start + i);
+        }
+        return key;
+    }
+}
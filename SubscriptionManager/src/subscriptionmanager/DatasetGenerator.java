@@ -0,0 +1,398 @@
+
+package subscriptionmanager;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The DatasetGenerator class writes files of made up subscriptions in the
+ * same tab separated form as subscriptions.txt, of any size, for load testing
+ * and benchmarking the program with far more subscriptions than current.txt.
+ * <p>
+ * The subscriptions are skewed like real ones rather than spread evenly. A few
+ * surnames are far more common than the rest, the number of subscriptions of
+ * each surname falling with its rank, and the first initials follow how often
+ * names start with each letter. More subscriptions are taken in the winter
+ * months than the summer, and each year more than the year before. Bronze is
+ * the most common package and Gold the least, most subscriptions are paid
+ * monthly and about a third have a discount code, which is always valid on
+ * the date of the subscription. The total cost of each subscription is read
+ * from the PricingTable of the CurrentTariff, the same as setTotalCost() in
+ * the Subscription class.
+ * <p>
+ * The file is made in chunks of rows, each chunk from its own random number
+ * generator seeded from the seed of the generator and the number of the
+ * chunk, so the same seed and number of rows always writes the same file
+ * whatever the number of threads. The chunks are made by a number of worker
+ * threads and written in order, no more than two chunks per worker are held
+ * at once.
+ *
+ * @see Subscription#calculateCost
+ * @see Subscription#formatRecord
+ */
+public class DatasetGenerator {
+
+    private static final int CHUNK_ROWS = 1 << 16;
+    private static final int CHUNKS_PER_WORKER = 2;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private static final String[] SURNAMES = {"Smith", "Jones", "Williams",
+        "Taylor", "Brown", "Davies", "Evans", "Wilson", "Thomas", "Johnson",
+        "Roberts", "Robinson", "Thompson", "Wright", "Walker", "White",
+        "Edwards", "Hughes", "Green", "Hall", "Lewis", "Harris", "Clarke",
+        "Patel", "Jackson", "Wood", "Turner", "Martin", "Cooper", "Hill",
+        "Ward", "Morris", "Moore", "Clark", "Lee", "King", "Baker",
+        "Harrison", "Morgan", "Allen", "James", "Scott", "Phillips",
+        "Watson", "Davis", "Parker", "Price", "Bennett", "Young", "Griffiths",
+        "Mitchell", "Kelly", "Cook", "Carter", "Richardson", "Bailey",
+        "Collins", "Bell", "Shaw", "Murphy", "Miller", "Cox", "Richards",
+        "Khan", "Marshall", "Anderson", "Simpson", "Ellis", "Adams", "Singh",
+        "Begum", "Wilkinson", "Foster", "Chapman", "Powell", "Webb",
+        "Rogers", "Gray", "Mason", "Ali", "Hunt", "Hussain", "Campbell",
+        "Matthews", "Owen", "Palmer", "Holmes", "Mills", "Barnes", "Knight",
+        "Lloyd", "Butler", "Russell", "Barker", "Fisher", "Stevens",
+        "Jenkins", "Murray", "Dixon", "Harvey", "Graham", "Pearson", "Ahmed",
+        "Fletcher", "Walsh", "Kaur", "Gibson", "Howard", "Andrews",
+        "Stewart", "Elliott", "Reynolds", "Saunders", "Payne", "Fox",
+        "Ford", "Pearce", "Day", "Brooks", "West", "Lawrence", "Cole",
+        "Atkinson", "Bradley", "Spencer", "Gill", "Dawson", "Ball",
+        "Burton", "O'Brien", "Watts", "Rose", "Booth", "Perry", "Ryan",
+        "Grant", "Wells", "Armstrong", "Francis", "Rees", "Hayes", "Hart",
+        "Hudson", "Newman", "Barrett", "Webster", "Hunter", "Gregory",
+        "Carr", "Lowe", "Page", "Marsh", "Riley", "Dunn", "Woods", "Parsons",
+        "Berry", "Stone", "Reid", "Holland", "Hawkins", "Harding", "Porter",
+        "Robertson", "Newton", "Oliver", "Reed", "Kennedy", "Williamson",
+        "Bird", "Gardner", "Shah", "Dean", "Lane", "Cooke", "Bates",
+        "Henderson", "Parry", "Burgess", "Bishop", "Walton", "Burns",
+        "Nicholson", "Shepherd", "Ross", "Cross", "Long", "Freeman",
+        "Warren", "Nicholls", "Hamilton", "Byrne", "Sutton", "McDonald",
+        "Yates", "Hodgson", "Robson", "Curtis", "Hopkins", "O'Connor",
+        "Harper", "Coleman", "Watkins", "Moss", "McCarthy", "Chambers",
+        "Robbins", "Mann"};
+    private static final double[] INITIAL_WEIGHTS = {
+        8.2, 5.6, 6.1, 5.5, 3.9, 2.1, 3.5, 3.0, 1.6, 9.6, 6.2, 4.9, 7.4,
+        2.3, 1.1, 3.7, 0.2, 4.0, 7.6, 3.3, 0.3, 1.9, 2.4, 0.1, 0.6, 1.1};
+    private static final double[] MONTH_WEIGHTS = {12, 9, 9, 8, 8, 7, 7, 6,
+        9, 9, 10, 11};
+    private static final double[] PACKAGE_WEIGHTS = {50, 33, 17};
+    private static final double[] DURATION_WEIGHTS = {30, 25, 20, 25};
+    private static final double[] PAYMENT_WEIGHTS = {40, 60};
+    private static final double CODE_CHANCE = 0.35;
+
+    private static final double[] NAMES = cumulative(zipf(SURNAMES.length));
+    private static final double[] INITIALS = cumulative(INITIAL_WEIGHTS);
+    private static final double[] PACKAGES = cumulative(PACKAGE_WEIGHTS);
+    private static final double[] DURATIONS = cumulative(DURATION_WEIGHTS);
+    private static final double[] PAYMENTS = cumulative(PAYMENT_WEIGHTS);
+    private static final byte[][] PACKAGE_BYTES = bytes(PackageType.values());
+    private static final byte[][] PAYMENT_BYTES = bytes(PaymentType.values());
+    private static final byte[][] DURATION_BYTES = new byte[
+            Duration.values().length][];
+
+    static {
+        for(Duration duration: Duration.values()) {
+            DURATION_BYTES[duration.ordinal()] = String.valueOf(duration.term)
+                    .getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final long seed;
+    private final int workers;
+    private final PricingTable pricing;
+    private final int minDiscount;
+    private final int maxDiscount;
+    private final int firstYear;
+    private final int lastYear;
+    private final double[] yearMonths;
+    private final byte[][] dates;
+    private final int firstDay;
+    private final byte[][][] customers;
+    private final byte[] lineSeparator = System.lineSeparator().getBytes(
+            StandardCharsets.US_ASCII);
+
+    /**
+     * The default constructor generates subscriptions from 2019 to 2021 with
+     * a worker for each processor.
+     *
+     * @param seed long seed the subscriptions are generated from.
+     */
+    public DatasetGenerator(long seed) {
+        this(seed, 2019, 2021, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Overloaded constructor to set the years of the subscriptions and the
+     * number of worker threads.
+     *
+     * @param seed long seed the subscriptions are generated from.
+     * @param firstYear int year of the earliest subscriptions.
+     * @param lastYear int year of the latest subscriptions.
+     * @param workers int number of worker threads.
+     * @throws IllegalArgumentException if the last year is before the first.
+     */
+    public DatasetGenerator(long seed, int firstYear, int lastYear,
+            int workers) {
+
+        if(lastYear < firstYear || firstYear < 1) {
+            throw new IllegalArgumentException("Invalid years " + firstYear
+                    + " to " + lastYear);
+        }
+        Tariff tariff = CurrentTariff.get();
+        this.seed = seed;
+        this.workers = Math.max(1, workers);
+        this.pricing = tariff.getPricingTable();
+        this.minDiscount = Math.max(1, tariff.getMinCodeDiscount());
+        this.maxDiscount = Math.min(9, tariff.getMaxCodeDiscount());
+        this.firstYear = firstYear;
+        this.lastYear = lastYear;
+
+        double[] weights = new double[(lastYear - firstYear + 1) * 12];
+        for(int i = 0; i < weights.length; i++) {
+            weights[i] = MONTH_WEIGHTS[i % 12] * (1 + 0.25 * (i / 12));
+        }
+        this.yearMonths = cumulative(weights);
+
+        this.firstDay = EpochDays.of(firstYear, 1, 1);
+        this.dates = new byte[EpochDays.of(lastYear + 1, 1, 1) - firstDay][];
+        for(int i = 0; i < dates.length; i++) {
+            dates[i] = EpochDays.format(firstDay + i).getBytes(
+                    StandardCharsets.US_ASCII);
+        }
+
+        this.customers = new byte[INITIAL_WEIGHTS.length][SURNAMES.length][];
+        for(int i = 0; i < INITIAL_WEIGHTS.length; i++) {
+            for(int s = 0; s < SURNAMES.length; s++) {
+                customers[i][s] = ((char) ('A' + i) + " " + SURNAMES[s])
+                        .getBytes(StandardCharsets.US_ASCII);
+            }
+        }
+    }
+
+    /**
+     * Writes a file of subscriptions, replacing the file if it exists.
+     *
+     * @param file File to write.
+     * @param rows long number of subscriptions to write.
+     * @return long number of bytes written.
+     * @throws IOException if the file can not be written.
+     */
+    public long write(File file, long rows) throws IOException {
+        try(OutputStream out = new FileOutputStream(file)) {
+            return write(out, rows);
+        }
+    }
+
+    /**
+     * Writes subscriptions to a stream, which is not closed.
+     *
+     * @param out OutputStream the subscriptions are written to.
+     * @param rows long number of subscriptions to write.
+     * @return long number of bytes written.
+     * @throws IOException if the stream can not be written.
+     */
+    public long write(OutputStream out, long rows) throws IOException {
+
+        if(rows < 0) {
+            throw new IllegalArgumentException("Invalid number of rows "
+                    + rows);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        ArrayDeque<Future<Chunk>> pending = new ArrayDeque<>();
+        long chunks = (rows + CHUNK_ROWS - 1) / CHUNK_ROWS;
+        long written = 0;
+        try {
+            OutputStream buffered = new BufferedOutputStream(out,
+                    BUFFER_SIZE);
+            for(long chunk = 0; chunk < chunks; chunk++) {
+                final long index = chunk;
+                final int count = (int) Math.min(CHUNK_ROWS,
+                        rows - chunk * CHUNK_ROWS);
+                pending.add(pool.submit(() -> generate(index, count)));
+                while(pending.size() >= workers * CHUNKS_PER_WORKER
+                        || chunk == chunks - 1 && !pending.isEmpty()) {
+                    Chunk next = pending.poll().get();
+                    buffered.write(next.bytes, 0, next.length);
+                    written += next.length;
+                }
+            }
+            buffered.flush();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted generating subscriptions", e);
+        } catch(ExecutionException e) {
+            throw new IOException("Error generating subscriptions",
+                    e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return written;
+    }
+
+    /**
+     * Makes the lines of a chunk of subscriptions.
+     */
+    private Chunk generate(long index, int count) {
+
+        SplittableRandom random = new SplittableRandom(seed
+                + index * 0x9E3779B97F4A7C15L);
+        Chunk chunk = new Chunk(count * 48);
+        for(int i = 0; i < count; i++) {
+            int yearMonth = pick(yearMonths, random);
+            int year = firstYear + yearMonth / 12;
+            int month = yearMonth % 12 + 1;
+            int epochDay = EpochDays.of(year, month, 1 + random.nextInt(
+                    EpochDays.lengthOfMonth(year, month)));
+            int packageType = pick(PACKAGES, random);
+            int duration = pick(DURATIONS, random);
+            int paymentType = pick(PAYMENTS, random);
+            int discount = 0;
+            boolean hasCode = random.nextDouble() < CODE_CHANCE
+                    && minDiscount <= maxDiscount;
+            if(hasCode) {
+                discount = minDiscount + random.nextInt(maxDiscount
+                        - minDiscount + 1);
+            }
+
+            chunk.ensureSpace(96);
+            chunk.append(dates[epochDay - firstDay]).append('\t')
+                    .append(PACKAGE_BYTES[packageType]).append('\t')
+                    .append(DURATION_BYTES[duration]).append('\t');
+            if(hasCode) {
+                chunk.append((byte) ('A' + random.nextInt(26)))
+                        .append((byte) ('A' + random.nextInt(26)))
+                        .appendDigits(year % 100, 2)
+                        .append(month < 7 ? 'E' : 'L')
+                        .appendDigits(discount, 1);
+            } else {
+                chunk.append('-');
+            }
+            int cost = pricing.price(packageType, duration, discount,
+                    paymentType);
+            chunk.append('\t').append(PAYMENT_BYTES[paymentType])
+                    .append('\t').appendNumber(cost).append('\t')
+                    .append(customers[pick(INITIALS, random)][pick(NAMES,
+                            random)])
+                    .append(lineSeparator);
+        }
+        return chunk;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getFirstYear() {
+        return firstYear;
+    }
+
+    public int getLastYear() {
+        return lastYear;
+    }
+
+    /**
+     * Picks an index with a chance given by its weight.
+     */
+    private static int pick(double[] cumulative, SplittableRandom random) {
+        double target = random.nextDouble() * cumulative[cumulative.length
+                - 1];
+        int index = Arrays.binarySearch(cumulative, target);
+        index = index < 0 ? -index - 1 : index + 1;
+        return Math.min(index, cumulative.length - 1);
+    }
+
+    private static double[] cumulative(double[] weights) {
+        double[] sums = new double[weights.length];
+        double total = 0;
+        for(int i = 0; i < weights.length; i++) {
+            total += weights[i];
+            sums[i] = total;
+        }
+        return sums;
+    }
+
+    /**
+     * Gets the weights of a Zipf distribution, the weight of each rank one
+     * over the rank.
+     */
+    private static double[] zipf(int ranks) {
+        double[] weights = new double[ranks];
+        for(int i = 0; i < ranks; i++) {
+            weights[i] = 1.0 / (i + 1);
+        }
+        return weights;
+    }
+
+    private static byte[][] bytes(Enum<?>[] values) {
+        byte[][] names = new byte[values.length][];
+        for(Enum<?> value: values) {
+            names[value.ordinal()] = value.name().getBytes(
+                    StandardCharsets.US_ASCII);
+        }
+        return names;
+    }
+
+    /**
+     * The bytes of the lines of a chunk, grown as the lines are added.
+     */
+    private static final class Chunk {
+
+        private byte[] bytes;
+        private int length;
+
+        private Chunk(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        private void ensureSpace(int space) {
+            if(length + space > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2,
+                        length + space));
+            }
+        }
+
+        private Chunk append(byte[] value) {
+            ensureSpace(value.length);
+            System.arraycopy(value, 0, bytes, length, value.length);
+            length += value.length;
+            return this;
+        }
+
+        private Chunk append(char value) {
+            bytes[length++] = (byte) value;
+            return this;
+        }
+
+        private Chunk append(byte value) {
+            bytes[length++] = value;
+            return this;
+        }
+
+        private Chunk appendDigits(int value, int digits) {
+            for(int i = digits - 1; i >= 0; i--) {
+                bytes[length + i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            length += digits;
+            return this;
+        }
+
+        private Chunk appendNumber(int value) {
+            int digits = 1;
+            for(int rest = value / 10; rest > 0; rest /= 10) {
+                digits++;
+            }
+            return appendDigits(value, digits);
+        }
+    }
+}
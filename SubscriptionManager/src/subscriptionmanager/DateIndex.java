@@ -0,0 +1,188 @@
+
+package subscriptionmanager;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+/**
+ * The DateIndex class orders the rows of a SubscriptionStore by date, so the
+ * subscriptions between two dates are found with a binary search rather than
+ * by checking the date of every row.
+ * The index holds the epoch day of every row in ascending order alongside the
+ * row it belongs to. A date range is then the rows between the first day not
+ * before the start of the range and the first day after the end of it, which
+ * can be summarised into a SummaryCube, i.e. for a quarter of a year or a
+ * rolling window of the last 30 days.
+ * <p>
+ * The index remembers how many rows of the store it holds, update() sorts only
+ * the rows appended to the store since the last update and merges them in.
+ *
+ * @see SummaryCube
+ * @see EpochDays
+ */
+public class DateIndex {
+
+    private int[] days = new int[0];
+    private int[] rows = new int[0];
+
+    private SubscriptionStore source;
+
+    /**
+     * Adds the rows appended to a store since the last update, if the store is
+     * not the store of the last update the index is rebuilt for every row of
+     * the store.
+     *
+     * @param store SubscriptionStore to index.
+     */
+    public void update(SubscriptionStore store) {
+
+        if(store != source) {
+            days = new int[0];
+            rows = new int[0];
+            source = store;
+        }
+        int from = rows.length;
+        int count = store.size() - from;
+        if(count == 0) {
+            return;
+        }
+
+        int[] storeDays = store.getEpochDays();
+        long[] added = new long[count];
+        for(int i = 0; i < count; i++) {
+            added[i] = ((long) storeDays[from + i] << 32) | (from + i);
+        }
+        Arrays.sort(added);
+
+        int[] mergedDays = new int[from + count];
+        int[] mergedRows = new int[from + count];
+        int a = 0;
+        int b = 0;
+        for(int i = 0; i < mergedDays.length; i++) {
+            if(b == count || a < from && days[a] <= (int) (added[b] >> 32)) {
+                mergedDays[i] = days[a];
+                mergedRows[i] = rows[a++];
+            } else {
+                mergedDays[i] = (int) (added[b] >> 32);
+                mergedRows[i] = (int) added[b++];
+            }
+        }
+        days = mergedDays;
+        rows = mergedRows;
+    }
+
+    /**
+     * Gets the position in the index of the first row on or after a day.
+     *
+     * @param epochDay int day to search for.
+     * @return int position from 0 to size().
+     */
+    public int lowerBound(int epochDay) {
+        int low = 0;
+        int high = days.length;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(days[middle] < epochDay) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets the rows between two days in date order, including both days.
+     *
+     * @param fromDay int first epoch day of the range.
+     * @param toDay int last epoch day of the range.
+     * @return int[] of the rows of the store in the range.
+     */
+    public int[] range(int fromDay, int toDay) {
+        int start = lowerBound(fromDay);
+        int end = Math.max(start, lowerBound(toDay + 1));
+        return Arrays.copyOfRange(rows, start, end);
+    }
+
+    /**
+     * Gets the number of rows between two days, including both days.
+     *
+     * @param fromDay int first epoch day of the range.
+     * @param toDay int last epoch day of the range.
+     * @return int number of rows in the range.
+     */
+    public int count(int fromDay, int toDay) {
+        return Math.max(0, lowerBound(toDay + 1) - lowerBound(fromDay));
+    }
+
+    /**
+     * Summarises the subscriptions between two days, including both days.
+     *
+     * @param fromDay int first epoch day of the range.
+     * @param toDay int last epoch day of the range.
+     * @return SummaryCube of the subscriptions in the range.
+     */
+    public SummaryCube summarise(int fromDay, int toDay) {
+        SummaryCube cube = new SummaryCube();
+        int start = lowerBound(fromDay);
+        int end = lowerBound(toDay + 1);
+        if(end > start) {
+            cube.add(source, rows, start, end);
+        }
+        return cube;
+    }
+
+    /**
+     * Summarises a rolling window of days ending on a given day, i.e. the
+     * last 30 days.
+     *
+     * @param endDay int last epoch day of the window.
+     * @param length int number of days in the window.
+     * @return SummaryCube of the subscriptions in the window.
+     */
+    public SummaryCube window(int endDay, int length) {
+        return summarise(endDay - length + 1, endDay);
+    }
+
+    /**
+     * Gets the day of the latest subscription, the end of a window of the
+     * last days of the file.
+     *
+     * @return int last epoch day in the index, or 0 if it is empty.
+     */
+    public int getLastDay() {
+        return days.length == 0 ? 0 : days[days.length - 1];
+    }
+
+    public int size() {
+        return rows.length;
+    }
+
+    /**
+     * Parses a date range written as two ISO dates, i.e.
+     * 2020-03-01..2020-06-30.
+     *
+     * @param range String date range.
+     * @return int[] of the first and last epoch day of the range.
+     * @throws IllegalArgumentException if the range is not in the correct
+     *     format.
+     */
+    public static int[] parseRange(String range) {
+        int separator = range.indexOf("..");
+        if(separator < 0) {
+            throw new IllegalArgumentException("Range must be written as "
+                    + "yyyy-mm-dd..yyyy-mm-dd");
+        }
+        try {
+            int from = (int) LocalDate.parse(range.substring(0, separator)
+                    .trim()).toEpochDay();
+            int to = (int) LocalDate.parse(range.substring(separator + 2)
+                    .trim()).toEpochDay();
+            return new int[] {from, to};
+        } catch(DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date in range: "
+                    + range);
+        }
+    }
+}
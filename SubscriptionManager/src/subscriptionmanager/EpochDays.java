@@ -0,0 +1,172 @@
+
+package subscriptionmanager;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * The EpochDays class is a utility class of static methods for working with
+ * subscription dates as an int count of days since 01-Jan-1970, the epoch day.
+ * Storing and comparing dates as epoch days avoids creating a Date and a
+ * SimpleDateFormat for every subscription read from file, the conversions to
+ * and from Date are only made when a subscription is displayed to the user.
+ * The calendar arithmetic follows the proleptic Gregorian calendar used by
+ * LocalDate.
+ *
+ * @see SubscriptionParser
+ */
+public class EpochDays {
+
+    /**
+     * Short English month names in the order they appear in the year, matching
+     * the month of the date written to the subscription files.
+     */
+    public static final String[] SHORT_MONTHS = {"Jan", "Feb", "Mar", "Apr",
+        "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+
+    private static final int DAYS_0000_TO_1970 = 719468;
+
+    private EpochDays() {
+    }
+
+    /**
+     * Converts a calendar date to an epoch day.
+     *
+     * @param year int year, i.e. 2020.
+     * @param month int month of the year from 1 to 12.
+     * @param day int day of the month from 1.
+     * @return int number of days since 01-Jan-1970.
+     */
+    public static int of(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5
+                + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100
+                + dayOfYear;
+        return era * 146097 + dayOfEra - DAYS_0000_TO_1970;
+    }
+
+    /**
+     * Gets the year and month of an epoch day as a single int, the year
+     * multiplied by 12 plus the month index from 0 to 11. Consecutive months
+     * have consecutive values so the result can be used to index or sort by
+     * month across years.
+     *
+     * @param epochDay int number of days since 01-Jan-1970.
+     * @return int year * 12 + month index.
+     */
+    public static int yearMonth(int epochDay) {
+        int z = epochDay + DAYS_0000_TO_1970;
+        int era = Math.floorDiv(z, 146097);
+        int dayOfEra = z - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524
+                - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4
+                - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return year * 12 + month - 1;
+    }
+
+    /**
+     * Gets the month index of an epoch day, 0 for January to 11 for December,
+     * used to index SHORT_MONTHS and the month totals of the summaries.
+     *
+     * @param epochDay int number of days since 01-Jan-1970.
+     * @return int month index from 0 to 11.
+     */
+    public static int monthIndex(int epochDay) {
+        return Math.floorMod(yearMonth(epochDay), 12);
+    }
+
+    /**
+     * Gets the year of an epoch day.
+     *
+     * @param epochDay int number of days since 01-Jan-1970.
+     * @return int year, i.e. 2020.
+     */
+    public static int year(int epochDay) {
+        return Math.floorDiv(yearMonth(epochDay), 12);
+    }
+
+    /**
+     * Gets the number of days in the given month.
+     *
+     * @param year int year, used to check for a leap year.
+     * @param month int month of the year from 1 to 12.
+     * @return int number of days in the month.
+     */
+    public static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0)
+                        || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Converts an epoch day to a Date at midnight in the default time zone,
+     * the same Date the SimpleDateFormat in the Subscription class produces
+     * when parsing the date from the file.
+     *
+     * @param epochDay int number of days since 01-Jan-1970.
+     * @return Date at the start of the day.
+     */
+    public static Date toDate(int epochDay) {
+        return Date.from(LocalDate.ofEpochDay(epochDay)
+                .atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    /**
+     * Converts a Date to the epoch day it falls on in the default time zone.
+     *
+     * @param date Date to convert.
+     * @return int number of days since 01-Jan-1970.
+     */
+    public static int fromDate(Date date) {
+        return (int) date.toInstant().atZone(ZoneId.systemDefault())
+                .toLocalDate().toEpochDay();
+    }
+
+    /**
+     * Formats an epoch day in the dd-MMM-yyyy format used in the subscription
+     * files, i.e. 07-Jul-2020.
+     *
+     * @param epochDay int number of days since 01-Jan-1970.
+     * @return String formatted date.
+     */
+    public static String format(int epochDay) {
+        StringBuilder str = new StringBuilder(11);
+        format(epochDay, str);
+        return str.toString();
+    }
+
+    /**
+     * Overloaded method to append the formatted date to a StringBuilder,
+     * without creating a String.
+     *
+     * @param epochDay int number of days since 01-Jan-1970.
+     * @param str StringBuilder the date is appended to.
+     */
+    public static void format(int epochDay, StringBuilder str) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        if(date.getDayOfMonth() < 10) {
+            str.append('0');
+        }
+        str.append(date.getDayOfMonth()).append('-')
+                .append(SHORT_MONTHS[date.getMonthValue() - 1]).append('-')
+                .append(date.getYear());
+    }
+}
@@ -0,0 +1,67 @@
+
+package subscriptionmanager;
+
+import java.util.Arrays;
+
+/**
+ * The IntList class is a growable list of int values, used for the lists of
+ * row and customer ids in the indexes so the ids are not boxed.
+ *
+ * @see CustomerIndex
+ */
+public class IntList {
+
+    private int[] values;
+    private int size;
+
+    /**
+     * The default constructor creates an empty list.
+     */
+    public IntList() {
+        values = new int[4];
+    }
+
+    /**
+     * Adds a value to the end of the list.
+     *
+     * @param value int to add.
+     */
+    public void add(int value) {
+        if(size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Gets the value at an index of the list.
+     *
+     * @param index int index from 0 to size() - 1.
+     * @return int value at the index.
+     */
+    public int get(int index) {
+        return values[index];
+    }
+
+    /**
+     * Gets the last value of the list.
+     *
+     * @return int last value, or -1 if the list is empty.
+     */
+    public int last() {
+        return size == 0 ? -1 : values[size - 1];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Copies the values of the list to a new array.
+     *
+     * @return int[] of the values in the order they were added.
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
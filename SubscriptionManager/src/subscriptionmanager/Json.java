@@ -0,0 +1,259 @@
+
+package subscriptionmanager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The Json class is a utility class of static methods for writing the JSON
+ * returned by the SubscriptionServer and reading the flat JSON objects sent to
+ * it, so the program does not need a JSON library.
+ * Only objects of strings, numbers, booleans and nulls are read, which is all
+ * a request needs.
+ *
+ * @see SubscriptionServer
+ */
+public class Json {
+
+    /**
+     * Private constructor as the class only has static methods.
+     */
+    private Json() {
+    }
+
+    /**
+     * Appends a String as a quoted JSON string, escaping any quotes,
+     * backslashes and control characters.
+     *
+     * @param json StringBuilder the string is appended to.
+     * @param value String to append.
+     */
+    public static void appendString(StringBuilder json, String value) {
+        if(value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch(c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if(c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Formats a number, a number which is not finite, i.e. the average of no
+     * subscriptions, is written as null.
+     *
+     * @param value double to format.
+     * @return String JSON number or null.
+     */
+    public static String number(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? "null"
+                : Double.toString(value);
+    }
+
+    /**
+     * Appends a subscription as a JSON object.
+     *
+     * @param json StringBuilder the object is appended to.
+     * @param id long id of the subscription.
+     * @param sub Subscription to append.
+     */
+    public static void appendSubscription(StringBuilder json, long id,
+            Subscription sub) {
+        json.append("{\"id\":").append(id).append(",\"date\":");
+        appendString(json, EpochDays.format(EpochDays.fromDate(
+                sub.getSubDate())));
+        json.append(",\"customer\":");
+        appendString(json, sub.getCustomer());
+        json.append(",\"package\":");
+        appendString(json, sub.getPackageType().type);
+        json.append(",\"duration\":").append(sub.getSubLength().term)
+                .append(",\"discountCode\":");
+        appendString(json, sub.getDiscountCode());
+        json.append(",\"payment\":");
+        appendString(json, sub.getPaymentType().payment);
+        json.append(",\"totalCost\":").append(sub.getTotalCost()).append('}');
+    }
+
+    /**
+     * Overloaded method to append a row of a store as a JSON object, without
+     * creating a Subscription.
+     *
+     * @param json StringBuilder the object is appended to.
+     * @param id long id of the subscription.
+     * @param store SubscriptionStore holding the subscription.
+     * @param row int row of the subscription in the store.
+     */
+    public static void appendSubscription(StringBuilder json, long id,
+            SubscriptionStore store, int row) {
+        json.append("{\"id\":").append(id).append(",\"date\":\"");
+        EpochDays.format(store.getEpochDay(row), json);
+        json.append("\",\"customer\":");
+        appendString(json, store.getCustomer(row));
+        json.append(",\"package\":");
+        appendString(json, store.getPackageType(row).type);
+        json.append(",\"duration\":").append(store.getDuration(row).term)
+                .append(",\"discountCode\":");
+        appendString(json, store.getDiscountCode(row));
+        json.append(",\"payment\":");
+        appendString(json, store.getPaymentType(row).payment);
+        json.append(",\"totalCost\":").append(store.getTotalCost(row))
+                .append('}');
+    }
+
+    /**
+     * Reads a JSON object of simple values, the values are returned as the
+     * text of the string, number or boolean, or null.
+     *
+     * @param text String of a JSON object.
+     * @return Map of the names and values of the object, in order.
+     * @throws IllegalArgumentException if the text is not a JSON object of
+     *     simple values.
+     */
+    public static Map<String, String> parseObject(String text) {
+
+        Map<String, String> values = new LinkedHashMap<>();
+        int[] pos = {skipSpace(text, 0)};
+        expect(text, pos, '{');
+        if(peek(text, pos) == '}') {
+            pos[0]++;
+        } else {
+            do {
+                String name = readString(text, pos);
+                expect(text, pos, ':');
+                values.put(name, readValue(text, pos));
+            } while(next(text, pos) == ',');
+            pos[0]--;
+            expect(text, pos, '}');
+        }
+        if(skipSpace(text, pos[0]) != text.length()) {
+            throw new IllegalArgumentException("Unexpected text after object");
+        }
+        return values;
+    }
+
+    private static String readValue(String text, int[] pos) {
+        char c = peek(text, pos);
+        if(c == '"') {
+            return readString(text, pos);
+        }
+        int start = pos[0];
+        while(pos[0] < text.length() && ",}] \t\r\n".indexOf(
+                text.charAt(pos[0])) < 0) {
+            pos[0]++;
+        }
+        String value = text.substring(start, pos[0]);
+        if(value.equals("null")) {
+            return null;
+        }
+        if(value.equals("true") || value.equals("false")
+                || value.matches("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?")) {
+            return value;
+        }
+        throw new IllegalArgumentException("Invalid value at " + start);
+    }
+
+    private static String readString(String text, int[] pos) {
+        expect(text, pos, '"');
+        StringBuilder value = new StringBuilder();
+        while(pos[0] < text.length()) {
+            char c = text.charAt(pos[0]++);
+            if(c == '"') {
+                return value.toString();
+            }
+            if(c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if(pos[0] >= text.length()) {
+                break;
+            }
+            char escaped = text.charAt(pos[0]++);
+            switch(escaped) {
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'u':
+                    if(pos[0] + 4 > text.length()) {
+                        throw new IllegalArgumentException("Invalid escape");
+                    }
+                    try {
+                        value.append((char) Integer.parseInt(text.substring(
+                                pos[0], pos[0] + 4), 16));
+                    } catch(NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid escape");
+                    }
+                    pos[0] += 4;
+                    break;
+                default:
+                    value.append(escaped);
+            }
+        }
+        throw new IllegalArgumentException("Unterminated string");
+    }
+
+    private static void expect(String text, int[] pos, char expected) {
+        if(next(text, pos) != expected) {
+            throw new IllegalArgumentException("Expected '" + expected
+                    + "' at " + (pos[0] - 1));
+        }
+    }
+
+    private static char next(String text, int[] pos) {
+        char c = peek(text, pos);
+        pos[0]++;
+        return c;
+    }
+
+    private static char peek(String text, int[] pos) {
+        pos[0] = skipSpace(text, pos[0]);
+        if(pos[0] >= text.length()) {
+            throw new IllegalArgumentException("Unexpected end of JSON");
+        }
+        return text.charAt(pos[0]);
+    }
+
+    private static int skipSpace(String text, int pos) {
+        while(pos < text.length() && Character.isWhitespace(
+                text.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,146 @@
+
+package subscriptionmanager;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LatencyHistogram class counts how long an operation takes, in
+ * nanoseconds, so the percentiles of its latency can be reported by the
+ * Metrics.
+ * Like an HDR histogram the buckets grow with the value, each power of two is
+ * split into 32 buckets of equal width, so any value is counted in a bucket
+ * within about 3% of it whether it is a microsecond or a minute, with a fixed
+ * 2048 buckets. Values are recorded by any number of threads at once without
+ * locking, each bucket is an element of an AtomicLongArray and the count, sum
+ * and maximum are kept by adders.
+ *
+ * @see Metrics
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1)
+            * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * The constructor takes the name the histogram is reported under.
+     *
+     * @param name String name of the operation, i.e. search.
+     */
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records one operation.
+     *
+     * @param nanos long time the operation took in nanoseconds, a negative
+     *     time is counted as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucket(value));
+        count.increment();
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return total.sum();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * Gets the mean time of the operations recorded.
+     *
+     * @return double mean time in nanoseconds, 0 if none are recorded.
+     */
+    public double getMeanNanos() {
+        long recorded = count.sum();
+        return recorded == 0 ? 0 : (double) total.sum() / recorded;
+    }
+
+    /**
+     * Gets the time within which a percentage of the operations recorded
+     * finished, the upper end of the bucket holding that operation.
+     *
+     * @param percentile double percentage from 0 to 100, i.e. 99.
+     * @return long time in nanoseconds, 0 if none are recorded.
+     */
+    public long getPercentileNanos(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long recorded = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            recorded += counts[i];
+        }
+        if(recorded == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(recorded
+                * Math.min(100, Math.max(0, percentile)) / 100));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if(seen >= target) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Clears every operation recorded.
+     */
+    public void reset() {
+        for(int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+    /**
+     * Gets the bucket of a value, values below 32 have a bucket each, above
+     * that the power of two of the value picks a group of 32 buckets and the
+     * next five bits of the value the bucket in the group.
+     */
+    private static int bucket(long value) {
+        if(value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS
+                + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    private static long upperBound(int bucket) {
+        if(bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
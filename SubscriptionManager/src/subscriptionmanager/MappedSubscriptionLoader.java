@@ -0,0 +1,286 @@
+
+package subscriptionmanager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The MappedSubscriptionLoader reads large subscription files by memory
+ * mapping the file and parsing it in parallel.
+ * The file is split into chunks which start and end on a line boundary, each
+ * chunk is mapped with FileChannel.map() and parsed by a SubscriptionParser on
+ * a fork-join pool into a SubscriptionStore of its own. The stores of the
+ * chunks are then added to the result in the order of the chunks, so the rows
+ * are in the same order as the file, and any malformed rows are reported with
+ * their line number in the whole file. Each chunk is released as soon as it
+ * has been added, so the rows are not held twice for longer than needed. A file can also be summarised without
+ * a store, each chunk is then added to a SummaryCube of its own and the cubes
+ * are merged, as used by the AggregateCache.
+ *
+ * @see SubscriptionParser
+ * @see SubscriptionStore
+ * @see Summary#loadFile(java.io.File, java.io.PrintStream)
+ * @see AggregateCache
+ */
+public class MappedSubscriptionLoader {
+
+    private static final long MIN_CHUNK_SIZE = 1L << 20;
+    private static final long MAX_CHUNK_SIZE = 1L << 28;
+    private static final int SCAN_SIZE = 1 << 12;
+    private static final int BYTES_PER_ROW = 32;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * The default constructor parses the chunks on the common fork-join pool.
+     */
+    public MappedSubscriptionLoader() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Overloaded constructor to parse the chunks on a given pool, i.e. to limit
+     * the number of threads used.
+     *
+     * @param pool ForkJoinPool the chunks are parsed on.
+     */
+    public MappedSubscriptionLoader(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Reads every subscription in the file and adds them to the store in file
+     * order. The malformed() method of the handler is called for each row
+     * which could not be parsed, on the calling thread once all of the chunks
+     * are parsed, the row() method is not used.
+     *
+     * @param file File containing the subscriptions.
+     * @param store SubscriptionStore the subscriptions are added to.
+     * @param errors RowHandler to receive the malformed rows.
+     * @return long number of lines read.
+     * @throws IOException if the file can not be read or mapped.
+     */
+    public long load(File file, SubscriptionStore store,
+            SubscriptionParser.RowHandler errors) throws IOException {
+
+        try(FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+
+            long size = channel.size();
+            store.ensureCapacity((int) Math.min(Integer.MAX_VALUE - 8,
+                    store.size() + size / BYTES_PER_ROW));
+            return read(channel, size, store, null, errors);
+        }
+    }
+
+    /**
+     * Adds every subscription in the first bytes of a file to a cube, without
+     * keeping the rows. The malformed() method of the handler is called for
+     * each row which could not be parsed, on the calling thread once all of
+     * the chunks are parsed, the row() method is not used.
+     *
+     * @param channel FileChannel of the file, left open.
+     * @param size long number of bytes of the file to read.
+     * @param cube SummaryCube the subscriptions are added to.
+     * @param errors RowHandler to receive the malformed rows.
+     * @return long number of lines read.
+     * @throws IOException if the file can not be read or mapped.
+     */
+    public long aggregate(FileChannel channel, long size, SummaryCube cube,
+            SubscriptionParser.RowHandler errors) throws IOException {
+        return read(channel, size, null, cube, errors);
+    }
+
+    /**
+     * Parses the chunks of a file in parallel and adds them in file order to
+     * either the store or the cube. A finished task keeps its chunk, so each
+     * task is removed from the list once its chunk has been added, letting
+     * the store of the chunk be collected while the later chunks are added.
+     */
+    private long read(FileChannel channel, long size, SubscriptionStore store,
+            SummaryCube cube, SubscriptionParser.RowHandler errors)
+            throws IOException {
+
+        long[] bounds = split(channel, size);
+        List<ChunkTask> tasks = new ArrayList<>();
+        for(int i = 0; i < bounds.length - 1; i++) {
+            if(bounds[i + 1] > bounds[i]) {
+                tasks.add(new ChunkTask(channel, bounds[i], bounds[i + 1],
+                        cube != null));
+            }
+        }
+        for(ChunkTask task: tasks) {
+            pool.execute(task);
+        }
+
+        long lines = 0;
+        ListIterator<ChunkTask> pending = tasks.listIterator();
+        while(pending.hasNext()) {
+            Chunk chunk;
+            try {
+                chunk = pending.next().join();
+            } catch(UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if(cube != null) {
+                cube.merge(chunk.cube);
+            } else {
+                store.addAll(chunk.store);
+            }
+            for(Malformed bad: chunk.malformed) {
+                errors.malformed(lines + bad.line, bad.column, bad.reason);
+            }
+            lines += chunk.lines;
+            pending.remove();
+        }
+        return lines;
+    }
+
+    /**
+     * Splits the file into chunks, each boundary is moved forward to the
+     * start of the next line so no line is split between two chunks.
+     *
+     * @param channel FileChannel of the file.
+     * @param size long number of bytes of the file to split.
+     * @return long[] of chunk boundaries, starting at 0 and ending at the
+     *     size.
+     * @throws IOException if the file can not be read.
+     */
+    private long[] split(FileChannel channel, long size) throws IOException {
+
+        long chunks = Math.max(1, Math.min(size / MIN_CHUNK_SIZE,
+                pool.getParallelism() * 4L));
+        chunks = Math.max(chunks, (size + MAX_CHUNK_SIZE - 1)
+                / MAX_CHUNK_SIZE);
+        long chunkSize = size / chunks;
+
+        long[] bounds = new long[(int) chunks + 1];
+        ByteBuffer scan = ByteBuffer.allocate(SCAN_SIZE);
+        for(int i = 1; i < chunks; i++) {
+            bounds[i] = nextLine(channel, Math.max(bounds[i - 1],
+                    i * chunkSize), size, scan);
+        }
+        bounds[(int) chunks] = size;
+        return bounds;
+    }
+
+    /**
+     * Finds the position after the first new line at or after pos.
+     */
+    private static long nextLine(FileChannel channel, long pos, long size,
+            ByteBuffer scan) throws IOException {
+
+        while(pos < size) {
+            scan.clear();
+            scan.limit((int) Math.min(scan.capacity(), size - pos));
+            int read = channel.read(scan, pos);
+            if(read <= 0) {
+                break;
+            }
+            for(int i = 0; i < read; i++) {
+                if(scan.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += read;
+        }
+        return size;
+    }
+
+    /**
+     * Maps and parses a single chunk of the file.
+     */
+    private static final class ChunkTask extends RecursiveTask<Chunk> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final boolean summarise;
+
+        ChunkTask(FileChannel channel, long start, long end,
+                boolean summarise) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.summarise = summarise;
+        }
+
+        @Override
+        protected Chunk compute() {
+            MappedByteBuffer buf;
+            try {
+                buf = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        end - start);
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            Chunk chunk = new Chunk(end - start, summarise);
+            chunk.lines = new SubscriptionParser().parse(buf, 0,
+                    (int) (end - start), 1, chunk);
+            return chunk;
+        }
+    }
+
+    /**
+     * The subscription rows, or their summary, and malformed rows of one
+     * chunk, the line numbers are relative to the start of the chunk.
+     */
+    private static final class Chunk implements SubscriptionParser.RowHandler {
+
+        private final SubscriptionStore store;
+        private final SummaryCube cube;
+        private final List<Malformed> malformed = new ArrayList<>();
+        private long lines;
+
+        Chunk(long bytes, boolean summarise) {
+            store = summarise ? null
+                    : new SubscriptionStore((int) (bytes / BYTES_PER_ROW));
+            cube = summarise ? new SummaryCube() : null;
+        }
+
+        @Override
+        public void row(SubscriptionParser.ParsedRow row) {
+            if(cube != null) {
+                cube.add(row.getEpochDay(), row.getPackageType().ordinal(),
+                        row.getDuration().ordinal(),
+                        row.getPaymentType().ordinal(), row.getTotalCost());
+            } else {
+                store.add(row);
+            }
+        }
+
+        @Override
+        public void malformed(long line, int column, String reason) {
+            malformed.add(new Malformed(line, column, reason));
+        }
+    }
+
+    /**
+     * A row which could not be parsed, kept until the rows before it have been
+     * counted, also used by the Repricer.
+     */
+    static final class Malformed {
+
+        final long line;
+        final int column;
+        final String reason;
+
+        Malformed(long line, int column, String reason) {
+            this.line = line;
+            this.column = column;
+            this.reason = reason;
+        }
+    }
+}
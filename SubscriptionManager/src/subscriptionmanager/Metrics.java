@@ -0,0 +1,547 @@
+
+package subscriptionmanager;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The Metrics class is a utility class counting how much work the program
+ * does and how long it takes: the rows loaded from files and the rate they are
+ * parsed at, the subscriptions held in memory, and the latency of loading a
+ * file, updating a summary, searching for a customer and appending to the
+ * subscriptions file, each in a LatencyHistogram, and the hits, misses and
+ * evictions of the SearchCache of each CustomerIndex.
+ * <p>
+ * The metrics are only recorded when the subscriptionmanager.metrics system
+ * property is true. The flag is a static final field, so when it is false the
+ * checks around each measurement are removed by the compiler and the hot paths
+ * do not read the clock at all. When enabled the metrics are registered with
+ * the platform MBean server under subscriptionmanager:type=Metrics and
+ * subscriptionmanager:type=Latency,name=... for JMX clients such as
+ * JConsole, and if the subscriptionmanager.metrics.report property names a
+ * file the report is written to it every subscriptionmanager.metrics.interval
+ * seconds, 60 by default, as JSON if the file ends with .json and as text
+ * otherwise.
+ *
+ * @see LatencyHistogram
+ * @see SearchCache
+ */
+public class Metrics {
+
+    /**
+     * True if the metrics are being recorded.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean(
+            "subscriptionmanager.metrics");
+
+    public static final LatencyHistogram LOAD = new LatencyHistogram("load");
+    public static final LatencyHistogram AGGREGATION = new LatencyHistogram(
+            "aggregation");
+    public static final LatencyHistogram SEARCH = new LatencyHistogram(
+            "search");
+    public static final LatencyHistogram APPEND = new LatencyHistogram(
+            "append");
+
+    private static final LatencyHistogram[] HISTOGRAMS = {LOAD, AGGREGATION,
+        SEARCH, APPEND};
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    private static final LongAdder ROWS_LOADED = new LongAdder();
+    private static final LongAdder RECORDS_APPENDED = new LongAdder();
+    private static final LongAdder BYTES_APPENDED = new LongAdder();
+    private static final LongAdder SEARCH_CACHE_HITS = new LongAdder();
+    private static final LongAdder SEARCH_CACHE_MISSES = new LongAdder();
+    private static final LongAdder SEARCH_CACHE_EVICTIONS = new LongAdder();
+    private static final List<WeakReference<SubscriptionStore>> STORES =
+            new ArrayList<>();
+
+    static {
+        if(ENABLED) {
+            register();
+            startReporter(System.getProperty(
+                    "subscriptionmanager.metrics.report"), Long.getLong(
+                    "subscriptionmanager.metrics.interval", 60));
+        }
+    }
+
+    /**
+     * Private constructor as the class only has static methods.
+     */
+    private Metrics() {
+    }
+
+    /**
+     * Reads the clock at the start of an operation.
+     *
+     * @return long time in nanoseconds, or 0 if the metrics are disabled.
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time of an operation started with start().
+     *
+     * @param histogram LatencyHistogram of the operation.
+     * @param start long time returned by start().
+     */
+    public static void time(LatencyHistogram histogram, long start) {
+        if(ENABLED) {
+            histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records the parsing of a file. A file given from a snapshot or a cache
+     * is not recorded, so the rate is of the rows actually parsed.
+     *
+     * @param start long time returned by start().
+     * @param rows long number of rows parsed.
+     */
+    public static void recordLoad(long start, long rows) {
+        if(ENABLED) {
+            LOAD.record(System.nanoTime() - start);
+            ROWS_LOADED.add(rows);
+        }
+    }
+
+    /**
+     * Records lines appended to a subscriptions file.
+     *
+     * @param start long time returned by start() when the lines were
+     *     queued.
+     * @param records int number of lines appended.
+     * @param bytes int number of bytes appended.
+     */
+    public static void recordAppend(long start, int records, int bytes) {
+        if(ENABLED) {
+            APPEND.record(System.nanoTime() - start);
+            RECORDS_APPENDED.add(records);
+            BYTES_APPENDED.add(bytes);
+        }
+    }
+
+    /**
+     * Records a search looked up in a SearchCache.
+     *
+     * @param hit boolean true if the result was cached.
+     */
+    public static void recordSearchCache(boolean hit) {
+        if(ENABLED) {
+            (hit ? SEARCH_CACHE_HITS : SEARCH_CACHE_MISSES).increment();
+        }
+    }
+
+    /**
+     * Records a result evicted from a SearchCache to keep within its budget.
+     */
+    public static void recordSearchCacheEviction() {
+        if(ENABLED) {
+            SEARCH_CACHE_EVICTIONS.increment();
+        }
+    }
+
+    /**
+     * Counts the subscriptions of a store in the records in memory for as
+     * long as the store is in use. The store is held by a weak reference so
+     * it can still be collected.
+     *
+     * @param store SubscriptionStore being used.
+     */
+    public static void track(SubscriptionStore store) {
+        if(ENABLED) {
+            synchronized(STORES) {
+                STORES.add(new WeakReference<>(store));
+            }
+        }
+    }
+
+    public static long getRowsLoaded() {
+        return ROWS_LOADED.sum();
+    }
+
+    /**
+     * Gets the rate rows have been loaded at, over the time spent loading.
+     *
+     * @return double rows per second, 0 if nothing has been loaded.
+     */
+    public static double getLoadRowsPerSecond() {
+        long nanos = LOAD.getTotalNanos();
+        return nanos == 0 ? 0 : ROWS_LOADED.sum() * 1e9 / nanos;
+    }
+
+    /**
+     * Gets the number of subscriptions in the stores still in use.
+     *
+     * @return long number of subscriptions held in memory.
+     */
+    public static long getRecordsInMemory() {
+        long records = 0;
+        synchronized(STORES) {
+            Iterator<WeakReference<SubscriptionStore>> stores =
+                    STORES.iterator();
+            while(stores.hasNext()) {
+                SubscriptionStore store = stores.next().get();
+                if(store == null) {
+                    stores.remove();
+                } else {
+                    records += store.size();
+                }
+            }
+        }
+        return records;
+    }
+
+    public static long getRecordsAppended() {
+        return RECORDS_APPENDED.sum();
+    }
+
+    public static long getBytesAppended() {
+        return BYTES_APPENDED.sum();
+    }
+
+    public static long getSearchCacheHits() {
+        return SEARCH_CACHE_HITS.sum();
+    }
+
+    public static long getSearchCacheMisses() {
+        return SEARCH_CACHE_MISSES.sum();
+    }
+
+    public static long getSearchCacheEvictions() {
+        return SEARCH_CACHE_EVICTIONS.sum();
+    }
+
+    /**
+     * Gets the share of searches found in a SearchCache.
+     *
+     * @return double hits as a percentage of lookups, 0 if none.
+     */
+    public static double getSearchCacheHitPercent() {
+        long hits = SEARCH_CACHE_HITS.sum();
+        long lookups = hits + SEARCH_CACHE_MISSES.sum();
+        return lookups == 0 ? 0 : hits * 100.0 / lookups;
+    }
+
+    /**
+     * Writes the metrics as text, a line for each counter followed by a table
+     * of the latencies in microseconds.
+     *
+     * @param text StringBuilder the report is appended to.
+     */
+    public static void appendText(StringBuilder text) {
+        String newLine = System.lineSeparator();
+        if(!ENABLED) {
+            text.append("Metrics disabled, run with "
+                    + "-Dsubscriptionmanager.metrics=true").append(newLine);
+        }
+        text.append("Rows loaded: ").append(getRowsLoaded())
+                .append(String.format(" (%.0f rows/s)",
+                        getLoadRowsPerSecond())).append(newLine)
+                .append("Records in memory: ").append(getRecordsInMemory())
+                .append(newLine)
+                .append("Records appended: ").append(getRecordsAppended())
+                .append(" (").append(getBytesAppended()).append(" bytes)")
+                .append(newLine)
+                .append("Search cache: ").append(getSearchCacheHits())
+                .append(" hits, ").append(getSearchCacheMisses())
+                .append(" misses").append(String.format(" (%.1f%%), ",
+                        getSearchCacheHitPercent()))
+                .append(getSearchCacheEvictions()).append(" evictions")
+                .append(newLine)
+                .append(String.format("%-12s %10s %12s %12s %12s %12s %12s",
+                        "Latency us", "Count", "Mean", "P50", "P90", "P99",
+                        "Max")).append(newLine);
+        for(LatencyHistogram histogram: HISTOGRAMS) {
+            text.append(String.format("%-12s %10d %12.1f",
+                    histogram.getName(), histogram.getCount(),
+                    histogram.getMeanNanos() / 1000));
+            for(double percentile: PERCENTILES) {
+                text.append(String.format(" %12.1f", histogram
+                        .getPercentileNanos(percentile) / 1000.0));
+            }
+            text.append(String.format(" %12.1f", histogram.getMaxNanos()
+                    / 1000.0)).append(newLine);
+        }
+    }
+
+    /**
+     * Writes the metrics as a JSON object, with an object of the latencies
+     * in microseconds of each operation.
+     *
+     * @param json StringBuilder the object is appended to.
+     */
+    public static void appendJson(StringBuilder json) {
+        json.append("{\"enabled\":").append(ENABLED)
+                .append(",\"rowsLoaded\":").append(getRowsLoaded())
+                .append(",\"loadRowsPerSecond\":").append(Json.number(
+                        getLoadRowsPerSecond()))
+                .append(",\"recordsInMemory\":").append(getRecordsInMemory())
+                .append(",\"recordsAppended\":").append(getRecordsAppended())
+                .append(",\"bytesAppended\":").append(getBytesAppended())
+                .append(",\"searchCache\":{\"hits\":")
+                .append(getSearchCacheHits())
+                .append(",\"misses\":").append(getSearchCacheMisses())
+                .append(",\"hitPercent\":").append(Json.number(
+                        getSearchCacheHitPercent()))
+                .append(",\"evictions\":").append(getSearchCacheEvictions())
+                .append('}')
+                .append(",\"latencyMicros\":{");
+        for(int i = 0; i < HISTOGRAMS.length; i++) {
+            LatencyHistogram histogram = HISTOGRAMS[i];
+            if(i > 0) {
+                json.append(',');
+            }
+            Json.appendString(json, histogram.getName());
+            json.append(":{\"count\":").append(histogram.getCount())
+                    .append(",\"mean\":").append(Json.number(
+                            histogram.getMeanNanos() / 1000));
+            for(double percentile: PERCENTILES) {
+                json.append(",\"p").append((int) percentile).append("\":")
+                        .append(Json.number(histogram.getPercentileNanos(
+                                percentile) / 1000.0));
+            }
+            json.append(",\"max\":").append(Json.number(
+                    histogram.getMaxNanos() / 1000.0)).append('}');
+        }
+        json.append("}}");
+    }
+
+    /**
+     * Clears every counter and histogram, the records in memory are still
+     * counted.
+     */
+    public static void reset() {
+        ROWS_LOADED.reset();
+        RECORDS_APPENDED.reset();
+        BYTES_APPENDED.reset();
+        SEARCH_CACHE_HITS.reset();
+        SEARCH_CACHE_MISSES.reset();
+        SEARCH_CACHE_EVICTIONS.reset();
+        for(LatencyHistogram histogram: HISTOGRAMS) {
+            histogram.reset();
+        }
+    }
+
+    private static void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(new MetricsBean(), new ObjectName(
+                    "subscriptionmanager:type=Metrics"));
+            for(LatencyHistogram histogram: HISTOGRAMS) {
+                server.registerMBean(new LatencyBean(histogram),
+                        new ObjectName("subscriptionmanager:type=Latency,name="
+                                + histogram.getName()));
+            }
+        } catch(JMException e) {
+            System.out.println("\nUnable to register metrics with JMX.");
+        }
+    }
+
+    /**
+     * Writes the report to a file at a fixed rate on a daemon thread, the
+     * report is written to a temporary file and moved over the last one so a
+     * reader never sees part of a report.
+     */
+    private static void startReporter(String filename, long seconds) {
+        if(filename == null || filename.isEmpty() || seconds <= 0) {
+            return;
+        }
+        File file = new File(filename);
+        boolean json = filename.endsWith(".json");
+        ScheduledExecutorService reporter =
+                Executors.newSingleThreadScheduledExecutor(task -> {
+                    Thread thread = new Thread(task, "metrics-reporter");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        reporter.scheduleAtFixedRate(() -> {
+            StringBuilder report = new StringBuilder();
+            if(json) {
+                appendJson(report);
+                report.append(System.lineSeparator());
+            } else {
+                appendText(report);
+            }
+            File partial = new File(file.getAbsoluteFile().getParentFile(),
+                    file.getName() + ".tmp");
+            try {
+                Files.write(partial.toPath(), report.toString().getBytes(
+                        StandardCharsets.UTF_8));
+                Files.move(partial.toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch(IOException e) {
+                System.out.println("\nUnable to write metrics to "
+                        + filename + ".");
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * The counters of the metrics seen by JMX clients.
+     */
+    public interface CountersMXBean {
+
+        long getRowsLoaded();
+
+        double getLoadRowsPerSecond();
+
+        long getRecordsInMemory();
+
+        long getRecordsAppended();
+
+        long getBytesAppended();
+
+        long getSearchCacheHits();
+
+        long getSearchCacheMisses();
+
+        double getSearchCacheHitPercent();
+
+        long getSearchCacheEvictions();
+
+        /**
+         * Gets the whole report as JSON.
+         *
+         * @return String JSON object of the metrics.
+         */
+        String getReport();
+
+        /**
+         * Clears every counter and histogram.
+         */
+        void reset();
+    }
+
+    /**
+     * The latency of an operation seen by JMX clients, in microseconds.
+     */
+    public interface LatencyMXBean {
+
+        long getCount();
+
+        double getMeanMicros();
+
+        double getP50Micros();
+
+        double getP90Micros();
+
+        double getP99Micros();
+
+        double getMaxMicros();
+    }
+
+    private static final class MetricsBean implements CountersMXBean {
+
+        @Override
+        public long getRowsLoaded() {
+            return Metrics.getRowsLoaded();
+        }
+
+        @Override
+        public double getLoadRowsPerSecond() {
+            return Metrics.getLoadRowsPerSecond();
+        }
+
+        @Override
+        public long getRecordsInMemory() {
+            return Metrics.getRecordsInMemory();
+        }
+
+        @Override
+        public long getRecordsAppended() {
+            return Metrics.getRecordsAppended();
+        }
+
+        @Override
+        public long getBytesAppended() {
+            return Metrics.getBytesAppended();
+        }
+
+        @Override
+        public long getSearchCacheHits() {
+            return Metrics.getSearchCacheHits();
+        }
+
+        @Override
+        public long getSearchCacheMisses() {
+            return Metrics.getSearchCacheMisses();
+        }
+
+        @Override
+        public double getSearchCacheHitPercent() {
+            return Metrics.getSearchCacheHitPercent();
+        }
+
+        @Override
+        public long getSearchCacheEvictions() {
+            return Metrics.getSearchCacheEvictions();
+        }
+
+        @Override
+        public String getReport() {
+            StringBuilder json = new StringBuilder();
+            appendJson(json);
+            return json.toString();
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+    }
+
+    private static final class LatencyBean implements LatencyMXBean {
+
+        private final LatencyHistogram histogram;
+
+        private LatencyBean(LatencyHistogram histogram) {
+            this.histogram = histogram;
+        }
+
+        @Override
+        public long getCount() {
+            return histogram.getCount();
+        }
+
+        @Override
+        public double getMeanMicros() {
+            return histogram.getMeanNanos() / 1000;
+        }
+
+        @Override
+        public double getP50Micros() {
+            return histogram.getPercentileNanos(50) / 1000.0;
+        }
+
+        @Override
+        public double getP90Micros() {
+            return histogram.getPercentileNanos(90) / 1000.0;
+        }
+
+        @Override
+        public double getP99Micros() {
+            return histogram.getPercentileNanos(99) / 1000.0;
+        }
+
+        @Override
+        public double getMaxMicros() {
+            return histogram.getMaxNanos() / 1000.0;
+        }
+    }
+}
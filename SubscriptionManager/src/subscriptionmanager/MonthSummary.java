@@ -4,7 +4,8 @@ package subscriptionmanager;
 /**
  * The MonthSummary class extends the functionality of the Summary class by
  * allowing a month to be provided by the user then providing the summary of
- * subscriptions for that month. 
+ * subscriptions for that month. A year can also be provided, so the same
+ * month of different years can be summarised separately.
  * This method uses the driver method generateSummary() and the file reading
  * method readFile() contained in the Summary class.
  * 
@@ -15,6 +16,7 @@ package subscriptionmanager;
 public class MonthSummary extends Summary {
     
     private String month;
+    private int year;
     
     /**
      * Default constructor uses the super constructor of the base class, passes
@@ -30,44 +32,29 @@ public class MonthSummary extends Summary {
      * the Summary class and calculates the metrics needed to produce the
      * summary for the month provided by the user.
      * The requestMonth method is called to get the month to be summarised from
-     * the user. The ArrayList of subscriptions is then iterated over and any
-     * subscriptions from the month provided by the user are tallied, the
-     * package type is tallied and converted to a percentage, and the totalCost
-     * of the subscription summed.
+     * the user, followed by the year, or 0 to include the month of every year.
+     * The subscriptions from the month provided by the user, the count of each
+     * package type, converted to a percentage, and the sum of the totalCost
+     * of the subscriptions are then read from the SummaryCube populated in
+     * readFile() by a SummaryReport.
+     * 
+     * @see SummaryCube
+     * @see SummaryReport
      */
     @Override
     protected void calculateSummary() {
         
         month = Validator.validateMonth(monthOrder);
-        
-        double totalCost = 0.0;
-        double bronze = 0.0;
-        double silver = 0.0;
-        double gold = 0.0;  
-        System.out.println(subs.size());
-        for(Subscription sub: subs) {             
-            if(mft.format(sub.getSubDate()).equals(month)) {
-                totalSubs++;
-                totalCost = totalCost + sub.getTotalCost();
-                switch(sub.getPackageType()) {
-                    case B:
-                        bronze++;
-                        break;
-                    case S:
-                        silver++;
-                        break;
-                    case G:
-                        gold++;
-                        break;
-                }
+        int monthIndex = monthIndex(month);
+        do {
+            year = Validator.validateNumber("\nEnter the year i.e 2020, or 0 "
+                    + "for every year: ");
+            if(year < 0) {
+                System.out.println("\nInvalid year, please enter a year or 0.");
             }
-        }
-        totalCost = totalCost / totalSubs / 100;
-        aveCost = Math.round((totalCost) * 100) / 100.0;
-
-        percentBronze = Math.round((bronze / totalSubs * 100) * 10) / 10.0;
-        percentSilver = Math.round((silver / totalSubs * 100) * 10) / 10.0;
-        percentGold = Math.round((gold / totalSubs * 100) * 10) / 10.0;
+        } while(year < 0);
+        
+        setFigures(SummaryReport.month(cube, year, monthIndex));
     }
     
     /**
@@ -83,7 +70,7 @@ public class MonthSummary extends Summary {
         
         String[] summary = new String[7];
         summary[0] = "\n+========== Summary of subscriptions for " + month
-                + " ==========+\n";
+                + (year == 0 ? "" : " " + year) + " ==========+\n";
         summary[1] = "\nTotal subscriptions: " + totalSubs;
         summary[2] = String.format("\nAverage monthly subscription price: £"
                 + "%.2f", aveCost);
@@ -0,0 +1,171 @@
+
+package subscriptionmanager;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The PipelineEvents class holds the Java Flight Recorder events written
+ * around each stage of the program, so a recording of a run shows which stage
+ * was running at the time of a garbage collection, an allocation or a lock,
+ * without attaching a profiler. A recording is started with
+ * <pre>java -XX:StartFlightRecording=filename=run.jfr -jar ...</pre>
+ * and the events are listed under Subscription Manager in JDK Mission
+ * Control, or with "jfr print --categories 'Subscription Manager' run.jfr".
+ * <p>
+ * Each event times its stage between begin() and commit() and carries the
+ * number of rows, and bytes where the stage reads or writes a file. When no
+ * recording is running commit() does nothing and the events are not kept, so
+ * they cost next to nothing.
+ *
+ * @see Metrics
+ */
+public class PipelineEvents {
+
+    private static final String CATEGORY = "Subscription Manager";
+
+    /**
+     * Private constructor as the class only holds the event classes.
+     */
+    private PipelineEvents() {
+    }
+
+    /**
+     * Loading the subscriptions of a file into a SubscriptionStore, or their
+     * summary through the AggregateCache, which notes whether the summary
+     * was cached and whether only the lines appended to the file were read.
+     */
+    @Name("subscriptionmanager.FileLoad")
+    @Label("File Load")
+    @Category(CATEGORY)
+    @Description("Subscriptions of a file loaded into memory")
+    public static final class FileLoad extends Event {
+
+        @Label("File")
+        String file;
+
+        @Label("Size")
+        @DataAmount(DataAmount.BYTES)
+        long bytes;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("From Snapshot")
+        boolean snapshot;
+
+        @Label("From Aggregate Cache")
+        boolean cached;
+
+        @Label("Appended Lines Only")
+        boolean tail;
+    }
+
+    /**
+     * Parsing a chunk of a subscriptions file, a block of a stream or a
+     * region of a mapped file.
+     */
+    @Name("subscriptionmanager.ChunkParse")
+    @Label("Chunk Parse")
+    @Category(CATEGORY)
+    @Description("Rows of a chunk of a subscriptions file parsed")
+    @StackTrace(false)
+    public static final class ChunkParse extends Event {
+
+        @Label("First Line")
+        long firstLine;
+
+        @Label("Lines")
+        long lines;
+
+        @Label("Size")
+        @DataAmount(DataAmount.BYTES)
+        long bytes;
+    }
+
+    /**
+     * Adding rows of a store to a SummaryCube, or the lines of a file read
+     * straight into one by the AggregateCache, when the rows in the store are
+     * the subscriptions in the cube.
+     */
+    @Name("subscriptionmanager.Aggregation")
+    @Label("Aggregation")
+    @Category(CATEGORY)
+    @Description("Rows of a store added to a summary")
+    public static final class Aggregation extends Event {
+
+        @Label("Rows Added")
+        long rows;
+
+        @Label("Rows in Store")
+        long storeRows;
+
+        @Label("Parallel")
+        boolean parallel;
+    }
+
+    /**
+     * Searching a CustomerIndex for a customer name, the customers matched
+     * are not counted when the rows are found in its cache.
+     */
+    @Name("subscriptionmanager.Search")
+    @Label("Search")
+    @Category(CATEGORY)
+    @Description("Customers searched for part of a name")
+    public static final class Search extends Event {
+
+        @Label("Term")
+        String term;
+
+        @Label("Customers Matched")
+        long customers;
+
+        @Label("Rows Matched")
+        long rows;
+
+        @Label("From Cache")
+        boolean cached;
+    }
+
+    /**
+     * Pricing a subscription taken from the user.
+     */
+    @Name("subscriptionmanager.Pricing")
+    @Label("Pricing")
+    @Category(CATEGORY)
+    @Description("Total cost of a subscription calculated")
+    @StackTrace(false)
+    public static final class Pricing extends Event {
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Total Cost")
+        long totalCost;
+    }
+
+    /**
+     * Writing a batch of records to the end of a subscriptions file.
+     */
+    @Name("subscriptionmanager.Append")
+    @Label("Append")
+    @Category(CATEGORY)
+    @Description("Batch of records written to a subscriptions file")
+    public static final class Append extends Event {
+
+        @Label("Records")
+        long rows;
+
+        @Label("Size")
+        @DataAmount(DataAmount.BYTES)
+        long bytes;
+
+        @Label("Synced")
+        boolean synced;
+    }
+}
@@ -0,0 +1,225 @@
+
+package subscriptionmanager;
+
+/**
+ * The PricingTable class holds the total cost of every combination of package
+ * type, duration, discount and payment type, calculated once when the table is
+ * created, so pricing a subscription is a single array lookup rather than
+ * filling a BasePackage and calculating the discount each time.
+ * The table is indexed by the ordinals of the enum constants, the same values
+ * the SubscriptionStore keeps for each row, and a discount from 0 to 9 percent,
+ * the digit of a discount code. The costs are calculated with the same rules as
+ * the original cost calculation, the discount is taken from the base cost, then
+ * the discount of the payment type, 5% for a one-off payment which is paid for
+ * the whole term, then the cost is rounded to the nearest penny.
+ * <p>
+ * A table can not be changed after it is created, so it can be shared by any
+ * number of threads. The STANDARD table uses the prices of the BasePackage
+ * class.
+ *
+ * @see BasePackage
+ * @see Subscription#calculateCost
+ */
+public final class PricingTable {
+
+    public static final int DISCOUNTS = 10;
+
+    private static final int PACKAGES = PackageType.values().length;
+    private static final int DURATIONS = Duration.values().length;
+    private static final int PAYMENTS = PaymentType.values().length;
+
+    /**
+     * The discount of each payment type by ordinal, 5% for one-off payments.
+     */
+    private static final int[] PAYMENT_DISCOUNTS = {5, 0};
+
+    /**
+     * The table of the prices set by the BasePackage class.
+     */
+    public static final PricingTable STANDARD = new PricingTable(
+            basePackagePrices());
+
+    private final int[][] basePrices;
+    private final int[] paymentDiscounts;
+    private final int[] prices;
+
+    /**
+     * The constructor calculates the total cost of every combination from the
+     * base price of each package and duration, with the standard payment
+     * discounts.
+     *
+     * @param basePrices int[][] base monthly prices in pence, indexed by the
+     *     package type ordinal then the duration ordinal.
+     * @throws IllegalArgumentException if a price is missing or negative.
+     */
+    public PricingTable(int[][] basePrices) {
+        this(basePrices, PAYMENT_DISCOUNTS);
+    }
+
+    /**
+     * Overloaded constructor to also set the percentage discount of each
+     * payment type.
+     *
+     * @param basePrices int[][] base monthly prices in pence, indexed by the
+     *     package type ordinal then the duration ordinal.
+     * @param paymentDiscounts int[] percentage discount of each payment type,
+     *     indexed by the payment type ordinal.
+     * @throws IllegalArgumentException if a price is missing or negative, or
+     *     a discount is not from 0 to 100.
+     */
+    public PricingTable(int[][] basePrices, int[] paymentDiscounts) {
+
+        if(paymentDiscounts.length != PAYMENTS) {
+            throw new IllegalArgumentException("Expected discounts for "
+                    + PAYMENTS + " payment types");
+        }
+        for(int pay = 0; pay < PAYMENTS; pay++) {
+            if(paymentDiscounts[pay] < 0 || paymentDiscounts[pay] > 100) {
+                throw new IllegalArgumentException("Invalid discount for "
+                        + PaymentType.values()[pay].payment);
+            }
+        }
+        this.paymentDiscounts = paymentDiscounts.clone();
+        if(basePrices.length != PACKAGES) {
+            throw new IllegalArgumentException("Expected prices for "
+                    + PACKAGES + " packages");
+        }
+        this.basePrices = new int[PACKAGES][];
+        this.prices = new int[PACKAGES * DURATIONS * DISCOUNTS * PAYMENTS];
+        for(int p = 0; p < PACKAGES; p++) {
+            if(basePrices[p].length != DURATIONS) {
+                throw new IllegalArgumentException("Expected prices for "
+                        + DURATIONS + " durations");
+            }
+            this.basePrices[p] = basePrices[p].clone();
+            for(int d = 0; d < DURATIONS; d++) {
+                if(basePrices[p][d] < 0) {
+                    throw new IllegalArgumentException("Negative price for "
+                            + PackageType.values()[p].type + " "
+                            + Duration.values()[d].term);
+                }
+                for(int discount = 0; discount < DISCOUNTS; discount++) {
+                    for(int pay = 0; pay < PAYMENTS; pay++) {
+                        prices[index(p, d, discount, pay)] = calculate(
+                                basePrices[p][d], Duration.values()[d].term,
+                                discount, PaymentType.values()[pay],
+                                paymentDiscounts[pay]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the total cost of a subscription.
+     *
+     * @param packageType PackageType of the subscription.
+     * @param subLength Duration of the subscription.
+     * @param discount int percentage discount from 0 to 9.
+     * @param paymentType PaymentType of the subscription.
+     * @return int total cost in pence.
+     */
+    public int price(PackageType packageType, Duration subLength, int discount,
+            PaymentType paymentType) {
+        return price(packageType.ordinal(), subLength.ordinal(), discount,
+                paymentType.ordinal());
+    }
+
+    /**
+     * Gets the total cost of a subscription from the ordinals kept by the
+     * SubscriptionStore.
+     *
+     * @param packageType int package type ordinal.
+     * @param duration int duration ordinal.
+     * @param discount int percentage discount from 0 to 9.
+     * @param paymentType int payment type ordinal.
+     * @return int total cost in pence.
+     * @throws IllegalArgumentException if the discount is not from 0 to 9.
+     */
+    public int price(int packageType, int duration, int discount,
+            int paymentType) {
+        if(discount < 0 || discount >= DISCOUNTS) {
+            throw new IllegalArgumentException("Invalid discount " + discount);
+        }
+        return prices[index(packageType, duration, discount, paymentType)];
+    }
+
+    /**
+     * Gets the base monthly price of a package.
+     *
+     * @param packageType int package type ordinal.
+     * @param duration int duration ordinal.
+     * @return int base price in pence.
+     */
+    public int getBasePrice(int packageType, int duration) {
+        return basePrices[packageType][duration];
+    }
+
+    /**
+     * Gets the percentage discount of a payment type.
+     *
+     * @param paymentType int payment type ordinal.
+     * @return int percentage discount.
+     */
+    public int getPaymentDiscount(int paymentType) {
+        return paymentDiscounts[paymentType];
+    }
+
+    private static int index(int packageType, int duration, int discount,
+            int paymentType) {
+        return ((packageType * DURATIONS + duration) * DISCOUNTS + discount)
+                * PAYMENTS + paymentType;
+    }
+
+    /**
+     * Calculates a total cost, the discount is taken from the base cost then
+     * the discount of the payment type, and a one-off payment is multiplied by
+     * the term.
+     */
+    private static int calculate(int baseCost, int term, int discount,
+            PaymentType paymentType, int paymentDiscount) {
+
+        double afterDiscount;
+        if(discount != 0) {
+            afterDiscount = baseCost - ((((double)discount) / 100) * baseCost);
+        } else {
+            afterDiscount = baseCost;
+        }
+        if(paymentDiscount != 0) {
+            afterDiscount = afterDiscount - ((((double)paymentDiscount) / 100)
+                    * afterDiscount);
+        }
+        if(paymentType == PaymentType.O) {
+            afterDiscount = afterDiscount * term;
+        }
+        return (int)Math.round(afterDiscount);
+    }
+
+    /**
+     * Reads the base price of every package and duration from the
+     * BasePackage class.
+     */
+    private static int[][] basePackagePrices() {
+
+        int[][] base = new int[PACKAGES][DURATIONS];
+        for(Duration duration: Duration.values()) {
+            for(PackageType packageType: PackageType.values()) {
+                BasePackage pack = new BasePackage(duration);
+                switch(packageType) {
+                    case B:
+                        pack.setBronzePackage();
+                        break;
+                    case S:
+                        pack.setSilverPackage();
+                        break;
+                    case G:
+                        pack.setGoldPackage();
+                        break;
+                }
+                base[packageType.ordinal()][duration.ordinal()] =
+                        pack.getBaseCost();
+            }
+        }
+        return base;
+    }
+}
@@ -0,0 +1,505 @@
+package subscriptionmanager;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The RankingQuery class finds the top of the subscriptions of a
+ * SubscriptionStore rather than their totals, i.e. the 100 customers who have
+ * spent the most, the most valuable subscriptions of a month or the discount
+ * codes used most often. A year, a month or both can be given so only the
+ * subscriptions of that month or year are ranked.
+ * <p>
+ * The top subscriptions are found in a single pass over the rows with a
+ * bounded heap of the best K rows so far, the worst of them at the root, so
+ * each row is compared with the root and only a row better than it costs
+ * log K steps to replace it. The pass takes O(N log K) time and O(K) memory
+ * however many rows there are. Customers and discount codes are ranked by
+ * first adding the count and cost of each row to arrays indexed by the id of
+ * the name in the store dictionary, in the same pass, then putting each name
+ * through the same bounded heap, so only the dictionary and the K best names
+ * are held.
+ * <p>
+ * As with the SummaryCube, in parallel mode the rows are split into ranges
+ * on a fork-join pool, each range is ranked by one thread into a heap or
+ * arrays of its own and the results are merged as the ranges are joined.
+ * The arrays of customers and codes are only split into as many ranges as the
+ * pool has threads, so they are not copied once for every small range.
+ * Rows of equal value are ranked in the order they appear in the store, so
+ * the result is the same in either mode.
+ *
+ * @see SummaryCube
+ * @see SubscriptionStore
+ */
+public class RankingQuery {
+
+    private static final int SPLIT_ROWS = 1 << 16;
+
+    /**
+     * What is ranked by the query.
+     */
+    public enum By {
+
+        /**
+         * Customers by the total cost of their subscriptions.
+         */
+        CUSTOMERS,
+
+        /**
+         * Subscriptions by their total cost.
+         */
+        SUBSCRIPTIONS,
+
+        /**
+         * Discount codes by the number of subscriptions using them.
+         */
+        CODES;
+
+        /**
+         * Gets the ranking of a name, ignoring case.
+         *
+         * @param name String customers, subscriptions or codes.
+         * @return By ranking of the name.
+         * @throws IllegalArgumentException if the name is not known.
+         */
+        public static By parse(String name) {
+            for(By by: values()) {
+                if(by.name().equalsIgnoreCase(name)) {
+                    return by;
+                }
+            }
+            throw new IllegalArgumentException("unknown ranking " + name
+                    + ", use customers, subscriptions or codes");
+        }
+    }
+
+    private final SubscriptionStore store;
+    private int year;
+    private int monthIndex = SummaryCube.ALL;
+    private boolean parallel = Boolean.getBoolean(
+            "subscriptionmanager.parallel");
+
+    /**
+     * The constructor takes the store of the subscriptions to rank.
+     *
+     * @param store SubscriptionStore of the subscriptions.
+     */
+    public RankingQuery(SubscriptionStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Sets the year and month of the subscriptions ranked, every
+     * subscription is ranked unless this is set.
+     *
+     * @param year int year, or 0 for every year.
+     * @param monthIndex int month of the year from 0 to 11, or ALL for every
+     *     month.
+     */
+    public void setPeriod(int year, int monthIndex) {
+        this.year = year;
+        this.monthIndex = monthIndex;
+    }
+
+    /**
+     * Sets whether the rows are ranked on a single thread or in parallel on
+     * the common fork-join pool.
+     *
+     * @param parallel boolean true to rank the rows in parallel.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Finds the top of a ranking.
+     *
+     * @param by By what is ranked.
+     * @param limit int most entries in the ranking.
+     * @return Ranking of up to limit entries, best first.
+     */
+    public Ranking top(By by, int limit) {
+        int size = store.size();
+        int split = by == By.SUBSCRIPTIONS ? SPLIT_ROWS : Math.max(
+                SPLIT_ROWS, size / ForkJoinPool.getCommonPoolParallelism()
+                + 1);
+        RankTask task = new RankTask(this, by, Math.max(0, limit), 0, size,
+                parallel ? split : Integer.MAX_VALUE);
+        Partial partial = parallel && size > split
+                ? ForkJoinPool.commonPool().invoke(task) : task.compute();
+        if(by == By.SUBSCRIPTIONS) {
+            return new Ranking(store, by, partial.top, null);
+        }
+        long[] keys = by == By.CUSTOMERS ? partial.costs : partial.counts;
+        int none = by == By.CODES ? store.getDiscountCodes().find("-") : -1;
+        TopK top = new TopK(Math.max(0, limit), keys.length);
+        for(int id = 0; id < keys.length; id++) {
+            if(partial.counts[id] > 0 && id != none) {
+                top.offer(keys[id], id);
+            }
+        }
+        return new Ranking(store, by, top, partial);
+    }
+
+    /**
+     * Finds the customers who have spent the most.
+     *
+     * @param limit int most customers.
+     * @return Ranking of the customers, best first.
+     */
+    public Ranking topCustomers(int limit) {
+        return top(By.CUSTOMERS, limit);
+    }
+
+    /**
+     * Finds the subscriptions with the highest total cost.
+     *
+     * @param limit int most subscriptions.
+     * @return Ranking of the subscriptions, best first.
+     */
+    public Ranking topSubscriptions(int limit) {
+        return top(By.SUBSCRIPTIONS, limit);
+    }
+
+    /**
+     * Finds the discount codes used by the most subscriptions, subscriptions
+     * without a code are not counted.
+     *
+     * @param limit int most codes.
+     * @return Ranking of the codes, best first.
+     */
+    public Ranking topCodes(int limit) {
+        return top(By.CODES, limit);
+    }
+
+    /**
+     * Ranks the rows of the store between two indexes.
+     */
+    private Partial rank(By by, int limit, int from, int to) {
+
+        int[] days = store.getEpochDays();
+        int[] totalCosts = store.getCosts();
+        int[] ids = by == By.CUSTOMERS ? store.getCustomerIds()
+                : store.getCodeIds();
+        Partial partial = new Partial();
+        if(by == By.SUBSCRIPTIONS) {
+            partial.top = new TopK(limit, to - from);
+        } else {
+            int groups = by == By.CUSTOMERS ? store.getCustomerNames().size()
+                    : store.getDiscountCodes().size();
+            partial.counts = new long[groups];
+            partial.costs = new long[groups];
+        }
+        boolean every = year == 0 && monthIndex == SummaryCube.ALL;
+        int lastDay = Integer.MIN_VALUE;
+        boolean matches = every;
+        for(int row = from; row < to; row++) {
+            if(!every && days[row] != lastDay) {
+                lastDay = days[row];
+                matches = (year == 0 || EpochDays.year(lastDay) == year)
+                        && (monthIndex == SummaryCube.ALL
+                        || EpochDays.monthIndex(lastDay) == monthIndex);
+            }
+            if(!matches) {
+                continue;
+            }
+            if(partial.top != null) {
+                partial.top.offer(totalCosts[row], row);
+            } else {
+                partial.counts[ids[row]]++;
+                partial.costs[ids[row]] += totalCosts[row];
+            }
+        }
+        return partial;
+    }
+
+    /**
+     * The heap or the count and cost of each name of a range of rows.
+     */
+    private static final class Partial {
+
+        private TopK top;
+        private long[] counts;
+        private long[] costs;
+
+        private void merge(Partial other) {
+            if(top != null) {
+                top.merge(other.top);
+            } else {
+                for(int id = 0; id < counts.length; id++) {
+                    counts[id] += other.counts[id];
+                    costs[id] += other.costs[id];
+                }
+            }
+        }
+    }
+
+    /**
+     * Ranks a range of rows, splitting the range in half and merging the
+     * results of the halves while it is larger than the split size.
+     */
+    private static final class RankTask extends RecursiveTask<Partial> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final RankingQuery query;
+        private final By by;
+        private final int limit;
+        private final int from;
+        private final int to;
+        private final int split;
+
+        RankTask(RankingQuery query, By by, int limit, int from, int to,
+                int split) {
+            this.query = query;
+            this.by = by;
+            this.limit = limit;
+            this.from = from;
+            this.to = to;
+            this.split = split;
+        }
+
+        @Override
+        protected Partial compute() {
+            if(to - from <= split) {
+                return query.rank(by, limit, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            RankTask left = new RankTask(query, by, limit, from, middle,
+                    split);
+            left.fork();
+            Partial right = new RankTask(query, by, limit, middle, to, split)
+                    .compute();
+            Partial partial = left.join();
+            partial.merge(right);
+            return partial;
+        }
+    }
+
+    /**
+     * A bounded heap of the K best ids by a key, the worst of them at the
+     * root. An equal key ranks the lower id first. The arrays start no larger
+     * than the number of ids expected and grow as ids are offered, up to K,
+     * so a large K costs no more than the ids actually ranked.
+     */
+    private static final class TopK {
+
+        private final int capacity;
+        private long[] keys;
+        private int[] ids;
+        private int size;
+
+        TopK(int capacity, int expected) {
+            this.capacity = capacity;
+            int length = Math.max(0, Math.min(capacity, expected));
+            keys = new long[length];
+            ids = new int[length];
+        }
+
+        void offer(long key, int id) {
+            if(size < capacity) {
+                if(size == keys.length) {
+                    int length = (int) Math.min(capacity, Math.max(16L,
+                            2L * size));
+                    keys = Arrays.copyOf(keys, length);
+                    ids = Arrays.copyOf(ids, length);
+                }
+                keys[size] = key;
+                ids[size] = id;
+                siftUp(size++);
+            } else if(capacity > 0 && worse(keys[0], ids[0], key, id)) {
+                keys[0] = key;
+                ids[0] = id;
+                siftDown(0);
+            }
+        }
+
+        void merge(TopK other) {
+            for(int i = 0; i < other.size; i++) {
+                offer(other.keys[i], other.ids[i]);
+            }
+        }
+
+        /**
+         * Empties the heap into an array of the ids, best first.
+         */
+        int[] drain() {
+            int[] best = new int[size];
+            while(size > 0) {
+                best[size - 1] = ids[0];
+                size--;
+                keys[0] = keys[size];
+                ids[0] = ids[size];
+                siftDown(0);
+            }
+            return best;
+        }
+
+        private static boolean worse(long key, int id, long otherKey,
+                int otherId) {
+            return key < otherKey || key == otherKey && id > otherId;
+        }
+
+        private void siftUp(int i) {
+            while(i > 0) {
+                int parent = (i - 1) >>> 1;
+                if(!worse(keys[i], ids[i], keys[parent], ids[parent])) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while(true) {
+                int child = 2 * i + 1;
+                if(child >= size) {
+                    return;
+                }
+                if(child + 1 < size && worse(keys[child + 1], ids[child + 1],
+                        keys[child], ids[child])) {
+                    child++;
+                }
+                if(!worse(keys[child], ids[child], keys[i], ids[i])) {
+                    return;
+                }
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        private void swap(int a, int b) {
+            long key = keys[a];
+            keys[a] = keys[b];
+            keys[b] = key;
+            int id = ids[a];
+            ids[a] = ids[b];
+            ids[b] = id;
+        }
+    }
+
+    /**
+     * The result of a query, the ids of the customers, codes or rows ranked,
+     * best first, with the number of subscriptions and their total cost.
+     */
+    public static final class Ranking {
+
+        private final SubscriptionStore store;
+        private final By by;
+        private final int[] ids;
+        private final long[] counts;
+        private final long[] costs;
+
+        private Ranking(SubscriptionStore store, By by, TopK top,
+                Partial totals) {
+            this.store = store;
+            this.by = by;
+            ids = top.drain();
+            counts = new long[ids.length];
+            costs = new long[ids.length];
+            int[] rowCosts = store.getCosts();
+            for(int i = 0; i < ids.length; i++) {
+                counts[i] = totals == null ? 1 : totals.counts[ids[i]];
+                costs[i] = totals == null ? rowCosts[ids[i]]
+                        : totals.costs[ids[i]];
+            }
+        }
+
+        public By getBy() {
+            return by;
+        }
+
+        public int size() {
+            return ids.length;
+        }
+
+        /**
+         * Gets the id of an entry, the row of a subscription or the id of the
+         * customer name or discount code in the store dictionary.
+         *
+         * @param rank int position in the ranking from 0.
+         * @return int id of the entry.
+         */
+        public int getId(int rank) {
+            return ids[rank];
+        }
+
+        /**
+         * Gets the name of an entry, the customer of a subscription.
+         *
+         * @param rank int position in the ranking from 0.
+         * @return String customer name or discount code.
+         */
+        public String getName(int rank) {
+            switch(by) {
+                case CUSTOMERS:
+                    return store.getCustomerNames().get(ids[rank]);
+                case CODES:
+                    return store.getDiscountCodes().get(ids[rank]);
+                default:
+                    return store.getCustomer(ids[rank]);
+            }
+        }
+
+        public long getCount(int rank) {
+            return counts[rank];
+        }
+
+        public long getCost(int rank) {
+            return costs[rank];
+        }
+
+        /**
+         * Writes the ranking as text, a line for each entry, the
+         * subscriptions in the table of a ResultRenderer.
+         *
+         * @param text StringBuilder the ranking is appended to.
+         */
+        public void appendText(StringBuilder text) {
+            String newLine = System.lineSeparator();
+            if(by == By.SUBSCRIPTIONS) {
+                ResultRenderer.forFormat("table").render(store, ids, 0,
+                        ids.length, text);
+                return;
+            }
+            text.append(String.format("%-5s %-24s %13s %12s", "Rank",
+                    by == By.CUSTOMERS ? "Customer" : "Code",
+                    "Subscriptions", "Total cost")).append(newLine);
+            for(int i = 0; i < ids.length; i++) {
+                text.append(String.format("%-5d %-24s %13d %12.2f", i + 1,
+                        getName(i), counts[i], costs[i] / 100.0))
+                        .append(newLine);
+            }
+        }
+
+        /**
+         * Writes the ranking as a JSON object with an array of the entries,
+         * best first.
+         *
+         * @param json StringBuilder the object is appended to.
+         */
+        public void appendJson(StringBuilder json) {
+            json.append("{\"by\":");
+            Json.appendString(json, by.name().toLowerCase());
+            json.append(",\"ranking\":[");
+            for(int i = 0; i < ids.length; i++) {
+                if(i > 0) {
+                    json.append(',');
+                }
+                if(by == By.SUBSCRIPTIONS) {
+                    Json.appendSubscription(json, ids[i], store, ids[i]);
+                    continue;
+                }
+                json.append(by == By.CUSTOMERS ? "{\"customer\":"
+                        : "{\"code\":");
+                Json.appendString(json, getName(i));
+                json.append(",\"subscriptions\":").append(counts[i])
+                        .append(",\"totalCost\":").append(costs[i])
+                        .append('}');
+            }
+            json.append("]}");
+        }
+    }
+}
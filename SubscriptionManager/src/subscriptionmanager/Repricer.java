@@ -0,0 +1,371 @@
+
+package subscriptionmanager;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The Repricer class recalculates the total cost of every subscription in a
+ * file with a new Tariff, writes the repriced subscriptions to a new file and
+ * reports the difference in revenue by package and month.
+ * The file is read in blocks which end on a line boundary, each block is
+ * parsed and repriced by one of a number of worker threads and the blocks are
+ * written in the order they were read, so the repriced file has the same lines
+ * in the same order. Only the total cost of each line is replaced, the rest of
+ * the line is copied as it is, and a line which can not be parsed is copied
+ * unchanged, without being repriced, and reported. The repriced lines are
+ * written to a temporary file beside the target which is only moved over the
+ * target once every line has been written, so a file can be repriced in
+ * place and a failed run leaves the target as it was. No more than two blocks
+ * per worker are held at once, so the memory used does not depend on the size
+ * of the file.
+ * <p>
+ * The revenue before and after is added to a pair of SummaryCubes, one with
+ * the total costs read from the file and one with the new total costs.
+ *
+ * @see Tariff
+ * @see SubscriptionParser
+ */
+public class Repricer {
+
+    private static final int BLOCK_SIZE = 1 << 22;
+    private static final int BLOCKS_PER_WORKER = 2;
+
+    private final PricingTable pricing;
+    private final int workers;
+
+    /**
+     * The default constructor reprices with a worker for each processor.
+     *
+     * @param tariff Tariff of the new prices.
+     */
+    public Repricer(Tariff tariff) {
+        this(tariff, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Overloaded constructor to set the number of worker threads.
+     *
+     * @param tariff Tariff of the new prices.
+     * @param workers int number of worker threads.
+     */
+    public Repricer(Tariff tariff, int workers) {
+        this.pricing = tariff.getPricingTable();
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * Reprices every subscription in a file. The malformed() method of the
+     * handler is called for each line which could not be parsed, and so was
+     * copied without being repriced, on the calling thread, the row() method
+     * is not used.
+     *
+     * @param source File of subscriptions to reprice.
+     * @param target File the repriced subscriptions are written to, which may
+     *     be the source.
+     * @param errors RowHandler to receive the malformed rows.
+     * @return Result with the revenue before and after.
+     * @throws IOException if the source can not be read or the target
+     *     written.
+     */
+    public Result reprice(File source, File target,
+            SubscriptionParser.RowHandler errors) throws IOException {
+
+        File partial = new File(target.getAbsoluteFile().getParentFile(),
+                target.getName() + ".tmp");
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        ArrayDeque<Future<Block>> pending = new ArrayDeque<>();
+        Result result = new Result();
+        boolean written = false;
+
+        try(InputStream in = new FileInputStream(source);
+                OutputStream out = new BufferedOutputStream(
+                        new FileOutputStream(partial), BLOCK_SIZE)) {
+
+            byte[] carry = new byte[0];
+            int carried = 0;
+            boolean eof = false;
+            while(!eof) {
+                byte[] bytes = new byte[Math.max(BLOCK_SIZE, carried * 2)];
+                System.arraycopy(carry, 0, bytes, 0, carried);
+                int filled = carried;
+                while(filled < bytes.length) {
+                    int read = in.read(bytes, filled, bytes.length - filled);
+                    if(read == -1) {
+                        eof = true;
+                        break;
+                    }
+                    filled += read;
+                }
+                int end = filled;
+                if(!eof) {
+                    while(end > 0 && bytes[end - 1] != '\n') {
+                        end--;
+                    }
+                }
+                if(end == 0 && !eof) {
+                    carry = bytes;
+                    carried = filled;
+                    continue;
+                }
+                carry = new byte[filled - end];
+                carried = carry.length;
+                System.arraycopy(bytes, end, carry, 0, carried);
+
+                if(end > 0) {
+                    final byte[] block = bytes;
+                    final int length = end;
+                    pending.add(pool.submit(() -> reprice(block, length)));
+                }
+                while(pending.size() >= workers * BLOCKS_PER_WORKER
+                        || eof && !pending.isEmpty()) {
+                    write(pending.poll(), out, result, errors);
+                }
+            }
+            written = true;
+        } finally {
+            pool.shutdownNow();
+            if(!written) {
+                partial.delete();
+            }
+        }
+        try {
+            Files.move(partial.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch(IOException e) {
+            partial.delete();
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Waits for the next block in file order, writes it and adds its revenue
+     * and malformed rows to the result.
+     */
+    private static void write(Future<Block> next, OutputStream out,
+            Result result, SubscriptionParser.RowHandler errors)
+            throws IOException {
+
+        Block block;
+        try {
+            block = next.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Repricing interrupted", e);
+        } catch(ExecutionException e) {
+            throw new IOException("Error repricing subscriptions",
+                    e.getCause());
+        }
+        out.write(block.output, 0, block.length);
+        result.before.merge(block.before);
+        result.after.merge(block.after);
+        for(MappedSubscriptionLoader.Malformed bad: block.malformed) {
+            errors.malformed(result.lines + bad.line, bad.column,
+                    bad.reason);
+        }
+        result.malformed += block.malformed.size();
+        result.lines += block.lines;
+    }
+
+    /**
+     * Parses and reprices a single block, called on a worker thread.
+     */
+    private Block reprice(byte[] bytes, int length) {
+        Block block = new Block(bytes, length, pricing);
+        block.lines = new SubscriptionParser().parse(ByteBuffer.wrap(bytes), 0,
+                length, 1, block);
+        block.copy(block.copied, length);
+        return block;
+    }
+
+    /**
+     * The repriced lines of one block of the file, the line numbers of the
+     * malformed rows are relative to the start of the block.
+     */
+    private static final class Block
+            implements SubscriptionParser.RowHandler {
+
+        private final byte[] input;
+        private final PricingTable pricing;
+        private final SummaryCube before = new SummaryCube();
+        private final SummaryCube after = new SummaryCube();
+        private final List<MappedSubscriptionLoader.Malformed> malformed =
+                new ArrayList<>();
+        private byte[] output;
+        private int length;
+        private int copied;
+        private long lines;
+
+        Block(byte[] input, int size, PricingTable pricing) {
+            this.input = input;
+            this.pricing = pricing;
+            this.output = new byte[size + size / 16 + 16];
+        }
+
+        @Override
+        public void row(SubscriptionParser.ParsedRow row) {
+
+            int packageType = row.getPackageType().ordinal();
+            int duration = row.getDuration().ordinal();
+            int paymentType = row.getPaymentType().ordinal();
+            int cost = pricing.price(packageType, duration, row.getDiscount(),
+                    paymentType);
+
+            copy(copied, row.getCostStart());
+            writeInt(cost);
+            copied = row.getCustomerStart() - 1;
+            copy(copied, row.getEnd());
+
+            before.add(row.getEpochDay(), packageType, duration, paymentType,
+                    row.getTotalCost());
+            after.add(row.getEpochDay(), packageType, duration, paymentType,
+                    cost);
+        }
+
+        @Override
+        public void malformed(long line, int column, String reason) {
+            malformed.add(new MappedSubscriptionLoader.Malformed(line, column,
+                    reason));
+        }
+
+        /**
+         * Copies the input between two positions to the output, the lines
+         * between two parsed rows are copied unchanged.
+         */
+        private void copy(int from, int to) {
+            if(to > from) {
+                ensureCapacity(to - from);
+                System.arraycopy(input, from, output, length, to - from);
+                length += to - from;
+                copied = to;
+            }
+        }
+
+        private void writeInt(int value) {
+            ensureCapacity(11);
+            int digits = 1;
+            for(int v = value / 10; v != 0; v /= 10) {
+                digits++;
+            }
+            for(int i = length + digits - 1; i >= length; i--) {
+                output[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            length += digits;
+        }
+
+        private void ensureCapacity(int extra) {
+            if(length + extra > output.length) {
+                byte[] larger = new byte[Math.max(output.length * 2,
+                        length + extra)];
+                System.arraycopy(output, 0, larger, 0, length);
+                output = larger;
+            }
+        }
+    }
+
+    /**
+     * The outcome of repricing a file, the number of lines read and the
+     * revenue before and after repricing.
+     */
+    public static final class Result {
+
+        private final SummaryCube before = new SummaryCube();
+        private final SummaryCube after = new SummaryCube();
+        private long lines;
+        private long malformed;
+
+        private Result() {
+        }
+
+        public SummaryCube getBefore() {
+            return before;
+        }
+
+        public SummaryCube getAfter() {
+            return after;
+        }
+
+        public long getLines() {
+            return lines;
+        }
+
+        public long getRepriced() {
+            return before.getCount();
+        }
+
+        public long getMalformed() {
+            return malformed;
+        }
+
+        /**
+         * Displays the revenue before and after repricing for each month and
+         * package, followed by the totals.
+         *
+         * @return String table of the revenue differences.
+         */
+        @Override
+        public String toString() {
+
+            StringBuilder table = new StringBuilder();
+            table.append(String.format("%n%-10s%-8s%10s%14s%14s%14s%n",
+                    "Month", "Package", "Subs", "Before", "After",
+                    "Change"));
+            int first = before.getFirstYearMonth();
+            int last = before.getLastYearMonth();
+            for(int ym = first; first != SummaryCube.ALL && ym <= last;
+                    ym++) {
+                String month = EpochDays.SHORT_MONTHS[Math.floorMod(ym, 12)]
+                        + "-" + Math.floorDiv(ym, 12);
+                for(PackageType packageType: PackageType.values()) {
+                    int pack = packageType.ordinal();
+                    long count = before.count(ym, SummaryCube.ALL, pack,
+                            SummaryCube.ALL, SummaryCube.ALL);
+                    if(count > 0) {
+                        appendRow(table, month, packageType.type, count,
+                                before.cost(ym, SummaryCube.ALL, pack,
+                                        SummaryCube.ALL, SummaryCube.ALL),
+                                after.cost(ym, SummaryCube.ALL, pack,
+                                        SummaryCube.ALL, SummaryCube.ALL));
+                    }
+                }
+            }
+            for(PackageType packageType: PackageType.values()) {
+                int pack = packageType.ordinal();
+                appendRow(table, "Total", packageType.type, before.count(
+                        SummaryCube.ALL, SummaryCube.ALL, pack,
+                        SummaryCube.ALL, SummaryCube.ALL), before.cost(
+                        SummaryCube.ALL, SummaryCube.ALL, pack,
+                        SummaryCube.ALL, SummaryCube.ALL), after.cost(
+                        SummaryCube.ALL, SummaryCube.ALL, pack,
+                        SummaryCube.ALL, SummaryCube.ALL));
+            }
+            appendRow(table, "Total", "ALL", before.getCount(),
+                    before.getCost(), after.getCost());
+            return table.toString();
+        }
+
+        private static void appendRow(StringBuilder table, String month,
+                String packageType, long count, long before, long after) {
+            table.append(String.format("%-10s%-8s%10d%14.2f%14.2f%+14.2f%n",
+                    month, packageType, count, before / 100.0, after / 100.0,
+                    (after - before) / 100.0));
+        }
+    }
+}
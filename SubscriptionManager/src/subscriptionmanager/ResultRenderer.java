@@ -0,0 +1,388 @@
+package subscriptionmanager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * The ResultRenderer class writes the subscriptions found by a search straight
+ * from the columns of the SubscriptionStore, without creating a Subscription
+ * or a String for each of them, in one of four formats:
+ * <ul>
+ * <li>card - the display box of Subscription.toString(), used by
+ * SearchSubscription.</li>
+ * <li>table - one line for each subscription in aligned columns.</li>
+ * <li>tsv - the tabbed lines of the subscription files, so the results can be
+ * imported again.</li>
+ * <li>json - an object with the count and an array of the subscriptions, as
+ * returned by the SubscriptionServer.</li>
+ * </ul>
+ * Each row is appended to a buffer which is reused for every row and passed
+ * to the output each time it holds 8KB, so a search of millions of rows is
+ * written in large blocks and never held in memory as a whole. The padding of
+ * the card and table is taken from a line of spaces and the lines which are
+ * the same for every row, i.e. the border of the card, are made once.
+ * <p>
+ * A page of the results is written by render(), which takes the position of
+ * the first row and the most rows to write, and returns the position of the
+ * next page, so the results can be shown a page at a time or cut short.
+ * A renderer is not thread safe, each thread needs its own.
+ *
+ * @see SearchSubscription
+ * @see Subscription#toString()
+ * @see Subscription#formatRecord
+ */
+public abstract class ResultRenderer {
+
+    public static final String DEFAULT_FORMAT = "card";
+
+    private static final int FLUSH_SIZE = 1 << 13;
+    private static final String SPACES = "                                ";
+    private static final String LINE = System.lineSeparator();
+
+    protected final StringBuilder buffer = new StringBuilder(FLUSH_SIZE
+            + 1024);
+    private Appendable out;
+
+    /**
+     * Gets a renderer for a format.
+     *
+     * @param format String card, table, tsv or json.
+     * @return ResultRenderer of the format.
+     * @throws IllegalArgumentException if the format is not known.
+     */
+    public static ResultRenderer forFormat(String format) {
+        switch(format) {
+            case "card":
+                return new Card();
+            case "table":
+                return new Table();
+            case "tsv":
+                return new Tsv();
+            case "json":
+                return new JsonRows();
+            default:
+                throw new IllegalArgumentException("unknown format " + format
+                        + ", use card, table, tsv or json");
+        }
+    }
+
+    /**
+     * Writes a page of the results of a search.
+     *
+     * @param store SubscriptionStore the rows are in.
+     * @param rows int[] of the rows found.
+     * @param offset int position in rows of the first row to write.
+     * @param limit int most rows to write.
+     * @param out Appendable the rows are written to, i.e. System.out.
+     * @return int position in rows of the first row not written, the length
+     *     of rows once every row has been written.
+     * @throws UncheckedIOException if the output can not be written.
+     */
+    public int render(SubscriptionStore store, int[] rows, int offset,
+            int limit, Appendable out) {
+
+        int from = Math.min(Math.max(0, offset), rows.length);
+        int to = (int) Math.min(rows.length, (long) from + Math.max(0,
+                limit));
+        this.out = out;
+        try {
+            begin(rows.length, from);
+            for(int i = from; i < to; i++) {
+                row(store, rows[i]);
+                if(buffer.length() >= FLUSH_SIZE) {
+                    flush();
+                }
+            }
+            end(rows.length, to);
+            flush();
+        } finally {
+            buffer.setLength(0);
+            this.out = null;
+        }
+        return to;
+    }
+
+    /**
+     * Writes anything before the rows of a page, i.e. a header.
+     *
+     * @param total int number of rows found.
+     * @param offset int position of the first row of the page.
+     */
+    protected void begin(int total, int offset) {
+    }
+
+    /**
+     * Writes one row to the buffer.
+     *
+     * @param store SubscriptionStore the row is in.
+     * @param row int row of the store.
+     */
+    protected abstract void row(SubscriptionStore store, int row);
+
+    /**
+     * Writes anything after the rows of a page.
+     *
+     * @param total int number of rows found.
+     * @param next int position of the first row of the next page.
+     */
+    protected void end(int total, int next) {
+    }
+
+    private void flush() {
+        try {
+            out.append(buffer);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.setLength(0);
+    }
+
+    /**
+     * Appends a number of spaces.
+     */
+    private static void pad(StringBuilder str, int count) {
+        while(count > 0) {
+            int length = Math.min(count, SPACES.length());
+            str.append(SPACES, 0, length);
+            count -= length;
+        }
+    }
+
+    /**
+     * Appends a cost in pence as pounds, i.e. 1234 as 12.34.
+     */
+    private static void appendPounds(StringBuilder str, int pence) {
+        if(pence < 0) {
+            str.append('-');
+        }
+        int abs = Math.abs(pence);
+        int rest = abs % 100;
+        str.append(abs / 100).append('.');
+        if(rest < 10) {
+            str.append('0');
+        }
+        str.append(rest);
+    }
+
+    /**
+     * The display box of Subscription.toString(), the same text and
+     * alignment, followed by a blank line as printed by println().
+     */
+    private static final class Card extends ResultRenderer {
+
+        private static final int WIDTH = 50;
+        private static final String BORDER = border('-');
+        private static final String BLANK = border(' ').replace('+', '|');
+        private static final String[] PACKAGES = new String[
+                PackageType.values().length];
+        private static final String[] DURATIONS = new String[
+                Duration.values().length];
+        private static final String[] PAYMENTS = new String[
+                PaymentType.values().length];
+
+        static {
+            for(PackageType type: PackageType.values()) {
+                PACKAGES[type.ordinal()] = "Package: " + type.type;
+            }
+            for(Duration duration: Duration.values()) {
+                DURATIONS[duration.ordinal()] = "Duration: " + duration;
+            }
+            StringBuilder line = new StringBuilder();
+            for(PaymentType type: PaymentType.values()) {
+                line.setLength(0);
+                centre(line, "Payment terms: " + type.payment);
+                PAYMENTS[type.ordinal()] = line.toString();
+            }
+        }
+
+        private final StringBuilder left = new StringBuilder(64);
+        private final StringBuilder right = new StringBuilder(64);
+
+        @Override
+        protected void row(SubscriptionStore store, int row) {
+            buffer.append(BORDER);
+            left.setLength(0);
+            left.append("Customer: ").append(store.getCustomer(row));
+            centre(buffer, left);
+            buffer.append(BLANK);
+            left.setLength(0);
+            left.append("Date: ");
+            EpochDays.format(store.getEpochDay(row), left);
+            right.setLength(0);
+            right.append("Discount Code: ").append(store.getDiscountCode(
+                    row));
+            dual(buffer, left, right);
+            buffer.append(BLANK);
+            dual(buffer, PACKAGES[store.getPackageType(row).ordinal()],
+                    DURATIONS[store.getDuration(row).ordinal()]);
+            buffer.append(BLANK);
+            buffer.append(PAYMENTS[store.getPaymentType(row).ordinal()]);
+            buffer.append(BLANK);
+            left.setLength(0);
+            left.append("Subscription price: £");
+            appendPounds(left, store.getTotalCost(row));
+            centre(buffer, left);
+            buffer.append(BORDER).append(LINE);
+        }
+
+        private static String border(char fill) {
+            StringBuilder line = new StringBuilder(WIDTH + 1).append('+');
+            for(int i = 2; i < WIDTH; i++) {
+                line.append(fill);
+            }
+            return line.append("+\n").toString();
+        }
+
+        /**
+         * Appends a line with the text in the centre, as centreAlign() of
+         * the Subscription class.
+         */
+        private static void centre(StringBuilder str, CharSequence text) {
+            int pad = Math.max(0, (WIDTH - text.length()) / 2);
+            int over = 2 + 2 * pad + text.length() - WIDTH;
+            str.append('|');
+            pad(str, pad);
+            str.append(text);
+            pad(str, over > 0 ? pad - over : pad);
+            str.append("|\n");
+        }
+
+        /**
+         * Appends a line with two texts spread evenly, as dualAlign() of the
+         * Subscription class.
+         */
+        private static void dual(StringBuilder str, CharSequence first,
+                CharSequence second) {
+            int length = first.length() + second.length();
+            int pad = Math.max(0, (WIDTH - length) / 3);
+            int over = 2 + 3 * pad + length - WIDTH;
+            str.append('|');
+            pad(str, pad);
+            str.append(first);
+            pad(str, pad);
+            str.append(second);
+            pad(str, over > 0 ? pad - over : pad);
+            str.append("|\n");
+        }
+    }
+
+    /**
+     * One line for each subscription in columns, under a header repeated at
+     * the start of each page.
+     */
+    private static final class Table extends ResultRenderer {
+
+        private static final int[] WIDTHS = {11, 24, 7, 6, 8, 8, 9};
+        private static final String HEADER = header();
+
+        private final StringBuilder cost = new StringBuilder(16);
+
+        @Override
+        protected void begin(int total, int offset) {
+            buffer.append(HEADER);
+        }
+
+        @Override
+        protected void row(SubscriptionStore store, int row) {
+            int start = buffer.length();
+            EpochDays.format(store.getEpochDay(row), buffer);
+            endColumn(start, 0);
+            start = buffer.length();
+            buffer.append(store.getCustomer(row));
+            endColumn(start, 1);
+            start = buffer.length();
+            buffer.append(store.getPackageType(row).type);
+            endColumn(start, 2);
+            start = buffer.length();
+            buffer.append(store.getDuration(row).term);
+            endColumn(start, 3);
+            start = buffer.length();
+            buffer.append(store.getDiscountCode(row));
+            endColumn(start, 4);
+            start = buffer.length();
+            buffer.append(store.getPaymentType(row).payment);
+            endColumn(start, 5);
+            cost.setLength(0);
+            appendPounds(cost, store.getTotalCost(row));
+            pad(buffer, WIDTHS[6] - cost.length());
+            buffer.append(cost).append(LINE);
+        }
+
+        /**
+         * Pads a column started at a position of the buffer to its width,
+         * leaving at least one space before the next column.
+         */
+        private void endColumn(int start, int column) {
+            pad(buffer, Math.max(1, WIDTHS[column] + 1 - (buffer.length()
+                    - start)));
+        }
+
+        private static String header() {
+            String[] names = {"Date", "Customer", "Package", "Months",
+                "Code", "Payment", "Cost"};
+            StringBuilder line = new StringBuilder();
+            for(int i = 0; i < names.length - 1; i++) {
+                line.append(names[i]);
+                pad(line, WIDTHS[i] + 1 - names[i].length());
+            }
+            String last = names[names.length - 1];
+            pad(line, WIDTHS[names.length - 1] - last.length());
+            line.append(last).append(LINE);
+            int width = line.length() - LINE.length();
+            for(int i = 0; i < width; i++) {
+                line.append('-');
+            }
+            return line.append(LINE).toString();
+        }
+    }
+
+    /**
+     * The tabbed lines of the subscription files, as formatRecord() of the
+     * Subscription class.
+     */
+    private static final class Tsv extends ResultRenderer {
+
+        @Override
+        protected void row(SubscriptionStore store, int row) {
+            EpochDays.format(store.getEpochDay(row), buffer);
+            buffer.append('\t').append(store.getPackageType(row).name())
+                    .append('\t').append(store.getDuration(row).term)
+                    .append('\t').append(store.getDiscountCode(row))
+                    .append('\t').append(store.getPaymentType(row).name())
+                    .append('\t').append(store.getTotalCost(row))
+                    .append('\t').append(store.getCustomer(row))
+                    .append(LINE);
+        }
+    }
+
+    /**
+     * An object with the number of rows found, the position of the page and
+     * of the next page, null after the last page, and an array of the rows.
+     */
+    private static final class JsonRows extends ResultRenderer {
+
+        private boolean first;
+
+        @Override
+        protected void begin(int total, int offset) {
+            buffer.append("{\"count\":").append(total).append(",\"offset\":")
+                    .append(offset).append(",\"subscriptions\":[");
+            first = true;
+        }
+
+        @Override
+        protected void row(SubscriptionStore store, int row) {
+            if(!first) {
+                buffer.append(',');
+            }
+            first = false;
+            Json.appendSubscription(buffer, row, store, row);
+        }
+
+        @Override
+        protected void end(int total, int next) {
+            buffer.append("],\"next\":").append(next < total
+                    ? String.valueOf(next) : "null").append('}');
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package subscriptionmanager;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * The SearchCache class keeps the results of recent customer searches, so a
+ * search repeated by an operator, i.e. 'J' or 'Sm', is answered without
+ * searching again. The cache is bounded by an estimate of the memory its
+ * results use rather than by the number of results, as the result for 'J'
+ * may hold thousands of rows where 'J Smith' holds a few.
+ * <p>
+ * Results are evicted by a segmented LRU, as used by the main space of
+ * W-TinyLFU. A new result is put in the probation segment and is only moved
+ * to the protected segment, which may use 80% of the budget, when it is found
+ * again. A run of searches which are never repeated only evicts other
+ * results on probation, so the results searched for again and again are kept.
+ * The least recently used result on probation is evicted first, and a result
+ * pushed out of the protected segment is given another chance on probation.
+ * <p>
+ * When subscriptions are added the caller passes each new customer name to
+ * invalidate(), which removes only the results of the terms the name
+ * contains, as those are the only results the new subscriptions change.
+ * The cache may be used by any number of threads at once, each method holds
+ * the lock of the cache for the few steps it takes. The hits, misses and
+ * evictions are counted for tuning the budget, and added to the Metrics.
+ * <p>
+ * A result larger than a share of the budget, a tenth by default, is not
+ * cached, so one broad search, i.e. 'a', can not push out every other result.
+ * The share is set by the subscriptionmanager.search.cacheEntry system
+ * property as a percent of the budget, or given to the constructor, a cache
+ * which is one of several sharing a budget can allow a larger share of its
+ * own.
+ *
+ * @param <V> the type of the results.
+ * @see CustomerIndex
+ * @see Metrics
+ */
+public class SearchCache<V> {
+
+    /**
+     * The default budget of a cache in bytes, set by the
+     * subscriptionmanager.search.cache system property, 8MB if not set.
+     */
+    public static final long DEFAULT_BUDGET = Long.getLong(
+            "subscriptionmanager.search.cache", 8L << 20);
+
+    /**
+     * The default largest result cached as a percent of the budget, set by
+     * the subscriptionmanager.search.cacheEntry system property, 10 if not
+     * set.
+     */
+    public static final int DEFAULT_MAX_ENTRY_PERCENT = Integer.getInteger(
+            "subscriptionmanager.search.cacheEntry", 10);
+
+    private static final long ENTRY_BYTES = 96;
+    private static final int PROTECTED_PERCENT = 80;
+
+    private final long budget;
+    private final long protectedBudget;
+    private final long maxEntry;
+    private final ToLongFunction<V> weigher;
+    private final LinkedHashMap<String, Entry<V>> probation =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Entry<V>> protectedEntries =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private long probationWeight;
+    private long protectedWeight;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * The constructor takes the budget of the cache and the function
+     * estimating the bytes used by a result.
+     *
+     * @param budget long bytes the results may use, 0 to cache nothing.
+     * @param weigher ToLongFunction giving the bytes used by a result.
+     */
+    public SearchCache(long budget, ToLongFunction<V> weigher) {
+        this(budget, DEFAULT_MAX_ENTRY_PERCENT, weigher);
+    }
+
+    /**
+     * Overloaded constructor to set the largest result cached.
+     *
+     * @param budget long bytes the results may use, 0 to cache nothing.
+     * @param maxEntryPercent int largest result cached as a percent of the
+     *     budget, from 0 to 100.
+     * @param weigher ToLongFunction giving the bytes used by a result.
+     */
+    public SearchCache(long budget, int maxEntryPercent,
+            ToLongFunction<V> weigher) {
+        this.budget = Math.max(0, budget);
+        this.protectedBudget = this.budget * PROTECTED_PERCENT / 100;
+        this.maxEntry = this.budget * Math.min(100, Math.max(0,
+                maxEntryPercent)) / 100;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Gets the result of a search, a result found on probation is moved to
+     * the protected segment.
+     *
+     * @param term String search term, as given to put().
+     * @return V result of the search, or null if it is not cached.
+     */
+    public V get(String term) {
+        V value = null;
+        synchronized(this) {
+            Entry<V> entry = protectedEntries.get(term);
+            if(entry == null) {
+                entry = probation.remove(term);
+                if(entry != null) {
+                    probationWeight -= entry.weight;
+                    protectedEntries.put(term, entry);
+                    protectedWeight += entry.weight;
+                    demote();
+                }
+            }
+            if(entry != null) {
+                value = entry.value;
+            }
+        }
+        if(value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        Metrics.recordSearchCache(value != null);
+        return value;
+    }
+
+    /**
+     * Adds the result of a search on probation, evicting the least recently
+     * used results until the cache is within its budget. A result larger
+     * than the share of the budget given by getMaxEntry() is not cached, so
+     * one search can not empty the cache.
+     *
+     * @param term String search term.
+     * @param value V result of the search.
+     */
+    public void put(String term, V value) {
+        long weight = ENTRY_BYTES + 2L * term.length()
+                + weigher.applyAsLong(value);
+        if(weight > maxEntry) {
+            return;
+        }
+        synchronized(this) {
+            remove(term);
+            probation.put(term, new Entry<>(value, weight));
+            probationWeight += weight;
+            evict();
+        }
+    }
+
+    /**
+     * Removes the result of every search term contained in a customer name,
+     * as those are the results a new subscription for the customer changes.
+     *
+     * @param name String lowercase customer name.
+     */
+    public synchronized void invalidate(String name) {
+        probationWeight -= invalidate(probation, name);
+        protectedWeight -= invalidate(protectedEntries, name);
+    }
+
+    /**
+     * Removes every result.
+     */
+    public synchronized void clear() {
+        probation.clear();
+        protectedEntries.clear();
+        probationWeight = 0;
+        protectedWeight = 0;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public long getMaxEntry() {
+        return maxEntry;
+    }
+
+    public synchronized long getWeight() {
+        return probationWeight + protectedWeight;
+    }
+
+    public synchronized int size() {
+        return probation.size() + protectedEntries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    private void remove(String term) {
+        Entry<V> entry = probation.remove(term);
+        if(entry != null) {
+            probationWeight -= entry.weight;
+        }
+        entry = protectedEntries.remove(term);
+        if(entry != null) {
+            protectedWeight -= entry.weight;
+        }
+    }
+
+    /**
+     * Moves the least recently used protected results back on probation
+     * until the protected segment is within its share of the budget.
+     */
+    private void demote() {
+        Iterator<Map.Entry<String, Entry<V>>> oldest =
+                protectedEntries.entrySet().iterator();
+        while(protectedWeight > protectedBudget && oldest.hasNext()) {
+            Map.Entry<String, Entry<V>> demoted = oldest.next();
+            oldest.remove();
+            protectedWeight -= demoted.getValue().weight;
+            probation.put(demoted.getKey(), demoted.getValue());
+            probationWeight += demoted.getValue().weight;
+        }
+        evict();
+    }
+
+    /**
+     * Evicts the least recently used results on probation, and then the
+     * protected results, until the cache is within its budget.
+     */
+    private void evict() {
+        evict(probation.entrySet().iterator(), true);
+        evict(protectedEntries.entrySet().iterator(), false);
+    }
+
+    private void evict(Iterator<Map.Entry<String, Entry<V>>> oldest,
+            boolean onProbation) {
+        while(probationWeight + protectedWeight > budget
+                && oldest.hasNext()) {
+            long weight = oldest.next().getValue().weight;
+            oldest.remove();
+            if(onProbation) {
+                probationWeight -= weight;
+            } else {
+                protectedWeight -= weight;
+            }
+            evictions.increment();
+            Metrics.recordSearchCacheEviction();
+        }
+    }
+
+    private static <V> long invalidate(Map<String, Entry<V>> entries,
+            String name) {
+        long removed = 0;
+        Iterator<Map.Entry<String, Entry<V>>> all =
+                entries.entrySet().iterator();
+        while(all.hasNext()) {
+            Map.Entry<String, Entry<V>> entry = all.next();
+            if(name.contains(entry.getKey())) {
+                removed += entry.getValue().weight;
+                all.remove();
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * A cached result and the bytes it is estimated to use.
+     */
+    private static final class Entry<V> {
+
+        private final V value;
+        private final long weight;
+
+        private Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
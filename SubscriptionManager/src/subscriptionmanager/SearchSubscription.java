@@ -1,25 +1,36 @@
 package subscriptionmanager;
 
-import java.util.Scanner;
+import java.io.File;
+import java.io.IOException;
 
 /**
  * The SearchSubscription class extends the Summary class and allows the user to
  * search for all of the subscriptions for a given customer contained in a given
  * file, by entering a customers name, a summary of the subscription will then
  * be displayed. 
- * The file is read and an ArrayList of subscriptions is populated
- * in the Summary class, the ArrayList is then iterated over in the searchSubs()
+ * The file is read and a SubscriptionStore of subscriptions is populated
+ * in the Summary class, the store is then scanned in the calculateSummary()
  * method contained within this SearchSubscription class and the Summary of any
- * subscription matching the customers name is displayed via the matching
- * Subscription.toString().
+ * subscription matching the customers name is displayed by a ResultRenderer,
+ * in the display box of the Subscription.toString() unless another format is
+ * set by the subscriptionmanager.search.format system property, i.e. table.
+ * The matches are shown a page at a time, 20 unless set by the
+ * subscriptionmanager.search.page system property.
  *
  * @see Summary
+ * @see ResultRenderer
  * @see Subscription#toString()
- * @see #searchSubs()
+ * @see #calculateSummary()
  */
 public class SearchSubscription extends Summary {
     
-    private final Scanner scan = new Scanner(System.in);
+    private static final String FORMAT = System.getProperty(
+            "subscriptionmanager.search.format",
+            ResultRenderer.DEFAULT_FORMAT);
+    private static final int PAGE_SIZE = Math.max(1, Integer.getInteger(
+            "subscriptionmanager.search.page", 20));
+
+    private final CustomerIndex index = new CustomerIndex();
     private String customer;
 
     /**
@@ -31,20 +42,38 @@ public class SearchSubscription extends Summary {
                 + "===============+\n");
     }
 
+    /**
+     * Overrides the loadSubscriptions() method of the base class, as the
+     * search needs the subscriptions themselves rather than their summary,
+     * and reads the file into the SubscriptionStore.
+     *
+     * @param subFile File of subscriptions.
+     * @throws IOException if the file can not be read.
+     * @see Summary#loadFile(java.io.File, java.io.PrintStream)
+     */
+    @Override
+    protected void loadSubscriptions(File subFile) throws IOException {
+        subs = loadFile(subFile, System.out);
+    }
+
     /**
      * Overrides the calculateSummary() method of the base class and finds any
      * subscriptions matching the customers name and displays the
      * summary display box for that subscription to the user and also how many
      * matches were found, the user is then asked if they would like to search
      * again. 
-     * The ArrayList which was populated in the Summary base class
-     * readFile() is iterated over and both the customer name for each
-     * subscription and the provided customer name are both modified to
-     * lowercase. If there is any partial match of the customer name of a
-     * subscription, the Subscription toString() is called. If the
-     * Validator.validateConfirmInput() returns true the user will be asked to
-     * provide another customer name.
+     * The CustomerIndex is updated with the SubscriptionStore, which was
+     * populated in the Summary base class readFile(), then searched for the
+     * provided customer name, ignoring case. For each subscription with any
+     * partial match of the customer name, the subscription is written by the
+     * ResultRenderer, a page at a time, asking the user before each further
+     * page so a search matching most of the file can be stopped. The index
+     * caches the rows found, so searching for the same name again does not
+     * search the index again. If the Validator.validateConfirmInput() returns
+     * true the user will be asked to provide another customer name.
      *
+     * @see CustomerIndex
+     * @see ResultRenderer
      * @see Summary
      * @see Summary#calculateSummary()
      * @see Subscription#toString()
@@ -53,24 +82,32 @@ public class SearchSubscription extends Summary {
     @Override
     protected void calculateSummary() {
 
-        int matches = 0;
         boolean searchAgain;
+        ResultRenderer renderer;
+        try {
+            renderer = ResultRenderer.forFormat(FORMAT);
+        } catch(IllegalArgumentException e) {
+            System.out.println("\nUnknown search format " + FORMAT
+                    + ", showing the display box.");
+            renderer = ResultRenderer.forFormat(ResultRenderer.DEFAULT_FORMAT);
+        }
+        index.update(subs);
         do {
-            System.out.print("\nCustomer name to search for i.e J Smith"
-                    + "\n\nPartial matches are accepted. i.e 'J', Sm' or 'ith'"
-                    + "\n\nEnter name: ");
-            customer = scan.nextLine();
-
-            for (Subscription sub : subs) {
-                if (sub.getCustomer().toLowerCase()
-                        .contains(customer.toLowerCase())) {
-                    System.out.println(sub.toString());
-                    matches++;
-                }
-            }
-            System.out.println("\nNumber of matches: " + matches);
-
-            matches = 0;
+            customer = Validator.readLine("\nCustomer name to search for i.e "
+                    + "J Smith\n\nPartial matches are accepted. i.e 'J', Sm' "
+                    + "or 'ith'\n\nEnter name: ");
+
+            int[] rows = index.search(customer);
+            int next = 0;
+            do {
+                next = renderer.render(subs, rows, next, PAGE_SIZE,
+                        System.out);
+            } while(next < rows.length && Validator.validateConfirmInput(
+                    "\nShow the next " + Math.min(PAGE_SIZE, rows.length
+                    - next) + " of " + (rows.length - next)
+                    + " remaining matches? "));
+            System.out.println("\nNumber of matches: " + rows.length);
+
             searchAgain = Validator.validateConfirmInput("\nSearch again? ");
 
         } while (searchAgain == true);
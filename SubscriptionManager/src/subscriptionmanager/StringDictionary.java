@@ -0,0 +1,234 @@
+
+package subscriptionmanager;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The StringDictionary class gives each distinct String an int id, so a column
+ * of repeated values such as customer names or discount codes can be stored as
+ * an int[] of ids with each distinct value stored only once.
+ * The values are held as UTF-8 bytes in a single byte[] and looked up through
+ * an open addressing hash table of ids, values can be added straight from the
+ * bytes of a file so no String is created for a value already in the
+ * dictionary. The String for an id is only created the first time it is
+ * requested.
+ * <p>
+ * The dictionary is not thread safe, each thread loading subscriptions uses
+ * its own dictionary which is merged afterwards.
+ *
+ * @see SubscriptionStore
+ */
+public class StringDictionary {
+
+    private byte[] bytes = new byte[1024];
+    private int used;
+    private int[] offsets = new int[65];
+    private int[] hashes = new int[64];
+    private String[] strings = new String[64];
+    private int[] table = new int[128];
+    private int size;
+
+    /**
+     * The default constructor creates an empty dictionary.
+     */
+    public StringDictionary() {
+    }
+
+    /**
+     * Constructor used by the SubscriptionSnapshot to rebuild a dictionary
+     * from the values it saved, the hash table is rebuilt from the bytes.
+     *
+     * @param bytes byte[] of the UTF-8 values one after another.
+     * @param offsets int[] of the start of each value in bytes, followed by
+     *     the end of the last value.
+     * @param size int number of values.
+     * @see SubscriptionSnapshot
+     */
+    StringDictionary(byte[] bytes, int[] offsets, int size) {
+        int capacity = Math.max(64, size + 1);
+        this.bytes = bytes;
+        this.used = offsets[size];
+        this.offsets = Arrays.copyOf(offsets, capacity + 1);
+        this.hashes = new int[capacity];
+        this.strings = new String[capacity];
+        this.size = size;
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        for(int id = 0; id < size; id++) {
+            hashes[id] = hash(buf, offsets[id], offsets[id + 1]
+                    - offsets[id]);
+        }
+        int tableSize = 128;
+        while(tableSize < size * 2) {
+            tableSize *= 2;
+        }
+        table = new int[tableSize / 2];
+        rehash();
+    }
+
+    /**
+     * Gets the id of the value stored in a buffer, adding the value if it is
+     * not already in the dictionary.
+     *
+     * @param buf ByteBuffer holding the UTF-8 bytes of the value.
+     * @param start int position of the first byte of the value.
+     * @param length int number of bytes in the value.
+     * @return int id of the value.
+     */
+    public int add(ByteBuffer buf, int start, int length) {
+
+        int hash = hash(buf, start, length);
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        int id;
+        while((id = table[slot] - 1) >= 0) {
+            if(hashes[id] == hash && matches(id, buf, start, length)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        id = size;
+        ensureCapacity(length);
+        for(int i = 0; i < length; i++) {
+            bytes[used + i] = buf.get(start + i);
+        }
+        used += length;
+        offsets[id + 1] = used;
+        hashes[id] = hash;
+        table[slot] = id + 1;
+        size++;
+        if(size * 2 > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * Gets the id of a String value, adding the value if it is not already in
+     * the dictionary.
+     *
+     * @param value String to add.
+     * @return int id of the value.
+     */
+    public int add(String value) {
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        int id = add(ByteBuffer.wrap(encoded), 0, encoded.length);
+        if(strings[id] == null) {
+            strings[id] = value;
+        }
+        return id;
+    }
+
+    /**
+     * Gets the id of a value without adding it.
+     *
+     * @param value String to find.
+     * @return int id of the value, or -1 if it is not in the dictionary.
+     */
+    public int find(String value) {
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.wrap(encoded);
+        int hash = hash(buf, 0, encoded.length);
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        int id;
+        while((id = table[slot] - 1) >= 0) {
+            if(hashes[id] == hash && matches(id, buf, 0, encoded.length)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the value for an id.
+     *
+     * @param id int id returned by add().
+     * @return String value of the id.
+     */
+    public String get(int id) {
+        String value = strings[id];
+        if(value == null) {
+            value = new String(bytes, offsets[id], offsets[id + 1]
+                    - offsets[id], StandardCharsets.UTF_8);
+            strings[id] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Gets the number of distinct values in the dictionary, the ids are from 0
+     * to size() - 1.
+     *
+     * @return int number of values.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the array holding the UTF-8 bytes of the values, the values are
+     * from getOffsets()[0] to getOffsets()[size()].
+     */
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Gets the start of each value in getBytes(), followed by the end of the
+     * last value.
+     */
+    int[] getOffsets() {
+        return offsets;
+    }
+
+    private boolean matches(int id, ByteBuffer buf, int start, int length) {
+        int offset = offsets[id];
+        if(offsets[id + 1] - offset != length) {
+            return false;
+        }
+        for(int i = 0; i < length; i++) {
+            if(bytes[offset + i] != buf.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(ByteBuffer buf, int start, int length) {
+        int hash = 0x811c9dc5;
+        for(int i = 0; i < length; i++) {
+            hash = (hash ^ buf.get(start + i)) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private void ensureCapacity(int length) {
+        if(used + length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2,
+                    used + length));
+        }
+        if(size + 1 >= hashes.length) {
+            int capacity = hashes.length * 2;
+            hashes = Arrays.copyOf(hashes, capacity);
+            strings = Arrays.copyOf(strings, capacity);
+            offsets = Arrays.copyOf(offsets, capacity + 1);
+        }
+    }
+
+    private void rehash() {
+        int[] larger = new int[table.length * 2];
+        int mask = larger.length - 1;
+        for(int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while(larger[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            larger[slot] = id + 1;
+        }
+        table = larger;
+    }
+}
@@ -1,14 +1,13 @@
 
 package subscriptionmanager;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Fills the new subscription from a customer, writes it to file then displays
@@ -16,7 +15,7 @@ import java.util.Date;
  */
 public class Subscription {
     
-    private SimpleDateFormat sdf = new SimpleDateFormat("dd-MMM-yyyy");
+    private static final String DATE_FORMAT = "dd-MMM-yyyy";
     
     private final Date subDate;  
     private String customer;
@@ -26,6 +25,7 @@ public class Subscription {
     private int discount;
     private PaymentType paymentType;
     private int totalCost;
+    private Tariff tariff;
     
     /**
      * Default constructor used when filling new subscriptions, gets the current
@@ -56,7 +56,30 @@ public class Subscription {
             Duration subLength, String discountCode, PaymentType paymentType, 
             int totalCost, String customer) throws ParseException {
         
-        this.subDate = sdf.parse(subDate);
+        this(new SimpleDateFormat(DATE_FORMAT).parse(subDate), userPackage,
+                subLength, discountCode, paymentType, totalCost, customer);
+    }
+    
+    /**
+     * Overloaded constructor used for creating instances of a subscription
+     * when the date has already been decoded, as it is by the
+     * SubscriptionParser, so no SimpleDateFormat is needed for each
+     * subscription read.
+     * 
+     * @param subDate Date of the subscription.
+     * @param userPackage PackageEnum for the package type.
+     * @param subLength Duration for the duration of the subscription.
+     * @param discountCode String for the discount code.
+     * @param paymentType PaymentType for the payment terms.
+     * @param totalCost int total cost for the subscription after any discounts.
+     * @param customer String customer name, i.e. J Smith.
+     * @see SubscriptionParser
+     */
+    public Subscription(Date subDate, PackageType userPackage, 
+            Duration subLength, String discountCode, PaymentType paymentType, 
+            int totalCost, String customer) {
+        
+        this.subDate = subDate;
         this.customer = customer;
         this.packageType = userPackage;
         this.subLength = subLength;
@@ -67,10 +90,13 @@ public class Subscription {
     
     /**
      * Driver method to fill the Subscription by calling the required methods
-     * within this class.
+     * within this class. The CurrentTariff is read once at the start, so the
+     * discount offered, the code rules and the price all come from the same
+     * tariff even if it is reloaded while the user is entering the details.
      */
     public void fillSubscription() {
 
+        tariff = CurrentTariff.get();
         setCustomer();
         setPackage();
         setSubLength();
@@ -90,7 +116,7 @@ public class Subscription {
     private String formatSubDate() {
         
         Calendar cal = Calendar.getInstance();
-        sdf = new SimpleDateFormat("dd-MMM-yyyy");
+        SimpleDateFormat sdf = new SimpleDateFormat(DATE_FORMAT);
         return sdf.format(cal.getTime());
     }
 
@@ -221,6 +247,16 @@ public class Subscription {
         } while (userLength == 0);
     }
     
+    /**
+     * Gets the duration of the subscription, used when storing the
+     * subscription in a SubscriptionStore.
+     * 
+     * @return the Duration of the subscription.
+     */
+    public Duration getSubLength() {
+        return subLength;
+    }
+    
     /**
      * Requests a discount code string from the user and validates the code, the
      * code is then modified to the correct format to be written to file.
@@ -231,7 +267,7 @@ public class Subscription {
      * wants to proceed without a discount code, if no valid code is supplied a
      * '-' is stored in place of a code.
      * 
-     * @see Validator#validateCode(java.lang.String) 
+     * @see Validator#validateCode(Tariff) 
      * @see Validator#validateConfirmInput(java.lang.String) 
      */
     private void setDiscount() {
@@ -248,7 +284,7 @@ public class Subscription {
                 break;               
             }
 
-            discountCode = Validator.validateCode();
+            discountCode = Validator.validateCode(tariff);
 
             if(!discountCode.equals("-")) {
                 discount = Character.getNumericValue(discountCode.charAt(5));
@@ -257,6 +293,15 @@ public class Subscription {
         } while (proceed == false);
     }
 
+    /**
+     * Gets the discount code of the subscription, '-' if no code was used.
+     * 
+     * @return String discount code.
+     */
+    public String getDiscountCode() {
+        return discountCode;
+    }
+
     /**
      * Requests the type of payment the customer wishes to use, one-off or
      * monthly, then displays a confirmation message to the user stating the
@@ -269,10 +314,12 @@ public class Subscription {
     private void setPayment() {
         
         int userPayment;
+        int oneOffDiscount = tariff.getPricingTable().getPaymentDiscount(
+                PaymentType.O.ordinal());
         do {
             userPayment = Validator.validateNumber("\nPay in full today to "
-                    + "receive a 5% discount!\n\nTo pay in full enter (1), "
-                    + "to pay monthly enter (2): ");
+                    + "receive a " + oneOffDiscount + "% discount!\n\nTo pay "
+                    + "in full enter (1), to pay monthly enter (2): ");
                     
                 switch (userPayment) {
                     case 1:
@@ -291,6 +338,15 @@ public class Subscription {
         } while (userPayment == 0);
     }
 
+    /**
+     * Gets the payment terms of the subscription.
+     * 
+     * @return the PaymentType of the subscription.
+     */
+    public PaymentType getPaymentType() {
+        return paymentType;
+    }
+
     /**
      * Method to get the total cost of the subscription, this is used when
      * reading from the file for generating the metrics used in the summaries.
@@ -302,75 +358,108 @@ public class Subscription {
     }
 
     /**
-     * Calculates the total cost of the subscription, by getting the
-     * base cost from the BasePackage class then subtracting any discounts.
-     * This method creates an instance of the BasePackage class, which contains
-     * the methods to calculate the base costs of each package type. The base
-     * cost then has the percentages of the dicounts subtracted from it and if
-     * the customer is paying a one off fee the base cost is multiplied by the
-     * length of subscription.
-     * 
-     * @see BasePackage
+     * Calculates the total cost of the subscription with calculateCost(),
+     * which looks the cost up in the PricingTable of the tariff read by
+     * fillSubscription(). The table holds the cost of every package type,
+     * duration, discount and payment type with the discounts already taken
+     * off, so nothing is calculated here. The pricing is recorded as a
+     * Pricing event holding the total cost.
+     *
+     * @see #calculateCost(PackageType, Duration, int, PaymentType, Tariff)
+     * @see PricingTable
+     * @see CurrentTariff
      */
     private void setTotalCost() {
-       
-        int baseCost = 0;
-        BasePackage base = new BasePackage(subLength);
+        PipelineEvents.Pricing event = new PipelineEvents.Pricing();
+        event.begin();
+        totalCost = calculateCost(packageType, subLength, discount, 
+                paymentType, tariff);
+        event.rows = 1;
+        event.totalCost = totalCost;
+        event.commit();
+    }
+    
+    /**
+     * Calculates the total cost of a subscription from its package type,
+     * duration, discount and payment type, used by setTotalCost() and when
+     * importing subscriptions without the user. The cost is looked up in the
+     * PricingTable of the CurrentTariff, which calculates every cost once.
+     * 
+     * @param packageType PackageType of the subscription.
+     * @param subLength Duration of the subscription.
+     * @param discount int percentage discount from the discount code, 0 if
+     *     there is no code.
+     * @param paymentType PaymentType of the subscription.
+     * @return int total cost in pence.
+     * @see CurrentTariff
+     */
+    public static int calculateCost(PackageType packageType, 
+            Duration subLength, int discount, PaymentType paymentType) {
+        return calculateCost(packageType, subLength, discount, paymentType,
+                CurrentTariff.get());
+    }
 
-        
-        switch(packageType) {
-            case B:
-                base.setBronzePackage();
-                baseCost = base.getBaseCost();
-                break;
-            case S:
-                base.setSilverPackage();
-                baseCost = base.getBaseCost();
-                break;
-            case G:
-                base.setGoldPackage();
-                baseCost = base.getBaseCost();
-                break;
-        }
-        double afterDiscount;
-        if(discount != 0) {
-            afterDiscount = baseCost - ((((double)discount) / 100) * baseCost);
-        } else {
-            afterDiscount = baseCost;
-        }
-        if(paymentType == PaymentType.O) {
-            afterDiscount = afterDiscount - ((((double)5) / 100) 
-                    * afterDiscount);
-        afterDiscount = afterDiscount * subLength.term;
-        }
-        totalCost = (int)Math.round(afterDiscount);
+    /**
+     * Overloaded method to calculate the total cost from the PricingTable of
+     * a given tariff.
+     * 
+     * @param packageType PackageType of the subscription.
+     * @param subLength Duration of the subscription.
+     * @param discount int percentage discount from the discount code, 0 if
+     *     there is no code.
+     * @param paymentType PaymentType of the subscription.
+     * @param tariff Tariff of the prices.
+     * @return int total cost in pence.
+     */
+    public static int calculateCost(PackageType packageType, 
+            Duration subLength, int discount, PaymentType paymentType,
+            Tariff tariff) {
+        return tariff.getPricingTable().price(packageType, subLength,
+                discount, paymentType);
     }
 
     /**
      * Writes the subscriptions to the subscriptions.txt file, in the
-     * tabbed format.
+     * tabbed format. The record is appended through the SubscriptionLog
+     * shared for the file, which stays open between subscriptions, and this
+     * waits until the log has made the record durable.
      */
     private void writeSubscription() {
         
         try {
-            File subFile = new File("subscriptions.txt");
-       
-            if(!subFile.exists()) {
-                System.out.println(subFile.createNewFile());
-            }
-            try(BufferedWriter writeSub = new BufferedWriter(
-                    new FileWriter(subFile, true))) {
-                writeSub.append(formatSubDate() + "\t" 
-                        + packageType + "\t" 
-                        + subLength.term + "\t" + discountCode + "\t" 
-                        + paymentType + "\t" + totalCost + "\t" + customer);
-                writeSub.newLine();
-            }
-        } catch(IOException e) {
+            SubscriptionLog.forFile(new File("subscriptions.txt")).append(
+                    formatRecord(formatSubDate(), packageType, subLength,
+                            discountCode, paymentType, totalCost, customer))
+                    .get();
+        } catch(IOException | ExecutionException e) {
+            System.out.println("Error writing new subscription.");
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
             System.out.println("Error writing new subscription.");
         }
     }
 
+    /**
+     * Formats a subscription as a line of the subscription files, in the
+     * tabbed format read by the SubscriptionParser.
+     * 
+     * @param date String date in the dd-MMM-yyyy format.
+     * @param packageType PackageType of the subscription.
+     * @param subLength Duration of the subscription.
+     * @param discountCode String discount code, '-' if there is no code.
+     * @param paymentType PaymentType of the subscription.
+     * @param totalCost int total cost in pence.
+     * @param customer String customer name, i.e. J Smith.
+     * @return String line without a line separator.
+     */
+    public static String formatRecord(String date, PackageType packageType,
+            Duration subLength, String discountCode, PaymentType paymentType,
+            int totalCost, String customer) {
+        return date + "\t" + packageType + "\t" + subLength.term + "\t" 
+                + discountCode + "\t" + paymentType + "\t" + totalCost + "\t"
+                + customer;
+    }
+
     /**
      * The toString() displays the summary of the subscription to the user in 
      * a display box, this is also the method used to display each matching
@@ -396,7 +485,8 @@ public class Subscription {
         summary[1] = centreAlign(line1, lineLength);
         
         summary[2] = String.format("|%s|", " ".repeat(lineLength - 2));
-        String line3left = "Date: " + sdf.format(subDate);
+        String line3left = "Date: " 
+                + new SimpleDateFormat(DATE_FORMAT).format(subDate);
         String line3right = "Discount Code: " + discountCode;
         summary[3] = dualAlign(line3left, line3right, lineLength);
         
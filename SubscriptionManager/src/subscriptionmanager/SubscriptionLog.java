@@ -0,0 +1,350 @@
+
+package subscriptionmanager;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The SubscriptionLog class appends subscriptions to a subscriptions file
+ * through a single long lived writer, instead of opening and closing the file
+ * for every subscription.
+ * Any number of threads can append records, each record is put on a queue and
+ * a single writer thread takes every record waiting on the queue and writes
+ * them to the file together as one batch, a group commit. The more records
+ * waiting, the larger the batch, so the number of writes does not grow with
+ * the number of records.
+ * <p>
+ * Each append returns a CompletableFuture which completes once the record is
+ * as durable as the SyncPolicy of the log guarantees:
+ * <ul>
+ * <li>NONE - the batch has been written to the file, the operating system may
+ * still lose it if the machine fails.</li>
+ * <li>BATCH - the batch has been written and forced to the disk.</li>
+ * <li>INTERVAL - the batch has been written and the file has been forced to
+ * the disk, which happens at most once per sync interval so a record can wait
+ * up to one interval.</li>
+ * </ul>
+ * If the write fails the futures of the batch complete exceptionally, as do
+ * the futures of any record appended once the log is closed.
+ *
+ * @see Subscription
+ * @see BulkImporter
+ */
+public class SubscriptionLog implements Closeable {
+
+    /**
+     * When the records written by the log are forced to the disk.
+     */
+    public enum SyncPolicy {
+        NONE, BATCH, INTERVAL
+    }
+
+    private static final int QUEUE_CAPACITY = 1 << 16;
+    private static final int MAX_BATCH = 1 << 12;
+    private static final HashMap<String, SubscriptionLog> LOGS =
+            new HashMap<>();
+
+    private final FileChannel channel;
+    private final SyncPolicy policy;
+    private final long syncInterval;
+    private final BlockingQueue<Entry> queue =
+            new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;
+    private final List<CompletableFuture<Void>> unsynced = new ArrayList<>();
+
+    private volatile boolean closed;
+    private long lastSync = System.nanoTime();
+
+    /**
+     * Opens a log appending to a file, the file is created if it does not
+     * exist.
+     *
+     * @param file File the records are appended to.
+     * @param policy SyncPolicy of the log.
+     * @param syncIntervalMillis long milliseconds between forcing the file to
+     *     the disk, used by the INTERVAL policy.
+     * @throws IOException if the file can not be opened.
+     */
+    public SubscriptionLog(File file, SyncPolicy policy,
+            long syncIntervalMillis) throws IOException {
+        this.channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        this.policy = policy;
+        this.syncInterval = TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+        this.writer = new Thread(this::run, "subscription-log-"
+                + file.getName());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Gets the log shared by the program for a file, opening it the first time
+     * it is requested. The policy is set by the subscriptionmanager.sync
+     * system property, none, batch or interval, BATCH by default, and the
+     * interval by subscriptionmanager.syncInterval in milliseconds, 1000 by
+     * default. The shared logs are closed when the program exits.
+     *
+     * @param file File the records are appended to.
+     * @return SubscriptionLog for the file.
+     * @throws IOException if the file can not be opened.
+     */
+    public static SubscriptionLog forFile(File file) throws IOException {
+        synchronized(LOGS) {
+            String key = file.getCanonicalPath();
+            SubscriptionLog log = LOGS.get(key);
+            if(log == null || log.closed) {
+                SyncPolicy policy = SyncPolicy.valueOf(System.getProperty(
+                        "subscriptionmanager.sync", "batch").toUpperCase());
+                long interval = Long.getLong(
+                        "subscriptionmanager.syncInterval", 1000);
+                log = new SubscriptionLog(file, policy, interval);
+                if(LOGS.isEmpty()) {
+                    Runtime.getRuntime().addShutdownHook(new Thread(
+                            SubscriptionLog::closeAll));
+                }
+                LOGS.put(key, log);
+            }
+            return log;
+        }
+    }
+
+    /**
+     * Appends a single record followed by a line separator.
+     *
+     * @param record String line of the subscriptions file.
+     * @return CompletableFuture completing when the record is durable under
+     *     the SyncPolicy of the log.
+     */
+    public CompletableFuture<Void> append(String record) {
+        return appendBatch(record + System.lineSeparator());
+    }
+
+    /**
+     * Appends text holding any number of complete lines, the lines are
+     * written together so they are not interleaved with other records.
+     *
+     * @param lines CharSequence of lines, each ending with a line separator.
+     * @return CompletableFuture completing when the lines are durable under
+     *     the SyncPolicy of the log.
+     */
+    public CompletableFuture<Void> appendBatch(CharSequence lines) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if(closed) {
+            done.completeExceptionally(new IOException("Log is closed"));
+            return done;
+        }
+        byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+        if(Metrics.ENABLED) {
+            long start = Metrics.start();
+            int records = lineCount(bytes);
+            done.thenRun(() -> Metrics.recordAppend(start, records,
+                    bytes.length));
+        }
+        try {
+            queue.put(new Entry(bytes, done));
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            done.completeExceptionally(e);
+        }
+        if(closed && !writer.isAlive()) {
+            failPending();
+        }
+        return done;
+    }
+
+    private static int lineCount(byte[] bytes) {
+        int lines = 0;
+        for(byte b: bytes) {
+            if(b == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    public SyncPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Writes any records still waiting, forces the file to the disk and
+     * closes it. The close waits for room on the queue when it is full, and
+     * any record appended after the writer has stopped is failed rather than
+     * left waiting.
+     *
+     * @throws IOException if the file can not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        boolean interrupted = false;
+        try {
+            queue.put(Entry.CLOSE);
+        } catch(InterruptedException e) {
+            interrupted = true;
+            writer.interrupt();
+        }
+        while(writer.isAlive()) {
+            try {
+                writer.join();
+            } catch(InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        failPending();
+        channel.close();
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Completes the future of every record still on the queue exceptionally,
+     * called once the writer has stopped.
+     */
+    private void failPending() {
+        List<Entry> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        IOException closedError = new IOException("Log is closed");
+        for(Entry entry: pending) {
+            if(entry.done != null) {
+                entry.done.completeExceptionally(closedError);
+            }
+        }
+    }
+
+    private static void closeAll() {
+        synchronized(LOGS) {
+            for(SubscriptionLog log: LOGS.values()) {
+                try {
+                    log.close();
+                } catch(IOException e) {
+                    System.out.println("Error closing subscription log.");
+                }
+            }
+            LOGS.clear();
+        }
+    }
+
+    /**
+     * The writer thread, takes each batch of waiting records and writes it.
+     */
+    private void run() {
+
+        List<Entry> batch = new ArrayList<>();
+        boolean running = true;
+        while(running) {
+            try {
+                Entry first = policy == SyncPolicy.INTERVAL
+                        && !unsynced.isEmpty()
+                        ? queue.poll(syncInterval, TimeUnit.NANOSECONDS)
+                        : queue.take();
+                if(first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                }
+            } catch(InterruptedException e) {
+                running = false;
+            }
+            if(batch.remove(Entry.CLOSE)) {
+                running = false;
+                queue.drainTo(batch);
+            }
+            write(batch, !running);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Writes a batch in a single write where possible and completes the
+     * futures that are now durable.
+     */
+    private void write(List<Entry> batch, boolean last) {
+
+        PipelineEvents.Append event = new PipelineEvents.Append();
+        event.begin();
+        try {
+            if(!batch.isEmpty()) {
+                int length = 0;
+                for(Entry entry: batch) {
+                    length += entry.bytes.length;
+                }
+                ByteBuffer buf = ByteBuffer.allocate(length);
+                for(Entry entry: batch) {
+                    buf.put(entry.bytes);
+                }
+                buf.flip();
+                while(buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+                if(event.isEnabled()) {
+                    for(Entry entry: batch) {
+                        event.rows += lineCount(entry.bytes);
+                    }
+                    event.bytes = length;
+                }
+            }
+            for(Entry entry: batch) {
+                unsynced.add(entry.done);
+            }
+            long now = System.nanoTime();
+            boolean sync = policy == SyncPolicy.BATCH
+                    || policy == SyncPolicy.INTERVAL
+                    && (last || now - lastSync >= syncInterval);
+            if(sync && !unsynced.isEmpty()) {
+                channel.force(false);
+                lastSync = now;
+                event.synced = true;
+            }
+            if(sync || policy == SyncPolicy.NONE) {
+                for(CompletableFuture<Void> done: unsynced) {
+                    done.complete(null);
+                }
+                unsynced.clear();
+            }
+        } catch(IOException e) {
+            for(CompletableFuture<Void> done: unsynced) {
+                done.completeExceptionally(e);
+            }
+            unsynced.clear();
+            for(Entry entry: batch) {
+                entry.done.completeExceptionally(e);
+            }
+        }
+        if(!batch.isEmpty() || event.synced) {
+            event.commit();
+        }
+    }
+
+    /**
+     * The bytes of a record waiting to be written and its future.
+     */
+    private static final class Entry {
+
+        private static final Entry CLOSE = new Entry(new byte[0], null);
+
+        private final byte[] bytes;
+        private final CompletableFuture<Void> done;
+
+        Entry(byte[] bytes, CompletableFuture<Void> done) {
+            this.bytes = bytes;
+            this.done = done;
+        }
+    }
+}
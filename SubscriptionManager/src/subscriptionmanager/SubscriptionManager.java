@@ -5,6 +5,12 @@
  */
 package subscriptionmanager;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+
 /**
 * Subscription manager is the main class for subscription handling and
 * allows a user to create, search for and summarise subscriptions.
@@ -19,20 +25,31 @@ public class SubscriptionManager {
      * The main() method acts as the main menu of the program and is displayed
      * to the user each time the program is used and the user is returned here
      * following each use case.
+     * When any arguments are given the menu is not shown, the arguments are
+     * run as a query by the BatchMode instead.
      * @param args the command line arguments
+     * @see BatchMode
      */
     public static void main(String[] args) {
         
+        if(args.length > 0) {
+            System.exit(BatchMode.run(args));
+        }
         int userChoice;
         do {
             System.out.println("\nMENU:\n\n1. Create New Subscription\n\n"
                 + "2. Display Summary Of Subscriptions\n\n"
                 + "3. Display Summary Of Subscriptions By Month\n\n"
                 + "4. Search For Subscription To Display\n\n"
+                + "5. Import Subscriptions From File\n\n"
+                + "6. Reprice Subscriptions With A Tariff File\n\n"
+                + "7. Start HTTP Server\n\n"
+                + "8. Follow Summary Of A Growing File\n\n"
+                + "9. Display Top Customers, Subscriptions Or Codes\n\n"
                 + "0. Exit\n\n");
             
             userChoice = Validator.validateNumber(
-                    "\nEnter choice 1-4, or 0 to exit: ");            
+                    "\nEnter choice 1-9, or 0 to exit: ");            
             
             switch(userChoice) {
                 case 1:
@@ -51,6 +68,21 @@ public class SubscriptionManager {
                     SearchSubscription searchSub = new SearchSubscription();
                     searchSub.generateSummary();
                     break;
+                case 5:
+                    importSubscriptions();
+                    break;
+                case 6:
+                    repriceSubscriptions();
+                    break;
+                case 7:
+                    runServer();
+                    break;
+                case 8:
+                    followSubscriptions();
+                    break;
+                case 9:
+                    rankSubscriptions();
+                    break;
                 case 0:
                     System.out.println("\nGoodbye.");
                     System.exit(0);
@@ -60,4 +92,216 @@ public class SubscriptionManager {
             }              
         } while(true);   
     }
-}
\ No newline at end of file
+    
+    /**
+     * Imports the orders in a file provided by the user into the
+     * subscriptions.txt file, then displays how many were imported.
+     * 
+     * @see BulkImporter
+     */
+    private static void importSubscriptions() {
+        
+        String filename = Validator.validateFilename("\nEnter the file of "
+                + "orders to import: ");
+        BulkImporter importer = new BulkImporter(
+                new File("subscriptions.txt"));
+        try {
+            importer.importFile(new File(filename));
+        } catch(FileNotFoundException e) {
+            System.out.println("\nError, file not found!");
+        } catch(IOException e) {
+            System.out.println("\nError importing subscriptions.");
+        }
+        System.out.println("\nSubscriptions imported: " 
+                + importer.getImported() + ", orders rejected: " 
+                + importer.getRejected());
+    }
+    
+    /**
+     * Reprices a subscriptions file provided by the user with the prices of a
+     * tariff file, writes the repriced subscriptions to a new file and
+     * displays the difference in revenue.
+     * 
+     * @see Repricer
+     */
+    private static void repriceSubscriptions() {
+        
+        String source = Validator.validateFilename("\nEnter the file of "
+                + "subscriptions to reprice: ");
+        String tariffFile = Validator.validateFilename("\nEnter the tariff "
+                + "file: ");
+        String target = Validator.validateFilename("\nEnter the file to "
+                + "write the repriced subscriptions to: ");
+        try {
+            Tariff tariff = Tariff.load(new File(tariffFile));
+            Repricer.Result result = new Repricer(tariff).reprice(
+                    new File(source), new File(target),
+                    new SubscriptionParser.RowHandler() {
+                @Override
+                public void row(SubscriptionParser.ParsedRow row) {
+                }
+
+                @Override
+                public void malformed(long line, int column, String reason) {
+                    System.out.println("\nCopied line " + line + " without "
+                            + "repricing, column " + column + ": " + reason
+                            + ".");
+                }
+            });
+            System.out.println(result);
+            System.out.println("\nSubscriptions repriced: " 
+                    + result.getRepriced() + ", lines copied unrepriced: " 
+                    + result.getMalformed());
+        } catch(FileNotFoundException e) {
+            System.out.println("\nError, file not found!");
+        } catch(IllegalArgumentException e) {
+            System.out.println("\nError in tariff file, " + e.getMessage());
+        } catch(IOException e) {
+            System.out.println("\nError repricing subscriptions.");
+        }
+    }
+    
+    /**
+     * Serves the subscriptions.txt file over HTTP on a port provided by the
+     * user, until the user chooses to stop the server. The server only
+     * listens on the loopback address unless the user chooses to listen on
+     * every address.
+     * 
+     * @see SubscriptionServer
+     */
+    private static void runServer() {
+        
+        int port;
+        do {
+            port = Validator.validateNumber("\nEnter the port to listen on, "
+                    + "or 0 for any free port: ");
+        } while(port < 0 || port > 65535);
+        boolean everyAddress = Validator.validateConfirmInput("\nListen on "
+                + "every network address, not only this machine (Y/N)? ");
+        try {
+            SubscriptionService service = new SubscriptionService(
+                    new File("subscriptions.txt"));
+            SubscriptionServer server = everyAddress
+                    ? new SubscriptionServer(service,
+                            new InetSocketAddress(port))
+                    : new SubscriptionServer(service, port);
+            server.start();
+            String listening = "\nServer listening on "
+                    + server.getAddress().getAddress().getHostAddress()
+                    + " port " + server.getPort() + ".";
+            System.out.println(listening);
+            while(!Validator.validateConfirmInput("\nStop the server? ")) {
+                System.out.println(listening);
+            }
+            server.stop();
+        } catch(IOException e) {
+            System.out.println("\nError starting server, " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Follows a subscriptions file provided by the user, i.e.
+     * subscriptions.txt, displaying the summary of every subscription in it
+     * and again each time subscriptions are appended to it, until the user
+     * stops following the file.
+     * 
+     * @see SubscriptionTailer
+     */
+    private static void followSubscriptions() {
+        
+        String filename = Validator.validateFilename("\nEnter the file of "
+                + "subscriptions to follow: ");
+        SubscriptionTailer tailer = new SubscriptionTailer(
+                new File(filename));
+        tailer.setListener(() -> displayFollowed(tailer));
+        try {
+            tailer.poll();
+        } catch(IOException e) {
+            System.out.println("\nError reading " + filename + ".");
+            return;
+        }
+        displayFollowed(tailer);
+        tailer.start(2000);
+        while(!Validator.validateConfirmInput("\nStop following the "
+                + "file? ")) {
+            displayFollowed(tailer);
+        }
+        tailer.close();
+    }
+    
+    private static void displayFollowed(SubscriptionTailer tailer) {
+        StringBuilder text = new StringBuilder("\nSubscriptions read: ")
+                .append(tailer.getRows()).append(System.lineSeparator());
+        tailer.overall().appendText(text);
+        System.out.print(text);
+    }
+    
+    /**
+     * Displays the top customers by spend, subscriptions by price or discount
+     * codes by use of a file provided by the user, for every subscription or
+     * for a month, as many as the user asks for.
+     * 
+     * @see RankingQuery
+     */
+    private static void rankSubscriptions() {
+        
+        String filename = Validator.validateFilename("\nEnter the file of "
+                + "subscriptions to rank: ");
+        SubscriptionStore store;
+        try {
+            store = Summary.loadFile(new File(filename), System.out);
+        } catch(FileNotFoundException e) {
+            System.out.println("\nError, file not found!");
+            return;
+        } catch(IOException e) {
+            System.out.println("\nError reading from file!");
+            return;
+        }
+        RankingQuery.By by = null;
+        do {
+            switch(Validator.validateNumber("\nEnter 1 for top customers by "
+                    + "spend, 2 for top subscriptions by price or 3 for top "
+                    + "discount codes: ")) {
+                case 1:
+                    by = RankingQuery.By.CUSTOMERS;
+                    break;
+                case 2:
+                    by = RankingQuery.By.SUBSCRIPTIONS;
+                    break;
+                case 3:
+                    by = RankingQuery.By.CODES;
+                    break;
+                default:
+                    System.out.println("\nInvalid option, please enter 1, 2 "
+                            + "or 3.");
+            }
+        } while(by == null);
+        int limit;
+        do {
+            limit = Validator.validateNumber("\nEnter how many to show: ");
+            if(limit < 1) {
+                System.out.println("\nInvalid number, please enter at least "
+                        + "1.");
+            }
+        } while(limit < 1);
+        
+        RankingQuery query = new RankingQuery(store);
+        if(Validator.validateConfirmInput("\nRank a single month? ")) {
+            String month = Validator.validateMonth(EpochDays.SHORT_MONTHS);
+            int year;
+            do {
+                year = Validator.validateNumber("\nEnter the year i.e 2020, "
+                        + "or 0 for every year: ");
+                if(year < 0) {
+                    System.out.println("\nInvalid year, please enter a year "
+                            + "or 0.");
+                }
+            } while(year < 0);
+            query.setPeriod(year, Arrays.asList(
+                    EpochDays.SHORT_MONTHS).indexOf(month));
+        }
+        StringBuilder text = new StringBuilder(System.lineSeparator());
+        query.top(by, limit).appendText(text);
+        System.out.print(text);
+    }
+}
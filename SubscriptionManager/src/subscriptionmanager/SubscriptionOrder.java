@@ -0,0 +1,206 @@
+
+package subscriptionmanager;
+
+import java.time.LocalDate;
+import java.util.Date;
+
+/**
+ * The SubscriptionOrder class is a validated and priced order for a new
+ * subscription, created from text fields rather than by requesting each value
+ * from the user, i.e. when importing orders from a file.
+ * The fields are checked with the same rules the Subscription class applies to
+ * the user's input, the name is formatted by Validator.formatName(), the
+ * discount code checked by Validator.checkCode() and the total cost calculated
+ * from the PricingTable, both with the same Tariff so the order is consistent
+ * even if the CurrentTariff is replaced while it is being priced.
+ *
+ * @see BulkImporter
+ * @see Validator
+ */
+public class SubscriptionOrder {
+
+    private static final int MAX_NAME_LENGTH = 25;
+
+    private final String customer;
+    private final PackageType packageType;
+    private final Duration subLength;
+    private final String discountCode;
+    private final int discount;
+    private final PaymentType paymentType;
+    private final int totalCost;
+
+    private SubscriptionOrder(String customer, PackageType packageType,
+            Duration subLength, String discountCode, PaymentType paymentType,
+            Tariff tariff) {
+        this.customer = customer;
+        this.packageType = packageType;
+        this.subLength = subLength;
+        this.discountCode = discountCode;
+        this.discount = discountCode.equals("-") ? 0
+                : Character.getNumericValue(discountCode.charAt(5));
+        this.paymentType = paymentType;
+        this.totalCost = tariff.getPricingTable().price(packageType,
+                subLength, discount, paymentType);
+    }
+
+    /**
+     * Validates the fields of an order and calculates its total cost.
+     *
+     * @param customer String customer name, a first name or initial and a
+     *     surname, i.e. J Smith or john smith.
+     * @param packageType String package type, B, S or G or the name of the
+     *     package, i.e. Bronze.
+     * @param subLength String duration in months, 1, 3, 6 or 12.
+     * @param discountCode String discount code, blank or '-' for no code.
+     * @param paymentType String payment type, O or M, or One-off or Monthly.
+     * @param date LocalDate the order is made on, used to check the discount
+     *     code.
+     * @return SubscriptionOrder with the total cost calculated.
+     * @throws IllegalArgumentException if any field is invalid, the message
+     *     explains which.
+     * @see CurrentTariff
+     */
+    public static SubscriptionOrder parse(String customer, String packageType,
+            String subLength, String discountCode, String paymentType,
+            LocalDate date) {
+        return parse(customer, packageType, subLength, discountCode,
+                paymentType, date, CurrentTariff.get());
+    }
+
+    /**
+     * Validates the fields of an order and calculates its total cost with a
+     * given tariff.
+     *
+     * @param customer String customer name.
+     * @param packageType String package type.
+     * @param subLength String duration in months.
+     * @param discountCode String discount code, blank or '-' for no code.
+     * @param paymentType String payment type.
+     * @param date LocalDate the order is made on.
+     * @param tariff Tariff used to check the code and price the order.
+     * @return SubscriptionOrder with the total cost calculated.
+     * @throws IllegalArgumentException if any field is invalid.
+     */
+    public static SubscriptionOrder parse(String customer, String packageType,
+            String subLength, String discountCode, String paymentType,
+            LocalDate date, Tariff tariff) {
+
+        String name = customer.trim();
+        int space = name.indexOf(' ');
+        if(space > 0) {
+            name = Validator.formatName(name.substring(0, space),
+                    name.substring(space + 1));
+        } else {
+            name = null;
+        }
+        if(name == null) {
+            throw new IllegalArgumentException("Name invalid, enter first "
+                    + "initial and surname.");
+        }
+        if(name.length() > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Name invalid, too many "
+                    + "characters.");
+        }
+
+        PackageType userPackage = null;
+        String pack = packageType.trim().toUpperCase();
+        for(PackageType type: PackageType.values()) {
+            if(type.name().equals(pack) || type.type.equals(pack)) {
+                userPackage = type;
+            }
+        }
+        if(userPackage == null) {
+            throw new IllegalArgumentException("Invalid package type, must be "
+                    + "Bronze, Silver or Gold.");
+        }
+
+        Duration userLength;
+        try {
+            userLength = Duration.getTerm(Integer.parseInt(subLength.trim()));
+        } catch(NumberFormatException e) {
+            userLength = null;
+        }
+        if(userLength == null) {
+            throw new IllegalArgumentException("Invalid subscription length, "
+                    + "must be 1, 3, 6 or 12 months.");
+        }
+
+        String code = discountCode.replace(".", "").replace(",", "").trim()
+                .toUpperCase();
+        if(code.isEmpty()) {
+            code = "-";
+        }
+        if(!code.equals("-")) {
+            String error = Validator.checkCode(code, date, tariff);
+            if(error != null) {
+                throw new IllegalArgumentException(error);
+            }
+        }
+
+        PaymentType userPayment = null;
+        String payment = paymentType.trim().toUpperCase();
+        for(PaymentType type: PaymentType.values()) {
+            if(type.name().equals(payment) || type.payment.equals(payment)) {
+                userPayment = type;
+            }
+        }
+        if(userPayment == null) {
+            throw new IllegalArgumentException("Invalid payment type, must be "
+                    + "One-off or Monthly.");
+        }
+
+        return new SubscriptionOrder(name, userPackage, userLength, code,
+                userPayment, tariff);
+    }
+
+    public String getCustomer() {
+        return customer;
+    }
+
+    public PackageType getPackageType() {
+        return packageType;
+    }
+
+    public Duration getSubLength() {
+        return subLength;
+    }
+
+    public String getDiscountCode() {
+        return discountCode;
+    }
+
+    public int getDiscount() {
+        return discount;
+    }
+
+    public PaymentType getPaymentType() {
+        return paymentType;
+    }
+
+    public int getTotalCost() {
+        return totalCost;
+    }
+
+    /**
+     * Formats the order as a line of the subscription files.
+     *
+     * @param date String date of the subscription in the dd-MMM-yyyy format.
+     * @return String line without a line separator.
+     * @see Subscription#formatRecord
+     */
+    public String toRecord(String date) {
+        return Subscription.formatRecord(date, packageType, subLength,
+                discountCode, paymentType, totalCost, customer);
+    }
+
+    /**
+     * Creates the Subscription for the order.
+     *
+     * @param subDate Date of the subscription.
+     * @return Subscription with the values of the order.
+     */
+    public Subscription toSubscription(Date subDate) {
+        return new Subscription(subDate, packageType, subLength, discountCode,
+                paymentType, totalCost, customer);
+    }
+}
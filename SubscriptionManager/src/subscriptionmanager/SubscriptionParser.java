@@ -0,0 +1,485 @@
+
+package subscriptionmanager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * The SubscriptionParser class reads subscriptions in the tabbed file format
+ * written by the Subscription class, i.e.
+ * <pre>07-Jul-2020	B	12	YM21L7	O	3181	H Simpson</pre>
+ * The parser scans the bytes of the file for the tab and new line delimiters
+ * and decodes the date, package, duration, payment type and total cost
+ * directly from the bytes, rather than splitting each line into Strings. Each
+ * row is passed to a RowHandler through a single reused ParsedRow, so the only
+ * objects created per row are the ones the handler chooses to create.
+ * <p>
+ * A row which can not be parsed is reported to the handler with the line and
+ * column of the problem and the parser carries on with the next line, so one
+ * bad row does not prevent the rest of the file being summarised.
+ *
+ * @see Subscription
+ * @see Summary#readFile()
+ */
+public class SubscriptionParser {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int DATE_LENGTH = 11;
+    private static final int[] MONTH_KEYS = new int[12];
+
+    static {
+        for(int i = 0; i < MONTH_KEYS.length; i++) {
+            String month = EpochDays.SHORT_MONTHS[i];
+            MONTH_KEYS[i] = monthKey(month.charAt(0), month.charAt(1),
+                    month.charAt(2));
+        }
+    }
+
+    private final ParsedRow row = new ParsedRow();
+
+    /**
+     * Receives the rows read by the parser.
+     */
+    public interface RowHandler {
+
+        /**
+         * Called for each valid row, the ParsedRow is reused for the next row
+         * so any values needed later must be copied out of it.
+         *
+         * @param row the fields of the row.
+         */
+        void row(ParsedRow row);
+
+        /**
+         * Called for each row which could not be parsed.
+         *
+         * @param line long line number of the row, starting from 1.
+         * @param column int column of the problem in the line, starting from
+         *     1.
+         * @param reason String description of the problem.
+         */
+        void malformed(long line, int column, String reason);
+    }
+
+    /**
+     * Reads every row from the stream and passes them to the handler.
+     * The stream is read in blocks, any partial line at the end of a block is
+     * moved to the start of the buffer and completed by the next read. The
+     * buffer grows if a single line is longer than the buffer.
+     *
+     * @param in InputStream of the subscription file.
+     * @param handler RowHandler to receive the rows.
+     * @return long number of lines read.
+     * @throws IOException if the stream can not be read.
+     */
+    public long parse(InputStream in, RowHandler handler) throws IOException {
+
+        byte[] bytes = new byte[BUFFER_SIZE];
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        int filled = 0;
+        long line = 1;
+        int read;
+
+        while((read = in.read(bytes, filled, bytes.length - filled)) != -1) {
+            filled += read;
+            int end = filled;
+            while(end > 0 && bytes[end - 1] != '\n') {
+                end--;
+            }
+            if(end == 0) {
+                if(filled == bytes.length) {
+                    byte[] larger = new byte[bytes.length * 2];
+                    System.arraycopy(bytes, 0, larger, 0, filled);
+                    bytes = larger;
+                    buf = ByteBuffer.wrap(bytes);
+                }
+                continue;
+            }
+            line += parse(buf, 0, end, line, handler);
+            System.arraycopy(bytes, end, bytes, 0, filled - end);
+            filled -= end;
+        }
+        if(filled > 0) {
+            line += parse(buf, 0, filled, line, handler);
+        }
+        return line - 1;
+    }
+
+    /**
+     * Parses the rows between two positions of a buffer, which may be a heap
+     * buffer or a region of a memory mapped file. The region is expected to
+     * start at the beginning of a line, a final line without a new line
+     * character is parsed up to the end of the region.
+     *
+     * @param buf ByteBuffer containing the rows, its position is not changed.
+     * @param from int position of the first byte to parse.
+     * @param to int position after the last byte to parse.
+     * @param firstLine long line number of the first row, used when reporting
+     *     malformed rows.
+     * @param handler RowHandler to receive the rows.
+     * @return long number of lines in the region.
+     */
+    public long parse(ByteBuffer buf, int from, int to, long firstLine,
+            RowHandler handler) {
+
+        PipelineEvents.ChunkParse event = new PipelineEvents.ChunkParse();
+        event.begin();
+        long lines = 0;
+        int start = from;
+        while(start < to) {
+            int end = start;
+            while(end < to && buf.get(end) != '\n') {
+                end++;
+            }
+            int next = end + 1;
+            if(end > start && buf.get(end - 1) == '\r') {
+                end--;
+            }
+            long line = firstLine + lines;
+            lines++;
+            if(end > start) {
+                try {
+                    parseRow(buf, start, end, line);
+                    handler.row(row);
+                } catch(RowException e) {
+                    handler.malformed(line, e.position - start + 1,
+                            e.getMessage());
+                }
+            }
+            start = next;
+        }
+        event.firstLine = firstLine;
+        event.lines = lines;
+        event.bytes = to - from;
+        event.commit();
+        return lines;
+    }
+
+    /**
+     * Decodes a single line into the reused ParsedRow.
+     *
+     * @param buf ByteBuffer containing the line.
+     * @param start int position of the first byte of the line.
+     * @param end int position after the last byte of the line.
+     * @param line long line number of the row.
+     * @throws RowException if any field is missing or invalid.
+     */
+    private void parseRow(ByteBuffer buf, int start, int end, long line) {
+
+        row.buf = buf;
+        row.line = line;
+        row.start = start;
+        row.end = end;
+
+        int tab = nextTab(buf, start, end, "date");
+        row.epochDay = parseDate(buf, start, tab);
+
+        int pos = tab + 1;
+        tab = nextTab(buf, pos, end, "package type");
+        if(tab - pos != 1) {
+            throw new RowException("invalid package type", pos);
+        }
+        switch(buf.get(pos)) {
+            case 'B':
+                row.packageType = PackageType.B;
+                break;
+            case 'S':
+                row.packageType = PackageType.S;
+                break;
+            case 'G':
+                row.packageType = PackageType.G;
+                break;
+            default:
+                throw new RowException("invalid package type", pos);
+        }
+
+        pos = tab + 1;
+        tab = nextTab(buf, pos, end, "duration");
+        row.duration = Duration.getTerm(parseInt(buf, pos, tab, "duration"));
+        if(row.duration == null) {
+            throw new RowException("invalid duration", pos);
+        }
+
+        pos = tab + 1;
+        tab = nextTab(buf, pos, end, "discount code");
+        if(tab == pos) {
+            throw new RowException("missing discount code", pos);
+        }
+        row.codeStart = pos;
+        row.codeLength = tab - pos;
+
+        pos = tab + 1;
+        tab = nextTab(buf, pos, end, "payment type");
+        if(tab - pos != 1) {
+            throw new RowException("invalid payment type", pos);
+        }
+        switch(buf.get(pos)) {
+            case 'O':
+                row.paymentType = PaymentType.O;
+                break;
+            case 'M':
+                row.paymentType = PaymentType.M;
+                break;
+            default:
+                throw new RowException("invalid payment type", pos);
+        }
+
+        pos = tab + 1;
+        tab = nextTab(buf, pos, end, "total cost");
+        row.costStart = pos;
+        row.totalCost = parseInt(buf, pos, tab, "total cost");
+
+        pos = tab + 1;
+        int customerEnd = pos;
+        while(customerEnd < end && buf.get(customerEnd) != '\t') {
+            customerEnd++;
+        }
+        if(customerEnd == pos) {
+            throw new RowException("missing customer", pos);
+        }
+        row.customerStart = pos;
+        row.customerLength = customerEnd - pos;
+    }
+
+    /**
+     * Finds the tab ending the field starting at pos.
+     */
+    private static int nextTab(ByteBuffer buf, int pos, int end,
+            String field) {
+        while(pos < end) {
+            if(buf.get(pos) == '\t') {
+                return pos;
+            }
+            pos++;
+        }
+        throw new RowException("missing " + field, end);
+    }
+
+    /**
+     * Parses a non negative int from the ASCII digits between two positions.
+     */
+    private static int parseInt(ByteBuffer buf, int from, int to,
+            String field) {
+        if(from == to) {
+            throw new RowException("missing " + field, from);
+        }
+        int value = 0;
+        for(int i = from; i < to; i++) {
+            int digit = buf.get(i) - '0';
+            if(digit < 0 || digit > 9) {
+                throw new RowException("invalid " + field, i);
+            }
+            if(value > (Integer.MAX_VALUE - digit) / 10) {
+                throw new RowException(field + " too large", from);
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Parses a date in the dd-MMM-yyyy format to an epoch day, a single digit
+     * day is also accepted as it is by SimpleDateFormat.
+     */
+    private static int parseDate(ByteBuffer buf, int from, int to) {
+
+        int length = to - from;
+        if(length != DATE_LENGTH && length != DATE_LENGTH - 1) {
+            throw new RowException("invalid date", from);
+        }
+        int monthPos = from + length - 8;
+        if(buf.get(monthPos - 1) != '-' || buf.get(monthPos + 3) != '-') {
+            throw new RowException("invalid date", from);
+        }
+        int day = parseInt(buf, from, monthPos - 1, "date");
+        int year = parseInt(buf, monthPos + 4, to, "date");
+
+        int key = monthKey((char) buf.get(monthPos),
+                (char) buf.get(monthPos + 1), (char) buf.get(monthPos + 2));
+        int month = 0;
+        for(int i = 0; i < MONTH_KEYS.length; i++) {
+            if(MONTH_KEYS[i] == key) {
+                month = i + 1;
+                break;
+            }
+        }
+        if(month == 0) {
+            throw new RowException("invalid month", monthPos);
+        }
+        if(day < 1 || day > EpochDays.lengthOfMonth(year, month)) {
+            throw new RowException("invalid day", from);
+        }
+        return EpochDays.of(year, month, day);
+    }
+
+    /**
+     * Packs the three letters of a short month name, ignoring case.
+     */
+    private static int monthKey(char first, char second, char third) {
+        return ((first | 0x20) << 16) | ((second | 0x20) << 8)
+                | (third | 0x20);
+    }
+
+    /**
+     * The fields of the current row. The discount code and customer name are
+     * left in the buffer and only decoded to Strings when requested, so a
+     * handler can read them without creating a String for every row.
+     */
+    public static final class ParsedRow {
+
+        private ByteBuffer buf;
+        private byte[] scratch = new byte[64];
+        private long line;
+        private int start;
+        private int end;
+        private int epochDay;
+        private PackageType packageType;
+        private Duration duration;
+        private PaymentType paymentType;
+        private int totalCost;
+        private int costStart;
+        private int codeStart;
+        private int codeLength;
+        private int customerStart;
+        private int customerLength;
+
+        private ParsedRow() {
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        /**
+         * Gets the position of the first byte of the line in the buffer.
+         *
+         * @return int position of the start of the line.
+         */
+        public int getStart() {
+            return start;
+        }
+
+        /**
+         * Gets the position after the last byte of the line, not including
+         * the line separator.
+         *
+         * @return int position of the end of the line.
+         */
+        public int getEnd() {
+            return end;
+        }
+
+        public int getEpochDay() {
+            return epochDay;
+        }
+
+        public PackageType getPackageType() {
+            return packageType;
+        }
+
+        public Duration getDuration() {
+            return duration;
+        }
+
+        public PaymentType getPaymentType() {
+            return paymentType;
+        }
+
+        public int getTotalCost() {
+            return totalCost;
+        }
+
+        public int getCostStart() {
+            return costStart;
+        }
+
+        public ByteBuffer getBuffer() {
+            return buf;
+        }
+
+        public int getCodeStart() {
+            return codeStart;
+        }
+
+        public int getCodeLength() {
+            return codeLength;
+        }
+
+        public int getCustomerStart() {
+            return customerStart;
+        }
+
+        public int getCustomerLength() {
+            return customerLength;
+        }
+
+        /**
+         * Gets the percentage discount of the discount code, the last digit
+         * of a valid code, or 0 if no code was used.
+         *
+         * @return int discount from 0 to 9.
+         */
+        public int getDiscount() {
+            if(codeLength != 6) {
+                return 0;
+            }
+            int digit = buf.get(codeStart + 5) - '0';
+            return digit >= 0 && digit <= 9 ? digit : 0;
+        }
+
+        public String getDiscountCode() {
+            return decode(codeStart, codeLength);
+        }
+
+        public String getCustomer() {
+            return decode(customerStart, customerLength);
+        }
+
+        public Date getSubDate() {
+            return EpochDays.toDate(epochDay);
+        }
+
+        /**
+         * Creates a Subscription from the row.
+         *
+         * @return Subscription with the values of the row.
+         */
+        public Subscription toSubscription() {
+            return new Subscription(getSubDate(), packageType, duration,
+                    getDiscountCode(), paymentType, totalCost, getCustomer());
+        }
+
+        private String decode(int start, int length) {
+            if(buf.hasArray()) {
+                return new String(buf.array(), buf.arrayOffset() + start,
+                        length, StandardCharsets.UTF_8);
+            }
+            if(scratch.length < length) {
+                scratch = new byte[length];
+            }
+            for(int i = 0; i < length; i++) {
+                scratch[i] = buf.get(start + i);
+            }
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Thrown when a row can not be parsed, the stack trace is not filled in as
+     * the exception only carries the position back to parse().
+     */
+    private static final class RowException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int position;
+
+        RowException(String reason, int position) {
+            super(reason, null, false, false);
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+
+package subscriptionmanager;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The SubscriptionServer class serves a SubscriptionService over HTTP with
+ * the HttpServer built into the JDK, answering with JSON.
+ * The endpoints are:
+ * <ul>
+ * <li>POST /subscriptions - creates a subscription from a JSON object with
+ * customer, package, duration, discountCode and payment, returning the new
+ * subscription.</li>
+ * <li>GET /subscriptions/{id} - gets a subscription.</li>
+ * <li>GET /search?customer=term - finds the subscriptions of every customer
+ * whose name contains the term, with an optional limit.</li>
+ * <li>GET /summary - the figures of the Summary class.</li>
+ * <li>GET /summary/month?month=Jul&amp;year=2020 - the figures of the
+ * MonthSummary class, the year is optional.</li>
+ * <li>GET /metrics - the report of the Metrics.</li>
+ * </ul>
+ * A request with an invalid parameter, i.e. a negative limit or a malformed
+ * escape in the query, is answered with status 400 and a JSON error.
+ * Each request is handled on a thread of its own, a virtual thread when the
+ * JDK supports them, otherwise a thread from a cached pool. Port 0 can be used
+ * to listen on any free port, i.e. when testing with a local client, the port
+ * chosen is given by getPort(). The server has no authentication, so a port
+ * alone is bound on the loopback address and only answers clients on the
+ * same machine, listening on any other address has to be asked for by giving
+ * the address.
+ *
+ * @see SubscriptionService
+ * @see Json
+ * @see Metrics
+ */
+public class SubscriptionServer {
+
+    private static final int MAX_BODY = 1 << 16;
+    private static final int DEFAULT_LIMIT = 1000;
+
+    private final SubscriptionService service;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * The constructor binds the server to a port on the loopback address, the
+     * server does not answer requests until it is started.
+     *
+     * @param service SubscriptionService the requests are answered from.
+     * @param port int port to listen on, or 0 for any free port.
+     * @throws IOException if the port can not be bound.
+     */
+    public SubscriptionServer(SubscriptionService service, int port)
+            throws IOException {
+        this(service, new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                port));
+    }
+
+    /**
+     * Overloaded constructor to bind the server to an address, i.e.
+     * new InetSocketAddress(port) to listen on every address.
+     *
+     * @param service SubscriptionService the requests are answered from.
+     * @param address InetSocketAddress to listen on.
+     * @throws IOException if the address can not be bound.
+     */
+    public SubscriptionServer(SubscriptionService service,
+            InetSocketAddress address) throws IOException {
+        this.service = service;
+        this.server = HttpServer.create(address, 0);
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/subscriptions", this::subscriptions);
+        server.createContext("/search", this::search);
+        server.createContext("/summary", this::summary);
+        server.createContext("/metrics", this::metrics);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server, waiting up to a second for requests being handled to
+     * finish.
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Creates the executor each request is handled on, a virtual thread per
+     * request if the JDK has them. The method is found by reflection so the
+     * program still runs on a JDK without virtual threads.
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod(
+                    "newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch(ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "subscription-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void subscriptions(HttpExchange exchange) throws IOException {
+
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        try {
+            if(path.equals("/subscriptions") || path.equals(
+                    "/subscriptions/")) {
+                if(!method.equals("POST")) {
+                    sendError(exchange, 405, "Use POST to create a "
+                            + "subscription");
+                    return;
+                }
+                Map<String, String> order = Json.parseObject(readBody(
+                        exchange));
+                long id = service.create(field(order, "customer"),
+                        field(order, "package"), field(order, "duration"),
+                        order.containsKey("discountCode")
+                                && order.get("discountCode") != null
+                                ? order.get("discountCode") : "-",
+                        field(order, "payment"));
+                StringBuilder json = new StringBuilder();
+                Json.appendSubscription(json, id, service.get(id));
+                send(exchange, 201, json);
+                return;
+            }
+            if(!method.equals("GET")) {
+                sendError(exchange, 405, "Use GET to get a subscription");
+                return;
+            }
+            long id;
+            try {
+                id = Long.parseLong(path.substring(path.lastIndexOf('/')
+                        + 1));
+            } catch(NumberFormatException e) {
+                sendError(exchange, 404, "No subscription " + path);
+                return;
+            }
+            Subscription sub = service.get(id);
+            if(sub == null) {
+                sendError(exchange, 404, "No subscription " + id);
+                return;
+            }
+            StringBuilder json = new StringBuilder();
+            Json.appendSubscription(json, id, sub);
+            send(exchange, 200, json);
+        } catch(IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch(IOException e) {
+            sendError(exchange, 500, "Error writing new subscription");
+        }
+    }
+
+    private void search(HttpExchange exchange) throws IOException {
+
+        if(!exchange.getRequestMethod().equals("GET")) {
+            sendError(exchange, 405, "Use GET to search");
+            return;
+        }
+        Map<String, String> query;
+        try {
+            query = query(exchange);
+        } catch(IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+            return;
+        }
+        String customer = query.get("customer");
+        if(customer == null || customer.trim().isEmpty()) {
+            sendError(exchange, 400, "customer must be given");
+            return;
+        }
+        int limit;
+        try {
+            limit = Integer.parseInt(query.getOrDefault("limit",
+                    String.valueOf(DEFAULT_LIMIT)));
+            if(limit < 0) {
+                throw new NumberFormatException();
+            }
+        } catch(NumberFormatException e) {
+            sendError(exchange, 400, "Invalid limit");
+            return;
+        }
+        long[] ids = service.search(customer.trim());
+        StringBuilder json = new StringBuilder();
+        json.append("{\"count\":").append(ids.length).append(
+                ",\"subscriptions\":[");
+        int shown = 0;
+        for(long id: ids) {
+            if(shown == limit) {
+                break;
+            }
+            Subscription sub = service.get(id);
+            if(sub != null) {
+                if(shown++ > 0) {
+                    json.append(',');
+                }
+                Json.appendSubscription(json, id, sub);
+            }
+        }
+        json.append("]}");
+        send(exchange, 200, json);
+    }
+
+    private void summary(HttpExchange exchange) throws IOException {
+
+        if(!exchange.getRequestMethod().equals("GET")) {
+            sendError(exchange, 405, "Use GET for summaries");
+            return;
+        }
+        String path = exchange.getRequestURI().getPath();
+        SummaryReport report;
+        if(path.equals("/summary") || path.equals("/summary/")) {
+            report = SummaryReport.overall(service.summarize());
+        } else if(path.equals("/summary/month")) {
+            Map<String, String> query;
+            try {
+                query = query(exchange);
+            } catch(IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+                return;
+            }
+            int monthIndex = monthIndex(query.get("month"));
+            if(monthIndex < 0) {
+                sendError(exchange, 400, "month must be a short month name, "
+                        + "i.e. Jul");
+                return;
+            }
+            int year;
+            try {
+                year = Integer.parseInt(query.getOrDefault("year", "0"));
+            } catch(NumberFormatException e) {
+                year = -1;
+            }
+            if(year < 0) {
+                sendError(exchange, 400, "Invalid year");
+                return;
+            }
+            report = SummaryReport.month(service.summarize(), year,
+                    monthIndex);
+        } else {
+            sendError(exchange, 404, "No summary " + path);
+            return;
+        }
+        StringBuilder json = new StringBuilder();
+        report.appendJson(json);
+        send(exchange, 200, json);
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+
+        if(!exchange.getRequestMethod().equals("GET")) {
+            sendError(exchange, 405, "Use GET for metrics");
+            return;
+        }
+        StringBuilder json = new StringBuilder();
+        Metrics.appendJson(json);
+        send(exchange, 200, json);
+    }
+
+    private static int monthIndex(String month) {
+        if(month != null) {
+            for(int i = 0; i < EpochDays.SHORT_MONTHS.length; i++) {
+                if(EpochDays.SHORT_MONTHS[i].equalsIgnoreCase(month.trim())) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static String field(Map<String, String> values, String name) {
+        String value = values.get(name);
+        if(value == null) {
+            throw new IllegalArgumentException(name + " must be given");
+        }
+        return value;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        try(InputStream in = exchange.getRequestBody()) {
+            int read;
+            while((read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+                if(body.size() > MAX_BODY) {
+                    throw new IllegalArgumentException("Request too large");
+                }
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> query(HttpExchange exchange)
+            throws UnsupportedEncodingException {
+        Map<String, String> values = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if(query == null) {
+            return values;
+        }
+        for(String pair: query.split("&")) {
+            int equals = pair.indexOf('=');
+            if(equals > 0) {
+                try {
+                    values.put(URLDecoder.decode(pair.substring(0, equals),
+                            "UTF-8"), URLDecoder.decode(pair.substring(
+                                    equals + 1), "UTF-8"));
+                } catch(IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Invalid query "
+                            + pair);
+                }
+            }
+        }
+        return values;
+    }
+
+    private static void sendError(HttpExchange exchange, int status,
+            String message) throws IOException {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        Json.appendString(json, message);
+        json.append('}');
+        send(exchange, status, json);
+    }
+
+    private static void send(HttpExchange exchange, int status,
+            CharSequence json) throws IOException {
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type",
+                "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try(OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
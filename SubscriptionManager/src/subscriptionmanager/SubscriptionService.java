@@ -0,0 +1,315 @@
+
+package subscriptionmanager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The SubscriptionService class creates, gets, searches and summarises
+ * subscriptions for any number of threads at once, without the console, so
+ * subscriptions can be taken from several sources at the same time.
+ * The subscriptions are split between a number of stripes by the customer
+ * name, each stripe has its own SubscriptionStore, SummaryCube and
+ * CustomerIndex guarded by its own read write lock. A new subscription only
+ * locks the stripe of its customer, so subscriptions for different customers
+ * are created in parallel, and any number of searches and summaries can read a
+ * stripe at once. A summary or search reads each stripe in turn and combines
+ * the results, so it never holds more than one lock. The stripes share the
+ * budget of a SearchCache between their indexes, a new subscription only
+ * removes the cached searches its customer name matches. As a stripe holds
+ * only its share of the rows found by a search, each stripe may cache a
+ * result as large as the same share of the whole budget as a single cache
+ * would, so a broad search is cached as it is by one CustomerIndex.
+ * <p>
+ * New subscriptions are validated and priced as a SubscriptionOrder, appended
+ * to the subscriptions file through the SubscriptionLog and only added to the
+ * service once the log has written them, so every subscription the service
+ * returns is in the file. Each subscription has a long id holding its stripe
+ * and its row in the stripe.
+ *
+ * @see SubscriptionOrder
+ * @see SubscriptionLog
+ */
+public class SubscriptionService {
+
+    private static final int DEFAULT_STRIPES = 16;
+    private static final ExecutorService ADDERS =
+            Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "subscription-add");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final Stripe[] stripes;
+    private final SubscriptionLog log;
+
+    /**
+     * The constructor reads the subscriptions already in the file, if it
+     * exists, and appends new subscriptions to it.
+     *
+     * @param file File of subscriptions, i.e. subscriptions.txt.
+     * @throws IOException if the file can not be read or opened.
+     */
+    public SubscriptionService(File file) throws IOException {
+        this(file, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Overloaded constructor to set the number of stripes.
+     *
+     * @param file File of subscriptions, i.e. subscriptions.txt.
+     * @param stripes int number of stripes, rounded up to a power of two.
+     * @throws IOException if the file can not be read or opened.
+     */
+    public SubscriptionService(File file, int stripes) throws IOException {
+
+        int count = Integer.highestOneBit(Math.max(1, stripes) * 2 - 1);
+        int maxEntryPercent = (int) Math.min(100,
+                (long) SearchCache.DEFAULT_MAX_ENTRY_PERCENT * count);
+        this.stripes = new Stripe[count];
+        for(int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe(SearchCache.DEFAULT_BUDGET / count,
+                    maxEntryPercent);
+        }
+        long start = Metrics.start();
+        if(file.exists()) {
+            try(InputStream in = new FileInputStream(file)) {
+                new SubscriptionParser().parse(in,
+                        new SubscriptionParser.RowHandler() {
+                    @Override
+                    public void row(SubscriptionParser.ParsedRow row) {
+                        stripeOf(row.getCustomer()).store.add(row);
+                    }
+
+                    @Override
+                    public void malformed(long line, int column,
+                            String reason) {
+                        System.out.println("\nSkipping line " + line
+                                + ", column " + column + ": " + reason + ".");
+                    }
+                });
+            }
+            for(Stripe stripe: this.stripes) {
+                stripe.update();
+            }
+        }
+        int loaded = 0;
+        for(Stripe stripe: this.stripes) {
+            loaded += stripe.store.size();
+            Metrics.track(stripe.store);
+        }
+        Metrics.recordLoad(start, loaded);
+        this.log = SubscriptionLog.forFile(file);
+    }
+
+    /**
+     * Creates a subscription from the fields of an order, dated today.
+     * The order is validated on the calling thread and the returned future
+     * completes once the subscription is written and added. The subscription
+     * is added to its stripe on a thread of the service rather than the
+     * writer thread of the log, so the log is never held up waiting for the
+     * lock of a stripe being searched or summarised, and subscriptions of
+     * different customers written in the same batch are added in parallel.
+     *
+     * @param customer String customer name, i.e. J Smith.
+     * @param packageType String package type, i.e. G or Gold.
+     * @param subLength String duration in months.
+     * @param discountCode String discount code, blank or '-' for no code.
+     * @param paymentType String payment type, i.e. O or One-off.
+     * @return CompletableFuture of the id of the new subscription.
+     * @throws IllegalArgumentException if any field is invalid.
+     * @see SubscriptionOrder#parse
+     */
+    public CompletableFuture<Long> createAsync(String customer,
+            String packageType, String subLength, String discountCode,
+            String paymentType) {
+
+        LocalDate today = LocalDate.now();
+        SubscriptionOrder order = SubscriptionOrder.parse(customer,
+                packageType, subLength, discountCode, paymentType, today);
+        int epochDay = (int) today.toEpochDay();
+        return log.append(order.toRecord(EpochDays.format(epochDay)))
+                .thenApplyAsync(written -> add(order, epochDay), ADDERS);
+    }
+
+    /**
+     * Creates a subscription from the fields of an order, dated today, and
+     * waits until it is written.
+     *
+     * @param customer String customer name, i.e. J Smith.
+     * @param packageType String package type, i.e. G or Gold.
+     * @param subLength String duration in months.
+     * @param discountCode String discount code, blank or '-' for no code.
+     * @param paymentType String payment type, i.e. O or One-off.
+     * @return long id of the new subscription.
+     * @throws IllegalArgumentException if any field is invalid.
+     * @throws IOException if the subscription can not be written.
+     */
+    public long create(String customer, String packageType, String subLength,
+            String discountCode, String paymentType) throws IOException {
+        try {
+            return createAsync(customer, packageType, subLength, discountCode,
+                    paymentType).join();
+        } catch(CompletionException e) {
+            throw new IOException("Error writing new subscription",
+                    e.getCause());
+        }
+    }
+
+    /**
+     * Gets a subscription by its id.
+     *
+     * @param id long id returned when the subscription was created or found.
+     * @return Subscription with the id, or null if there is no such id.
+     */
+    public Subscription get(long id) {
+        int stripeIndex = (int) (id & (stripes.length - 1));
+        long row = id >>> Integer.numberOfTrailingZeros(stripes.length);
+        if(id < 0 || row > Integer.MAX_VALUE) {
+            return null;
+        }
+        Stripe stripe = stripes[stripeIndex];
+        stripe.lock.readLock().lock();
+        try {
+            return row < stripe.store.size() ? stripe.store.get((int) row)
+                    : null;
+        } finally {
+            stripe.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the ids of the subscriptions of every customer whose name contains
+     * the search term, ignoring case.
+     *
+     * @param term String part of a customer name.
+     * @return long[] of the matching ids, grouped by stripe.
+     */
+    public long[] search(String term) {
+        List<long[]> found = new ArrayList<>();
+        int total = 0;
+        for(int s = 0; s < stripes.length; s++) {
+            Stripe stripe = stripes[s];
+            int[] rows;
+            stripe.lock.readLock().lock();
+            try {
+                rows = stripe.index.search(term);
+            } finally {
+                stripe.lock.readLock().unlock();
+            }
+            long[] ids = new long[rows.length];
+            for(int i = 0; i < rows.length; i++) {
+                ids[i] = id(s, rows[i]);
+            }
+            found.add(ids);
+            total += ids.length;
+        }
+        long[] matches = new long[total];
+        int pos = 0;
+        for(long[] ids: found) {
+            System.arraycopy(ids, 0, matches, pos, ids.length);
+            pos += ids.length;
+        }
+        return matches;
+    }
+
+    /**
+     * Summarises every subscription, the cube can be queried for the same
+     * figures as the Summary and MonthSummary classes.
+     *
+     * @return SummaryCube of a copy of the counts and costs.
+     */
+    public SummaryCube summarize() {
+        SummaryCube summary = new SummaryCube();
+        for(Stripe stripe: stripes) {
+            stripe.lock.readLock().lock();
+            try {
+                summary.merge(stripe.cube);
+            } finally {
+                stripe.lock.readLock().unlock();
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Gets the number of subscriptions in the service.
+     *
+     * @return int number of subscriptions.
+     */
+    public int size() {
+        int size = 0;
+        for(Stripe stripe: stripes) {
+            stripe.lock.readLock().lock();
+            try {
+                size += stripe.store.size();
+            } finally {
+                stripe.lock.readLock().unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Adds a written order to the stripe of its customer.
+     */
+    private long add(SubscriptionOrder order, int epochDay) {
+        int s = stripeIndex(order.getCustomer());
+        Stripe stripe = stripes[s];
+        stripe.lock.writeLock().lock();
+        try {
+            int row = stripe.store.add(order.toSubscription(
+                    EpochDays.toDate(epochDay)));
+            stripe.update();
+            return id(s, row);
+        } finally {
+            stripe.lock.writeLock().unlock();
+        }
+    }
+
+    private long id(int stripe, int row) {
+        return ((long) row << Integer.numberOfTrailingZeros(stripes.length))
+                | stripe;
+    }
+
+    private int stripeIndex(String customer) {
+        int hash = customer.toLowerCase().hashCode();
+        return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+    }
+
+    private Stripe stripeOf(String customer) {
+        return stripes[stripeIndex(customer)];
+    }
+
+    /**
+     * The subscriptions of one stripe, with the summary and index kept up to
+     * date with the store.
+     */
+    private static final class Stripe {
+
+        private final ReentrantReadWriteLock lock =
+                new ReentrantReadWriteLock();
+        private final SubscriptionStore store = new SubscriptionStore();
+        private final SummaryCube cube = new SummaryCube();
+        private final CustomerIndex index;
+
+        private Stripe(long cacheBudget, int maxEntryPercent) {
+            index = new CustomerIndex(cacheBudget, maxEntryPercent);
+        }
+
+        private void update() {
+            cube.update(store);
+            index.update(store);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+
+package subscriptionmanager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The SubscriptionSnapshot class saves a SubscriptionStore to a binary file
+ * and loads it back, so a subscription file only has to be parsed once.
+ * The snapshot of a file is saved next to it with the .snap extension, i.e.
+ * current.txt.snap, and records the size and last modified time of the file
+ * it was made from. If the file has changed since, the snapshot is out of date
+ * and the file is parsed again.
+ * <p>
+ * Version 1 of the format is little endian and laid out as:
+ * <pre>
+ * header     int magic, int version, long source size, long source modified,
+ *            int rows, int customers, int codes
+ * customers  int byte length, int[customers + 1] offsets, byte[] UTF-8 names
+ * codes      int byte length, int[codes + 1] offsets, byte[] UTF-8 codes
+ * columns    int[rows] epoch days, byte[rows] packages, byte[rows] durations,
+ *            byte[rows] payments, int[rows] costs, int[rows] customer ids,
+ *            int[rows] code ids
+ * </pre>
+ * Each column is loaded by memory mapping its region of the file and copying
+ * it straight into the array of the store.
+ *
+ * @see SubscriptionStore
+ * @see Summary#loadFile(java.io.File, java.io.PrintStream)
+ */
+public class SubscriptionSnapshot {
+
+    public static final String EXTENSION = ".snap";
+
+    private static final int MAGIC = 0x53554253;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 36;
+    private static final int WINDOW = 1 << 26;
+
+    private SubscriptionSnapshot() {
+    }
+
+    /**
+     * Gets the snapshot file for a subscription file.
+     *
+     * @param source File of subscriptions in the tabbed format.
+     * @return File the snapshot is saved to.
+     */
+    public static File snapshotFile(File source) {
+        return new File(source.getPath() + EXTENSION);
+    }
+
+    /**
+     * Checks if the snapshot of a file exists and was made from the current
+     * contents of the file.
+     *
+     * @param source File of subscriptions in the tabbed format.
+     * @return boolean true if the snapshot can be loaded in place of the file.
+     */
+    public static boolean isCurrent(File source) {
+
+        File snapshot = snapshotFile(source);
+        if(!snapshot.isFile() || !source.isFile()) {
+            return false;
+        }
+        try(InputStream in = new FileInputStream(snapshot)) {
+            byte[] header = new byte[HEADER_SIZE];
+            if(in.read(header) != HEADER_SIZE) {
+                return false;
+            }
+            ByteBuffer buf = ByteBuffer.wrap(header)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            return buf.getInt() == MAGIC && buf.getInt() == VERSION
+                    && buf.getLong() == source.length()
+                    && buf.getLong() == source.lastModified();
+        } catch(IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parses a subscription file and saves its snapshot.
+     *
+     * @param source File of subscriptions in the tabbed format.
+     * @param errors RowHandler receiving any malformed rows.
+     * @return SubscriptionStore of the subscriptions in the file.
+     * @throws IOException if the file can not be read or the snapshot written.
+     */
+    public static SubscriptionStore export(File source,
+            SubscriptionParser.RowHandler errors) throws IOException {
+
+        long size = source.length();
+        long modified = source.lastModified();
+        SubscriptionStore store = new SubscriptionStore();
+        new MappedSubscriptionLoader().load(source, store, errors);
+        write(store, size, modified, snapshotFile(source));
+        return store;
+    }
+
+    /**
+     * Writes a store to a snapshot file.
+     *
+     * @param store SubscriptionStore to write.
+     * @param sourceSize long size of the file the store was read from.
+     * @param sourceModified long last modified time of the file the store was
+     *     read from.
+     * @param snapshot File to write.
+     * @throws IOException if the snapshot can not be written.
+     */
+    public static void write(SubscriptionStore store, long sourceSize,
+            long sourceModified, File snapshot) throws IOException {
+
+        File temp = new File(snapshot.getPath() + ".tmp");
+        int rows = store.size();
+        StringDictionary names = store.getCustomerNames();
+        StringDictionary codes = store.getDiscountCodes();
+
+        try(FileChannel channel = FileChannel.open(temp.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            buf.putInt(MAGIC).putInt(VERSION).putLong(sourceSize)
+                    .putLong(sourceModified).putInt(rows)
+                    .putInt(names.size()).putInt(codes.size());
+
+            writeDictionary(channel, buf, names);
+            writeDictionary(channel, buf, codes);
+            writeInts(channel, buf, store.getEpochDays(), rows);
+            writeBytes(channel, buf, store.getPackages(), 0, rows);
+            writeBytes(channel, buf, store.getDurations(), 0, rows);
+            writeBytes(channel, buf, store.getPayments(), 0, rows);
+            writeInts(channel, buf, store.getCosts(), rows);
+            writeInts(channel, buf, store.getCustomerIds(), rows);
+            writeInts(channel, buf, store.getCodeIds(), rows);
+            flush(channel, buf);
+        }
+        if(snapshot.exists() && !snapshot.delete()
+                || !temp.renameTo(snapshot)) {
+            temp.delete();
+            throw new IOException("Unable to replace " + snapshot);
+        }
+    }
+
+    /**
+     * Loads a snapshot into a new store.
+     *
+     * @param snapshot File written by write().
+     * @return SubscriptionStore of the subscriptions in the snapshot.
+     * @throws IOException if the snapshot can not be read or is not a valid
+     *     snapshot.
+     */
+    public static SubscriptionStore load(File snapshot) throws IOException {
+
+        try(FileChannel channel = FileChannel.open(snapshot.toPath(),
+                StandardOpenOption.READ)) {
+
+            ByteBuffer header = map(channel, 0, HEADER_SIZE);
+            if(header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a subscription snapshot: "
+                        + snapshot);
+            }
+            header.getLong();
+            header.getLong();
+            int rows = header.getInt();
+            int nameCount = header.getInt();
+            int codeCount = header.getInt();
+
+            long[] pos = {HEADER_SIZE};
+            StringDictionary names = readDictionary(channel, pos, nameCount);
+            StringDictionary codes = readDictionary(channel, pos, codeCount);
+
+            int capacity = Math.max(rows, 16);
+            int[] days = readInts(channel, pos, rows, capacity);
+            byte[] packages = readBytes(channel, pos, rows, capacity);
+            byte[] durations = readBytes(channel, pos, rows, capacity);
+            byte[] payments = readBytes(channel, pos, rows, capacity);
+            int[] costs = readInts(channel, pos, rows, capacity);
+            int[] customers = readInts(channel, pos, rows, capacity);
+            int[] codeIds = readInts(channel, pos, rows, capacity);
+
+            return new SubscriptionStore(rows, days, packages, durations,
+                    payments, costs, customers, codeIds, names, codes);
+        }
+    }
+
+    private static void writeDictionary(FileChannel channel, ByteBuffer buf,
+            StringDictionary dictionary) throws IOException {
+        int[] offsets = dictionary.getOffsets();
+        int length = offsets[dictionary.size()];
+        if(buf.remaining() < 4) {
+            flush(channel, buf);
+        }
+        buf.putInt(length);
+        writeInts(channel, buf, offsets, dictionary.size() + 1);
+        writeBytes(channel, buf, dictionary.getBytes(), 0, length);
+    }
+
+    private static void writeInts(FileChannel channel, ByteBuffer buf,
+            int[] values, int count) throws IOException {
+        int done = 0;
+        while(done < count) {
+            if(buf.remaining() < 4) {
+                flush(channel, buf);
+            }
+            int batch = Math.min(count - done, buf.remaining() / 4);
+            buf.asIntBuffer().put(values, done, batch);
+            buf.position(buf.position() + batch * 4);
+            done += batch;
+        }
+    }
+
+    private static void writeBytes(FileChannel channel, ByteBuffer buf,
+            byte[] values, int from, int count) throws IOException {
+        int done = 0;
+        while(done < count) {
+            if(!buf.hasRemaining()) {
+                flush(channel, buf);
+            }
+            int batch = Math.min(count - done, buf.remaining());
+            buf.put(values, from + done, batch);
+            done += batch;
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buf)
+            throws IOException {
+        buf.flip();
+        while(buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        buf.clear();
+    }
+
+    private static StringDictionary readDictionary(FileChannel channel,
+            long[] pos, int count) throws IOException {
+        int length = map(channel, pos[0], 4).getInt();
+        pos[0] += 4;
+        int[] offsets = readInts(channel, pos, count + 1, count + 1);
+        byte[] bytes = readBytes(channel, pos, length, length);
+        return new StringDictionary(bytes, offsets, count);
+    }
+
+    private static int[] readInts(FileChannel channel, long[] pos, int count,
+            int capacity) throws IOException {
+        int[] values = new int[capacity];
+        int done = 0;
+        while(done < count) {
+            int batch = Math.min(count - done, WINDOW / 4);
+            map(channel, pos[0], batch * 4L).asIntBuffer()
+                    .get(values, done, batch);
+            pos[0] += batch * 4L;
+            done += batch;
+        }
+        return values;
+    }
+
+    private static byte[] readBytes(FileChannel channel, long[] pos,
+            int count, int capacity) throws IOException {
+        byte[] values = new byte[capacity];
+        int done = 0;
+        while(done < count) {
+            int batch = Math.min(count - done, WINDOW);
+            map(channel, pos[0], batch).get(values, done, batch);
+            pos[0] += batch;
+            done += batch;
+        }
+        return values;
+    }
+
+    private static ByteBuffer map(FileChannel channel, long pos, long length)
+            throws IOException {
+        if(pos + length > channel.size()) {
+            throw new IOException("Snapshot is truncated");
+        }
+        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,
+                pos, length);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        return buf;
+    }
+}
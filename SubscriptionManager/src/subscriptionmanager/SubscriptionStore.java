@@ -0,0 +1,275 @@
+
+package subscriptionmanager;
+
+import java.util.Arrays;
+
+/**
+ * The SubscriptionStore class holds the subscriptions read from a file in
+ * columns of primitives rather than as a list of Subscription objects.
+ * Each subscription is a row, identified by its index in the order it was
+ * added. The date is stored as an epoch day, the package type, duration and
+ * payment type as the byte ordinal of their enum constant, the total cost in
+ * pence, and the customer name and discount code as ids in a StringDictionary.
+ * A row takes 19 bytes, compared with several hundred for a Subscription, so
+ * tens of millions of subscriptions can be held in memory and summarised by
+ * scanning the arrays.
+ * <p>
+ * The column arrays are returned directly by the column getters for scanning,
+ * only the values below size() are valid. A Subscription is only created for a
+ * row when it is needed for display, by get().
+ * <p>
+ * The store is not thread safe, the MappedSubscriptionLoader fills a store for
+ * each chunk and then joins them with addAll().
+ *
+ * @see StringDictionary
+ * @see Summary
+ */
+public class SubscriptionStore {
+
+    private static final PackageType[] PACKAGES = PackageType.values();
+    private static final Duration[] DURATIONS = Duration.values();
+    private static final PaymentType[] PAYMENTS = PaymentType.values();
+
+    private final StringDictionary customerNames;
+    private final StringDictionary discountCodes;
+
+    private int size;
+    private int[] epochDays;
+    private byte[] packages;
+    private byte[] durations;
+    private byte[] payments;
+    private int[] costs;
+    private int[] customers;
+    private int[] codes;
+
+    /**
+     * The default constructor creates an empty store.
+     */
+    public SubscriptionStore() {
+        this(16);
+    }
+
+    /**
+     * Overloaded constructor creating an empty store with room for a given
+     * number of rows, used when the number of rows can be estimated from the
+     * size of the file.
+     *
+     * @param capacity int number of rows to allocate.
+     */
+    public SubscriptionStore(int capacity) {
+        capacity = Math.max(capacity, 16);
+        customerNames = new StringDictionary();
+        discountCodes = new StringDictionary();
+        epochDays = new int[capacity];
+        packages = new byte[capacity];
+        durations = new byte[capacity];
+        payments = new byte[capacity];
+        costs = new int[capacity];
+        customers = new int[capacity];
+        codes = new int[capacity];
+    }
+
+    /**
+     * Constructor used by the SubscriptionSnapshot to create a store from the
+     * columns it loaded, the arrays are used by the store without copying.
+     *
+     * @see SubscriptionSnapshot
+     */
+    SubscriptionStore(int size, int[] epochDays, byte[] packages,
+            byte[] durations, byte[] payments, int[] costs, int[] customers,
+            int[] codes, StringDictionary customerNames,
+            StringDictionary discountCodes) {
+        this.size = size;
+        this.epochDays = epochDays;
+        this.packages = packages;
+        this.durations = durations;
+        this.payments = payments;
+        this.costs = costs;
+        this.customers = customers;
+        this.codes = codes;
+        this.customerNames = customerNames;
+        this.discountCodes = discountCodes;
+        ensureCapacity(16);
+    }
+
+    /**
+     * Adds a row read by the SubscriptionParser, the customer name and
+     * discount code are added to the dictionaries straight from the bytes of
+     * the row.
+     *
+     * @param row ParsedRow to add.
+     * @return int index of the new row.
+     */
+    public int add(SubscriptionParser.ParsedRow row) {
+        int index = next();
+        epochDays[index] = row.getEpochDay();
+        packages[index] = (byte) row.getPackageType().ordinal();
+        durations[index] = (byte) row.getDuration().ordinal();
+        payments[index] = (byte) row.getPaymentType().ordinal();
+        costs[index] = row.getTotalCost();
+        customers[index] = customerNames.add(row.getBuffer(),
+                row.getCustomerStart(), row.getCustomerLength());
+        codes[index] = discountCodes.add(row.getBuffer(),
+                row.getCodeStart(), row.getCodeLength());
+        return index;
+    }
+
+    /**
+     * Adds a Subscription, i.e. a newly created subscription.
+     *
+     * @param sub Subscription to add.
+     * @return int index of the new row.
+     */
+    public int add(Subscription sub) {
+        int index = next();
+        epochDays[index] = EpochDays.fromDate(sub.getSubDate());
+        packages[index] = (byte) sub.getPackageType().ordinal();
+        durations[index] = (byte) sub.getSubLength().ordinal();
+        payments[index] = (byte) sub.getPaymentType().ordinal();
+        costs[index] = sub.getTotalCost();
+        customers[index] = customerNames.add(sub.getCustomer());
+        codes[index] = discountCodes.add(sub.getDiscountCode());
+        return index;
+    }
+
+    /**
+     * Adds all of the rows of another store after the rows of this store,
+     * the dictionary ids of the other store are mapped to the ids of this
+     * store.
+     *
+     * @param other SubscriptionStore to add.
+     */
+    public void addAll(SubscriptionStore other) {
+
+        int[] customerIds = remap(other.customerNames, customerNames);
+        int[] codeIds = remap(other.discountCodes, discountCodes);
+
+        ensureCapacity(size + other.size);
+        int count = other.size;
+        System.arraycopy(other.epochDays, 0, epochDays, size, count);
+        System.arraycopy(other.packages, 0, packages, size, count);
+        System.arraycopy(other.durations, 0, durations, size, count);
+        System.arraycopy(other.payments, 0, payments, size, count);
+        System.arraycopy(other.costs, 0, costs, size, count);
+        for(int i = 0; i < count; i++) {
+            customers[size + i] = customerIds[other.customers[i]];
+            codes[size + i] = codeIds[other.codes[i]];
+        }
+        size += count;
+    }
+
+    /**
+     * Creates a Subscription for a row, used to display the row to the user.
+     *
+     * @param index int index of the row.
+     * @return Subscription with the values of the row.
+     */
+    public Subscription get(int index) {
+        return new Subscription(EpochDays.toDate(epochDays[index]),
+                getPackageType(index), getDuration(index),
+                getDiscountCode(index), getPaymentType(index), costs[index],
+                getCustomer(index));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getEpochDay(int index) {
+        return epochDays[index];
+    }
+
+    public PackageType getPackageType(int index) {
+        return PACKAGES[packages[index]];
+    }
+
+    public Duration getDuration(int index) {
+        return DURATIONS[durations[index]];
+    }
+
+    public PaymentType getPaymentType(int index) {
+        return PAYMENTS[payments[index]];
+    }
+
+    public int getTotalCost(int index) {
+        return costs[index];
+    }
+
+    public String getCustomer(int index) {
+        return customerNames.get(customers[index]);
+    }
+
+    public String getDiscountCode(int index) {
+        return discountCodes.get(codes[index]);
+    }
+
+    public int[] getEpochDays() {
+        return epochDays;
+    }
+
+    public byte[] getPackages() {
+        return packages;
+    }
+
+    public byte[] getDurations() {
+        return durations;
+    }
+
+    public byte[] getPayments() {
+        return payments;
+    }
+
+    public int[] getCosts() {
+        return costs;
+    }
+
+    public int[] getCustomerIds() {
+        return customers;
+    }
+
+    public int[] getCodeIds() {
+        return codes;
+    }
+
+    public StringDictionary getCustomerNames() {
+        return customerNames;
+    }
+
+    public StringDictionary getDiscountCodes() {
+        return discountCodes;
+    }
+
+    /**
+     * Makes room for a number of rows, so the arrays are only copied once
+     * when the number of rows is known in advance.
+     *
+     * @param capacity int number of rows.
+     */
+    public void ensureCapacity(int capacity) {
+        if(capacity > epochDays.length) {
+            epochDays = Arrays.copyOf(epochDays, capacity);
+            packages = Arrays.copyOf(packages, capacity);
+            durations = Arrays.copyOf(durations, capacity);
+            payments = Arrays.copyOf(payments, capacity);
+            costs = Arrays.copyOf(costs, capacity);
+            customers = Arrays.copyOf(customers, capacity);
+            codes = Arrays.copyOf(codes, capacity);
+        }
+    }
+
+    private int next() {
+        if(size == epochDays.length) {
+            ensureCapacity((int) Math.min(Integer.MAX_VALUE - 8,
+                    size + (long) (size >> 1)));
+        }
+        return size++;
+    }
+
+    private static int[] remap(StringDictionary from, StringDictionary to) {
+        int[] ids = new int[from.size()];
+        for(int id = 0; id < ids.length; id++) {
+            ids[id] = to.add(from.get(id));
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,288 @@
+
+package subscriptionmanager;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The SubscriptionTailer class follows a subscriptions file as lines are
+ * appended to it, i.e. subscriptions.txt as subscriptions are created, and
+ * keeps a SummaryCube of every subscription in it up to date, so the summary
+ * and month figures are current without reading the file again.
+ * <p>
+ * The tailer remembers the byte offset it has read the file up to. Each poll
+ * reads only the bytes after the offset, parses the complete lines among them
+ * and adds each row straight to the cube, a line still being written is left
+ * until its line separator has been written. No rows are kept, only the
+ * totals of the cube and a count of the rows, so a file which grows all day
+ * is followed in the same memory as a small one. If the
+ * file becomes shorter than the offset, or is replaced by another file, it is
+ * read again from the start.
+ * <p>
+ * Once started the tailer polls the file on a daemon thread each time a
+ * WatchService reports the file was created or changed, and at least once in
+ * each interval in case a change is not reported, and runs a listener after
+ * any poll which added rows. The figures can be read by any thread while the
+ * file is being followed.
+ *
+ * @see SummaryCube
+ * @see SummaryReport
+ */
+public class SubscriptionTailer implements Closeable {
+
+    private static final int BLOCK_SIZE = 1 << 22;
+    private static final long DEFAULT_INTERVAL = 5000;
+
+    private final File file;
+    private final SubscriptionParser parser = new SubscriptionParser();
+    private final SummaryCube cube = new SummaryCube();
+    private long rows;
+    private long offset;
+    private long lines;
+    private long malformed;
+    private Object fileKey;
+    private volatile Runnable listener;
+    private volatile Thread follower;
+
+    /**
+     * The constructor takes the file to follow, nothing is read until the
+     * file is polled or the tailer is started.
+     *
+     * @param file File of subscriptions to follow.
+     */
+    public SubscriptionTailer(File file) {
+        this.file = file.getAbsoluteFile();
+    }
+
+    /**
+     * Sets the listener run on the following thread after each poll which
+     * added rows.
+     *
+     * @param listener Runnable to run, or null for none.
+     */
+    public void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Reads any complete lines appended to the file since the last poll and
+     * adds them to the summary. A file which does not exist yet has no rows.
+     *
+     * @return long number of subscriptions added.
+     * @throws IOException if the file can not be read.
+     */
+    public synchronized long poll() throws IOException {
+
+        Path path = file.toPath();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch(NoSuchFileException e) {
+            return 0;
+        }
+        Object key = attributes.fileKey();
+        if(attributes.size() < offset || key != null && fileKey != null
+                && !key.equals(fileKey)) {
+            restart();
+        }
+        fileKey = key;
+        if(attributes.size() == offset) {
+            return 0;
+        }
+
+        long before = rows;
+        SubscriptionParser.RowHandler handler =
+                new SubscriptionParser.RowHandler() {
+            @Override
+            public void row(SubscriptionParser.ParsedRow row) {
+                cube.add(row.getEpochDay(), row.getPackageType().ordinal(),
+                        row.getDuration().ordinal(),
+                        row.getPaymentType().ordinal(), row.getTotalCost());
+                rows++;
+            }
+
+            @Override
+            public void malformed(long line, int column, String reason) {
+                malformed++;
+            }
+        };
+        try(FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(BLOCK_SIZE);
+            while(channel.read(buf, offset + buf.position()) > 0) {
+                int filled = buf.position();
+                int end = filled;
+                while(end > 0 && buf.get(end - 1) != '\n') {
+                    end--;
+                }
+                if(end == 0) {
+                    if(filled < buf.capacity()) {
+                        break;
+                    }
+                    ByteBuffer larger = ByteBuffer.allocate(buf.capacity()
+                            * 2);
+                    buf.flip();
+                    larger.put(buf);
+                    buf = larger;
+                    continue;
+                }
+                lines += parser.parse(buf, 0, end, lines + 1, handler);
+                offset += end;
+                buf.clear();
+            }
+        }
+        return rows - before;
+    }
+
+    /**
+     * Forgets every row read, so the file is read again from the start.
+     */
+    private void restart() {
+        cube.clear();
+        rows = 0;
+        offset = 0;
+        lines = 0;
+        malformed = 0;
+    }
+
+    /**
+     * Starts following the file on a daemon thread, polling it at least every
+     * five seconds.
+     */
+    public void start() {
+        start(DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Overloaded method to set the longest time between polls.
+     *
+     * @param intervalMillis long longest time between polls in milliseconds.
+     */
+    public synchronized void start(long intervalMillis) {
+        if(follower != null) {
+            return;
+        }
+        follower = new Thread(() -> follow(Math.max(1, intervalMillis)),
+                "tailer-" + file.getName());
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+    /**
+     * Stops following the file, the figures read so far are kept.
+     */
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized(this) {
+            thread = follower;
+            follower = null;
+        }
+        if(thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void follow(long intervalMillis) {
+
+        Path name = file.toPath().getFileName();
+        try(WatchService service = FileSystems.getDefault()
+                .newWatchService()) {
+            file.getParentFile().toPath().register(service,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            pollAndNotify();
+            while(!Thread.currentThread().isInterrupted()) {
+                WatchKey key = service.poll(intervalMillis,
+                        TimeUnit.MILLISECONDS);
+                if(key != null) {
+                    for(WatchEvent<?> event: key.pollEvents()) {
+                        if(event.kind() == StandardWatchEventKinds.OVERFLOW
+                                || name.equals(event.context())) {
+                            pollAndNotify();
+                            break;
+                        }
+                    }
+                    key.reset();
+                } else {
+                    pollAndNotify();
+                }
+            }
+        } catch(IOException | ClosedWatchServiceException e) {
+            if(!Thread.currentThread().isInterrupted()) {
+                System.out.println("\nError following " + file + ".");
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void pollAndNotify() {
+        try {
+            Runnable changed = listener;
+            if(poll() > 0 && changed != null) {
+                changed.run();
+            }
+        } catch(IOException e) {
+            if(!Thread.currentThread().isInterrupted()) {
+                System.out.println("\nError reading " + file + ".");
+            }
+        }
+    }
+
+    /**
+     * Gets the figures of every subscription read so far.
+     *
+     * @return SummaryReport of the Summary figures.
+     */
+    public synchronized SummaryReport overall() {
+        return SummaryReport.overall(cube);
+    }
+
+    /**
+     * Gets the figures of a month of the subscriptions read so far.
+     *
+     * @param year int year, or 0 for the month of every year.
+     * @param monthIndex int month of the year from 0 to 11.
+     * @return SummaryReport of the MonthSummary figures.
+     */
+    public synchronized SummaryReport month(int year, int monthIndex) {
+        return SummaryReport.month(cube, year, monthIndex);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public synchronized long getRows() {
+        return rows;
+    }
+
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    public synchronized long getMalformed() {
+        return malformed;
+    }
+}
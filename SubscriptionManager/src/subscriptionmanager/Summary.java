@@ -1,16 +1,13 @@
 
 package subscriptionmanager;
 
-import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
 import java.text.DateFormatSymbols;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.HashMap;
 
 /**
  * The Summary class provides a summary of all the subscriptions contained
@@ -22,13 +19,15 @@ import java.util.HashMap;
  */
 public class Summary {
     
-    protected SimpleDateFormat mft = new SimpleDateFormat("MMM");
+    private static final long MAPPED_FILE_SIZE = 1L << 24;
+    
     protected String[] monthOrder = new DateFormatSymbols().getShortMonths();
 
     protected String filename;
     
-    protected final ArrayList<Subscription> subs = new ArrayList<>();
-    private final HashMap<String, Integer> monthSubs = new HashMap<>();
+    protected SubscriptionStore subs = new SubscriptionStore();
+    protected final SummaryCube cube = new SummaryCube();
+    private final int[] monthSubs = new int[12];
     
     protected int totalSubs;
     private int aveSubs;
@@ -105,39 +104,34 @@ public class Summary {
     }
     
     /**
-     * The readFile() reads the user specified file and creates an instance of
-     * the Subscription class for each line in the file, the subscriptions are
-     * then added to an ArrayList to allow for calculating the metrics used in
+     * The readFile() reads the user specified file and adds each line in the
+     * file to the SummaryCube, to allow for calculating the metrics used in
      * the summaries.
-     * This file reader method is used in the sub-classes MonthSummary and 
-     * SearchSubscription.
+     * The lines are decoded by the SubscriptionParser, any line which can not
+     * be parsed is reported to the user with its line and column and skipped,
+     * the rest of the file is still read. The file is read through the
+     * AggregateCache, so the cube of a file which has not changed since it was
+     * last summarised is loaded from the cache, and only the new lines of a
+     * file which has been appended to are read.
+     * <p>
+     * The file is loaded by loadSubscriptions(), which the sub-class
+     * SearchSubscription overrides to read the subscriptions themselves into
+     * the SubscriptionStore. This file reader method is used in the
+     * sub-classes MonthSummary and SearchSubscription.
      * 
      * @return Returns a boolean, true, if the file exists so the summary
      * metrics can be calculated.
-     * @see Subscription
+     * @see #loadSubscriptions(java.io.File) 
+     * @see SummaryCube
+     * @see SubscriptionParser
+     * @see AggregateCache
      * @see MonthSummary
      * @see SearchSubscription
      */
     protected boolean readFile() {
         
-        File subFile = new File(filename);
-        
-        try(BufferedReader reader = new BufferedReader(
-                new FileReader(subFile))){
-            String current;
-            
-            while((current = reader.readLine()) != null) {
-                                
-                String[] subData = current.split("\t");
-                
-                Subscription sub = new Subscription(subData[0], 
-                        PackageType.valueOf(subData[1]),
-                        Duration.getTerm(Integer.valueOf(subData[2])),
-                        subData[3], PaymentType.valueOf(subData[4]),
-                        Integer.valueOf(subData[5]), subData[6]);
-                
-                subs.add(sub);
-            }
+        try {
+            loadSubscriptions(new File(filename));
         } catch(FileNotFoundException e) {
             System.out.println("\nError, file not found!");
             return false;
@@ -146,66 +140,157 @@ public class Summary {
             System.out.println("\nError reading from file!");
             return false;
         } 
-        catch(ParseException e) {
-            System.out.println("\nError parsing date!");
-            return false;
-        }
         return true;
     }
     
+    /**
+     * Loads the file for readFile(), replacing the cube with the summary of
+     * every subscription in the file from the AggregateCache.
+     * 
+     * @param subFile File of subscriptions.
+     * @throws FileNotFoundException if the file does not exist.
+     * @throws IOException if the file can not be read.
+     */
+    protected void loadSubscriptions(File subFile) throws IOException {
+        
+        SummaryCube aggregates = AggregateCache.load(subFile, System.out);
+        cube.clear();
+        cube.merge(aggregates);
+    }
+    
+    /**
+     * Reads a subscriptions file into a new SubscriptionStore, loading the
+     * snapshot of the file if it is current and otherwise parsing the file and
+     * saving a snapshot of it. This is used by SearchSubscription and by the
+     * BatchMode, which reports the skipped lines to the error stream rather
+     * than with the output.
+     * 
+     * @param subFile File of subscriptions.
+     * @param messages PrintStream the skipped lines and snapshot errors are
+     *     reported to.
+     * @return SubscriptionStore of the subscriptions in the file.
+     * @throws FileNotFoundException if the file does not exist.
+     * @throws IOException if the file can not be read.
+     */
+    public static SubscriptionStore loadFile(File subFile, 
+            PrintStream messages) throws IOException {
+        
+        long start = Metrics.start();
+        PipelineEvents.FileLoad event = new PipelineEvents.FileLoad();
+        event.begin();
+        SubscriptionStore store = readStore(subFile, messages, event);
+        event.file = subFile.getPath();
+        event.bytes = subFile.length();
+        event.rows = store.size();
+        event.commit();
+        if(!event.snapshot) {
+            Metrics.recordLoad(start, store.size());
+        }
+        Metrics.track(store);
+        return store;
+    }
+    
+    /**
+     * Reads the subscriptions of a file for loadFile(), from its snapshot if
+     * the snapshot is current, which is noted on the event.
+     */
+    private static SubscriptionStore readStore(File subFile, 
+            PrintStream messages, PipelineEvents.FileLoad event) 
+            throws IOException {
+        
+        File snapshot = SubscriptionSnapshot.snapshotFile(subFile);
+        if(SubscriptionSnapshot.isCurrent(subFile)) {
+            try {
+                SubscriptionStore store = SubscriptionSnapshot.load(snapshot);
+                event.snapshot = true;
+                return store;
+            } catch(IOException e) {
+                messages.println("\nError loading snapshot, reading file.");
+            }
+        }
+        
+        SubscriptionStore store = new SubscriptionStore();
+        long fileSize = subFile.length();
+        long fileModified = subFile.lastModified();
+        SubscriptionParser.RowHandler handler = 
+                new SubscriptionParser.RowHandler() {
+            @Override
+            public void row(SubscriptionParser.ParsedRow row) {
+                store.add(row);
+            }
+
+            @Override
+            public void malformed(long line, int column, String reason) {
+                messages.println("\nSkipping line " + line + ", column "
+                        + column + ": " + reason + ".");
+            }
+        };
+        
+        if(subFile.length() >= MAPPED_FILE_SIZE) {
+            new MappedSubscriptionLoader().load(subFile, store, handler);
+        } else {
+            try(InputStream reader = new FileInputStream(subFile)) {
+                new SubscriptionParser().parse(reader, handler);
+            }
+        }
+        try {
+            SubscriptionSnapshot.write(store, fileSize, fileModified, 
+                    snapshot);
+        } catch(IOException e) {
+            messages.println("\nUnable to save snapshot of file.");
+        }
+        return store;
+    }
+    
     /**
      * The calculateSummary method calculates the metrics used in the summary
      * of all subscriptions contained in the file provided by the user.
-     * The method makes use of the ArrayList containing instances of
-     * Subscriptions populated in the readFile() method, the relevant getters
-     * are then used to get the required values from each Subscription. 
+     * The metrics are read from the totals of the SummaryCube populated in the
+     * readFile() method by a SummaryReport.
      * <p>
-     * The monthSubs hashmap is populated with the months of the year as keys
-     * and each value is incremented if a subscription was made in that month,
-     * giving the total subscriptions for each month.
+     * The monthSubs array is indexed by the month of the year and holds the
+     * total subscriptions for each month.
+     * 
+     * @see SummaryCube
+     * @see SummaryReport
      */
     protected void calculateSummary() {
-                
-        totalSubs = subs.size();
-
-        for(int i = 0; i < monthOrder.length - 1; i++) {
-            monthSubs.put(monthOrder[i], 0);
-        }
-
-        aveSubs = totalSubs / monthSubs.size();
-
-        double totalCost = 0;
-        double bronze = 0;
-        double silver = 0;
-        double gold = 0;
-
-        int incrementer;
         
-        for(Subscription sub: subs) {
-            if(monthSubs.containsKey(mft.format(sub.getSubDate()))) {
-                incrementer = monthSubs.get(mft.format(sub.getSubDate()));
-                incrementer++;
-                monthSubs.put(mft.format(sub.getSubDate()), incrementer);
-            }
-            totalCost = totalCost + sub.getTotalCost();
-            
-            switch(sub.getPackageType()) {
-                case B:
-                    bronze++;
-                    break;
-                case S:
-                    silver++;
-                    break;
-                case G:
-                    gold++;
-                    break;
+        setFigures(SummaryReport.overall(cube));
+    }
+    
+    /**
+     * Sets the metrics displayed by toString() from the figures of a report.
+     * 
+     * @param report SummaryReport of the subscriptions being summarised.
+     */
+    protected void setFigures(SummaryReport report) {
+        
+        totalSubs = report.getTotalSubs();
+        aveSubs = report.getAveSubs();
+        System.arraycopy(report.getMonthSubs(), 0, monthSubs, 0, 
+                monthSubs.length);
+        aveCost = report.getAveCost();
+        percentBronze = report.getPercentBronze();
+        percentSilver = report.getPercentSilver();
+        percentGold = report.getPercentGold();
+    }
+    
+    /**
+     * Gets the index of a month in the monthOrder array, which is also the
+     * month index of an epoch day.
+     * 
+     * @param month String month in short form i.e Jan.
+     * @return int index of the month from 0 to 11, or -1 if not found.
+     * @see EpochDays#monthIndex(int) 
+     */
+    protected int monthIndex(String month) {
+        for(int i = 0; i < monthOrder.length; i++) {
+            if(monthOrder[i].equals(month)) {
+                return i;
             }
         }
-        percentBronze = Math.round((bronze / totalSubs * 100) * 10) / 10.0;
-        percentSilver = Math.round((silver / totalSubs * 100) * 10) / 10.0;
-        percentGold = Math.round((gold / totalSubs * 100) * 10) / 10.0;
-        totalCost = totalCost / totalSubs / 100;
-        aveCost = Math.round((totalCost) * 100) / 100.0;
+        return -1;
     }
     
     /**
@@ -234,11 +319,8 @@ public class Summary {
         for(String month: monthOrder) {
             summary[8] = summary[8] + (String.format("%-5s", month));
         }
-        for(String month: monthOrder) {
-            if(monthSubs.containsKey(month)) {
-                summary[9] = summary[9] + (String.format("%-5s", 
-                        monthSubs.get(month)));
-            }
+        for(int count: monthSubs) {
+            summary[9] = summary[9] + (String.format("%-5s", count));
         }
         StringBuilder str = new StringBuilder();
         
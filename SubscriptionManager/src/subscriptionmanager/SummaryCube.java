@@ -0,0 +1,433 @@
+
+package subscriptionmanager;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The SummaryCube class holds the number of subscriptions and the sum of their
+ * total costs for every combination of month, package type, duration and
+ * payment type, the figures every summary is calculated from.
+ * The cube is filled in a single pass over a SubscriptionStore, each row adds
+ * one to a count and its cost to a sum in arrays indexed by the year and month
+ * of the subscription then by the ordinals of its package type, duration and
+ * payment type. The summary of all subscriptions, or of any month, is then
+ * found by adding up the cells of the cube rather than scanning the rows
+ * again, so summarising each month of the year costs one scan rather than
+ * twelve.
+ * <p>
+ * The cube remembers how many rows of the store it has added, so update() only
+ * adds rows appended to the store since the last update.
+ * <p>
+ * Every figure in the cube is a sum, so two cubes of different rows can be
+ * merged into the cube of all of the rows. In parallel mode update() splits
+ * the rows into ranges on a fork-join pool, each range is added to a cube of
+ * its own by one thread and the cubes are merged as the ranges are joined.
+ * The mode is sequential unless the subscriptionmanager.parallel system
+ * property is true or setParallel() is called, so the two can be compared.
+ *
+ * @see Summary
+ * @see MonthSummary
+ */
+public class SummaryCube {
+
+    /**
+     * Value passed to the query methods to include every value of that
+     * dimension.
+     */
+    public static final int ALL = -1;
+
+    private static final int PACKAGES = PackageType.values().length;
+    private static final int DURATIONS = Duration.values().length;
+    private static final int PAYMENTS = PaymentType.values().length;
+    private static final int CELLS = PACKAGES * DURATIONS * PAYMENTS;
+    private static final int SPLIT_ROWS = 1 << 16;
+    private static final int MAX_MONTHS = 12 * 10000;
+
+    private int firstYearMonth;
+    private int months;
+    private long[] counts = new long[0];
+    private long[] costs = new long[0];
+
+    private SubscriptionStore source;
+    private int rows;
+    private boolean parallel = Boolean.getBoolean(
+            "subscriptionmanager.parallel");
+
+    /**
+     * Sets whether update() adds the rows on a single thread or in parallel
+     * on the common fork-join pool.
+     *
+     * @param parallel boolean true to add the rows in parallel.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Adds the rows appended to a store since the last update, if the store is
+     * not the store of the last update the cube is cleared and every row of
+     * the store is added.
+     *
+     * @param store SubscriptionStore to summarise.
+     */
+    public void update(SubscriptionStore store) {
+        long start = Metrics.start();
+        PipelineEvents.Aggregation event = new PipelineEvents.Aggregation();
+        event.begin();
+        if(store != source) {
+            clear();
+            source = store;
+        }
+        int size = store.size();
+        if(parallel && size - rows > SPLIT_ROWS) {
+            merge(ForkJoinPool.commonPool().invoke(
+                    new AggregateTask(store, rows, size)));
+        } else {
+            add(store, rows, size);
+        }
+        event.rows = size - rows;
+        event.storeRows = size;
+        event.parallel = parallel;
+        event.commit();
+        rows = size;
+        Metrics.time(Metrics.AGGREGATION, start);
+    }
+
+    /**
+     * Adds the rows of a store between two indexes.
+     *
+     * @param store SubscriptionStore containing the rows.
+     * @param from int index of the first row to add.
+     * @param to int index after the last row to add.
+     */
+    public void add(SubscriptionStore store, int from, int to) {
+
+        int[] days = store.getEpochDays();
+        byte[] packages = store.getPackages();
+        byte[] durations = store.getDurations();
+        byte[] payments = store.getPayments();
+        int[] totalCosts = store.getCosts();
+
+        int lastDay = Integer.MIN_VALUE;
+        int monthOffset = 0;
+        for(int i = from; i < to; i++) {
+            if(days[i] != lastDay) {
+                lastDay = days[i];
+                monthOffset = monthOffset(EpochDays.yearMonth(lastDay));
+            }
+            int cell = monthOffset + cell(packages[i], durations[i],
+                    payments[i]);
+            counts[cell]++;
+            costs[cell] += totalCosts[i];
+        }
+    }
+
+    /**
+     * Adds the rows of a store listed in an array between two positions, i.e.
+     * the rows of a date range found by the DateIndex.
+     *
+     * @param store SubscriptionStore containing the rows.
+     * @param rowIds int[] of row indexes.
+     * @param from int position in rowIds of the first row to add.
+     * @param to int position in rowIds after the last row to add.
+     * @see DateIndex
+     */
+    public void add(SubscriptionStore store, int[] rowIds, int from, int to) {
+
+        int[] days = store.getEpochDays();
+        byte[] packages = store.getPackages();
+        byte[] durations = store.getDurations();
+        byte[] payments = store.getPayments();
+        int[] totalCosts = store.getCosts();
+
+        int lastDay = Integer.MIN_VALUE;
+        int monthOffset = 0;
+        for(int p = from; p < to; p++) {
+            int i = rowIds[p];
+            if(days[i] != lastDay) {
+                lastDay = days[i];
+                monthOffset = monthOffset(EpochDays.yearMonth(lastDay));
+            }
+            int cell = monthOffset + cell(packages[i], durations[i],
+                    payments[i]);
+            counts[cell]++;
+            costs[cell] += totalCosts[i];
+        }
+    }
+
+    /**
+     * Adds a single subscription.
+     *
+     * @param epochDay int date of the subscription.
+     * @param packageType int ordinal of the package type.
+     * @param duration int ordinal of the duration.
+     * @param paymentType int ordinal of the payment type.
+     * @param totalCost int total cost in pence.
+     */
+    public void add(int epochDay, int packageType, int duration,
+            int paymentType, int totalCost) {
+        int cell = monthOffset(EpochDays.yearMonth(epochDay))
+                + cell(packageType, duration, paymentType);
+        counts[cell]++;
+        costs[cell] += totalCost;
+    }
+
+    /**
+     * Adds the counts and costs of another cube to this cube.
+     *
+     * @param other SummaryCube to merge.
+     */
+    public void merge(SummaryCube other) {
+        for(int m = 0; m < other.months; m++) {
+            int offset = monthOffset(other.firstYearMonth + m);
+            for(int c = 0; c < CELLS; c++) {
+                counts[offset + c] += other.counts[m * CELLS + c];
+                costs[offset + c] += other.costs[m * CELLS + c];
+            }
+        }
+    }
+
+    /**
+     * Writes the counts and costs of the cube, so it can be read back by
+     * read() without the subscriptions it was made from.
+     *
+     * @param out DataOutput the cube is written to.
+     * @throws IOException if the cube can not be written.
+     * @see AggregateCache
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(CELLS);
+        out.writeInt(firstYearMonth);
+        out.writeInt(months);
+        for(int i = 0; i < months * CELLS; i++) {
+            out.writeLong(counts[i]);
+            out.writeLong(costs[i]);
+        }
+    }
+
+    /**
+     * Reads a cube written by write().
+     *
+     * @param in DataInput the cube is read from.
+     * @return SummaryCube of the counts and costs read.
+     * @throws IOException if the cube can not be read or was written with a
+     *     different number of cells.
+     */
+    public static SummaryCube read(DataInput in) throws IOException {
+        int cells = in.readInt();
+        int first = in.readInt();
+        int months = in.readInt();
+        if(cells != CELLS || months < 0 || months > MAX_MONTHS) {
+            throw new IOException("Invalid summary cube");
+        }
+        SummaryCube cube = new SummaryCube();
+        cube.firstYearMonth = first;
+        cube.months = months;
+        cube.counts = new long[months * CELLS];
+        cube.costs = new long[months * CELLS];
+        for(int i = 0; i < months * CELLS; i++) {
+            cube.counts[i] = in.readLong();
+            cube.costs[i] = in.readLong();
+        }
+        return cube;
+    }
+
+    /**
+     * Removes every subscription from the cube.
+     */
+    public void clear() {
+        months = 0;
+        counts = new long[0];
+        costs = new long[0];
+        source = null;
+        rows = 0;
+    }
+
+    /**
+     * Gets the number of subscriptions matching the given values, ALL can be
+     * passed for any value to include every value of it.
+     *
+     * @param yearMonth int year * 12 + month index, or ALL.
+     * @param monthIndex int month of the year from 0 to 11, or ALL.
+     * @param packageType int package type ordinal, or ALL.
+     * @param duration int duration ordinal, or ALL.
+     * @param paymentType int payment type ordinal, or ALL.
+     * @return long number of subscriptions.
+     * @see EpochDays#yearMonth(int)
+     */
+    public long count(int yearMonth, int monthIndex, int packageType,
+            int duration, int paymentType) {
+        return sum(counts, yearMonth, monthIndex, packageType, duration,
+                paymentType);
+    }
+
+    /**
+     * Gets the sum of the total costs of the subscriptions matching the given
+     * values, ALL can be passed for any value to include every value of it.
+     *
+     * @param yearMonth int year * 12 + month index, or ALL.
+     * @param monthIndex int month of the year from 0 to 11, or ALL.
+     * @param packageType int package type ordinal, or ALL.
+     * @param duration int duration ordinal, or ALL.
+     * @param paymentType int payment type ordinal, or ALL.
+     * @return long total cost in pence.
+     */
+    public long cost(int yearMonth, int monthIndex, int packageType,
+            int duration, int paymentType) {
+        return sum(costs, yearMonth, monthIndex, packageType, duration,
+                paymentType);
+    }
+
+    public long getCount() {
+        return count(ALL, ALL, ALL, ALL, ALL);
+    }
+
+    public long getCost() {
+        return cost(ALL, ALL, ALL, ALL, ALL);
+    }
+
+    public long getMonthCount(int monthIndex) {
+        return count(ALL, monthIndex, ALL, ALL, ALL);
+    }
+
+    public long getMonthCost(int monthIndex) {
+        return cost(ALL, monthIndex, ALL, ALL, ALL);
+    }
+
+    public long getPackageCount(int monthIndex, PackageType packageType) {
+        return count(ALL, monthIndex, packageType.ordinal(), ALL, ALL);
+    }
+
+    public long getDurationCount(int monthIndex, Duration duration) {
+        return count(ALL, monthIndex, ALL, duration.ordinal(), ALL);
+    }
+
+    public long getPaymentCount(int monthIndex, PaymentType paymentType) {
+        return count(ALL, monthIndex, ALL, ALL, paymentType.ordinal());
+    }
+
+    /**
+     * Gets the first year and month with any subscriptions.
+     *
+     * @return int year * 12 + month index, or ALL if the cube is empty.
+     */
+    public int getFirstYearMonth() {
+        return months == 0 ? ALL : firstYearMonth;
+    }
+
+    /**
+     * Gets the last year and month with any subscriptions.
+     *
+     * @return int year * 12 + month index, or ALL if the cube is empty.
+     */
+    public int getLastYearMonth() {
+        return months == 0 ? ALL : firstYearMonth + months - 1;
+    }
+
+    private long sum(long[] values, int yearMonth, int monthIndex,
+            int packageType, int duration, int paymentType) {
+        long total = 0;
+        for(int m = 0; m < months; m++) {
+            int ym = firstYearMonth + m;
+            if(yearMonth != ALL && ym != yearMonth
+                    || monthIndex != ALL && Math.floorMod(ym, 12)
+                    != monthIndex) {
+                continue;
+            }
+            for(int p = 0; p < PACKAGES; p++) {
+                if(packageType != ALL && p != packageType) {
+                    continue;
+                }
+                for(int d = 0; d < DURATIONS; d++) {
+                    if(duration != ALL && d != duration) {
+                        continue;
+                    }
+                    for(int t = 0; t < PAYMENTS; t++) {
+                        if(paymentType == ALL || t == paymentType) {
+                            total += values[m * CELLS + cell(p, d, t)];
+                        }
+                    }
+                }
+            }
+        }
+        return total;
+    }
+
+    private static int cell(int packageType, int duration, int paymentType) {
+        return (packageType * DURATIONS + duration) * PAYMENTS + paymentType;
+    }
+
+    /**
+     * Gets the offset of the cells of a month in the arrays, growing the
+     * arrays if the month is outside of the months already held.
+     */
+    private int monthOffset(int yearMonth) {
+        if(months == 0) {
+            firstYearMonth = yearMonth;
+            months = 1;
+            counts = new long[CELLS];
+            costs = new long[CELLS];
+        } else if(yearMonth < firstYearMonth) {
+            int shift = firstYearMonth - yearMonth;
+            counts = shift(counts, shift);
+            costs = shift(costs, shift);
+            firstYearMonth = yearMonth;
+            months += shift;
+        } else if(yearMonth >= firstYearMonth + months) {
+            months = yearMonth - firstYearMonth + 1;
+            counts = Arrays.copyOf(counts, months * CELLS);
+            costs = Arrays.copyOf(costs, months * CELLS);
+        }
+        return (yearMonth - firstYearMonth) * CELLS;
+    }
+
+    private long[] shift(long[] values, int shift) {
+        long[] shifted = new long[(months + shift) * CELLS];
+        System.arraycopy(values, 0, shifted, shift * CELLS, months * CELLS);
+        return shifted;
+    }
+
+    /**
+     * Adds a range of rows to a new cube, splitting the range in half and
+     * merging the cubes of the halves while it is larger than SPLIT_ROWS.
+     */
+    private static final class AggregateTask extends RecursiveTask<SummaryCube> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SubscriptionStore store;
+        private final int from;
+        private final int to;
+
+        AggregateTask(SubscriptionStore store, int from, int to) {
+            this.store = store;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected SummaryCube compute() {
+            if(to - from <= SPLIT_ROWS) {
+                SummaryCube cube = new SummaryCube();
+                cube.add(store, from, to);
+                return cube;
+            }
+            int middle = (from + to) >>> 1;
+            AggregateTask left = new AggregateTask(store, from, middle);
+            left.fork();
+            SummaryCube right = new AggregateTask(store, middle, to).compute();
+            SummaryCube cube = left.join();
+            cube.merge(right);
+            return cube;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+
+package subscriptionmanager;
+
+/**
+ * The SummaryReport class holds the figures shown by the Summary and
+ * MonthSummary classes, read from a SummaryCube, so the same figures can be
+ * given without the console, i.e. by the SubscriptionServer.
+ * The figures are rounded in the same way as the summaries, the average price
+ * in pounds to two decimal places and the percentage of each package to one
+ * decimal place.
+ *
+ * @see Summary#calculateSummary()
+ * @see MonthSummary#calculateSummary()
+ */
+public class SummaryReport {
+
+    private final int yearMonth;
+    private final int monthIndex;
+    private final int totalSubs;
+    private final int aveSubs;
+    private final double aveCost;
+    private final double percentBronze;
+    private final double percentSilver;
+    private final double percentGold;
+    private final int[] monthSubs = new int[12];
+
+    /**
+     * The constructor reads the figures of the subscriptions matching a year
+     * and month from the cube.
+     *
+     * @param cube SummaryCube of the subscriptions.
+     * @param yearMonth int year * 12 + month index, or ALL.
+     * @param monthIndex int month of the year from 0 to 11, or ALL.
+     */
+    public SummaryReport(SummaryCube cube, int yearMonth, int monthIndex) {
+
+        this.yearMonth = yearMonth;
+        this.monthIndex = monthIndex;
+        totalSubs = (int) cube.count(yearMonth, monthIndex, SummaryCube.ALL,
+                SummaryCube.ALL, SummaryCube.ALL);
+        aveSubs = totalSubs / monthSubs.length;
+        for(int i = 0; i < monthSubs.length; i++) {
+            monthSubs[i] = (int) cube.count(yearMonth, i, SummaryCube.ALL,
+                    SummaryCube.ALL, SummaryCube.ALL);
+        }
+
+        double totalCost = cube.cost(yearMonth, monthIndex, SummaryCube.ALL,
+                SummaryCube.ALL, SummaryCube.ALL);
+        double bronze = packageCount(cube, PackageType.B);
+        double silver = packageCount(cube, PackageType.S);
+        double gold = packageCount(cube, PackageType.G);
+
+        percentBronze = Math.round((bronze / totalSubs * 100) * 10) / 10.0;
+        percentSilver = Math.round((silver / totalSubs * 100) * 10) / 10.0;
+        percentGold = Math.round((gold / totalSubs * 100) * 10) / 10.0;
+        totalCost = totalCost / totalSubs / 100;
+        aveCost = Math.round((totalCost) * 100) / 100.0;
+    }
+
+    /**
+     * Reads the figures of every subscription, as shown by the Summary class.
+     *
+     * @param cube SummaryCube of the subscriptions.
+     * @return SummaryReport of every subscription.
+     */
+    public static SummaryReport overall(SummaryCube cube) {
+        return new SummaryReport(cube, SummaryCube.ALL, SummaryCube.ALL);
+    }
+
+    /**
+     * Reads the figures of a month, as shown by the MonthSummary class.
+     *
+     * @param cube SummaryCube of the subscriptions.
+     * @param year int year, or 0 for the month of every year.
+     * @param monthIndex int month of the year from 0 to 11.
+     * @return SummaryReport of the month.
+     */
+    public static SummaryReport month(SummaryCube cube, int year,
+            int monthIndex) {
+        return new SummaryReport(cube, year == 0 ? SummaryCube.ALL
+                : year * 12 + monthIndex, monthIndex);
+    }
+
+    private long packageCount(SummaryCube cube, PackageType packageType) {
+        return cube.count(yearMonth, monthIndex, packageType.ordinal(),
+                SummaryCube.ALL, SummaryCube.ALL);
+    }
+
+    public int getTotalSubs() {
+        return totalSubs;
+    }
+
+    public int getAveSubs() {
+        return aveSubs;
+    }
+
+    public double getAveCost() {
+        return aveCost;
+    }
+
+    public double getPercentBronze() {
+        return percentBronze;
+    }
+
+    public double getPercentSilver() {
+        return percentSilver;
+    }
+
+    public double getPercentGold() {
+        return percentGold;
+    }
+
+    /**
+     * Gets the number of subscriptions in each month of the year.
+     *
+     * @return int[] of 12 counts, indexed by month.
+     */
+    public int[] getMonthSubs() {
+        return monthSubs.clone();
+    }
+
+    /**
+     * Writes the figures as text in the same form as the summaries, a line
+     * for each figure, and for an overall summary the months of the year
+     * followed by the count of each month.
+     *
+     * @param text StringBuilder the figures are appended to.
+     */
+    public void appendText(StringBuilder text) {
+        String newLine = System.lineSeparator();
+        if(monthIndex != SummaryCube.ALL) {
+            text.append("Month: ").append(EpochDays.SHORT_MONTHS[monthIndex]);
+            if(yearMonth != SummaryCube.ALL) {
+                text.append(' ').append(Math.floorDiv(yearMonth, 12));
+            }
+            text.append(newLine);
+        }
+        text.append("Total subscriptions: ").append(totalSubs).append(newLine);
+        if(monthIndex == SummaryCube.ALL) {
+            text.append("Average monthly subscriptions: ").append(aveSubs)
+                    .append(newLine);
+        }
+        text.append(String.format("Average monthly subscription price: "
+                + "\u00a3%.2f", aveCost)).append(newLine)
+                .append("Bronze: ").append(percentBronze).append(newLine)
+                .append("Silver: ").append(percentSilver).append(newLine)
+                .append("Gold: ").append(percentGold).append(newLine);
+        if(monthIndex == SummaryCube.ALL) {
+            for(String month: EpochDays.SHORT_MONTHS) {
+                text.append(String.format("%-5s", month));
+            }
+            text.append(newLine);
+            for(int count: monthSubs) {
+                text.append(String.format("%-5s", count));
+            }
+            text.append(newLine);
+        }
+    }
+
+    /**
+     * Writes the figures as a JSON object, a month summary includes the month
+     * and year, 0 for every year, and an overall summary the average monthly
+     * subscriptions and the count of each month.
+     *
+     * @param json StringBuilder the object is appended to.
+     */
+    public void appendJson(StringBuilder json) {
+        json.append('{');
+        if(monthIndex != SummaryCube.ALL) {
+            json.append("\"month\":");
+            Json.appendString(json, EpochDays.SHORT_MONTHS[monthIndex]);
+            json.append(",\"year\":").append(yearMonth == SummaryCube.ALL ? 0
+                    : Math.floorDiv(yearMonth, 12)).append(',');
+        }
+        json.append("\"totalSubscriptions\":").append(totalSubs);
+        if(monthIndex == SummaryCube.ALL) {
+            json.append(",\"averageMonthlySubscriptions\":").append(aveSubs);
+        }
+        json.append(",\"averageMonthlyPrice\":").append(Json.number(aveCost))
+                .append(",\"percentBronze\":").append(Json.number(
+                        percentBronze))
+                .append(",\"percentSilver\":").append(Json.number(
+                        percentSilver))
+                .append(",\"percentGold\":").append(Json.number(percentGold));
+        if(monthIndex == SummaryCube.ALL) {
+            json.append(",\"months\":{");
+            for(int i = 0; i < monthSubs.length; i++) {
+                if(i > 0) {
+                    json.append(',');
+                }
+                Json.appendString(json, EpochDays.SHORT_MONTHS[i]);
+                json.append(':').append(monthSubs[i]);
+            }
+            json.append('}');
+        }
+        json.append('}');
+    }
+}
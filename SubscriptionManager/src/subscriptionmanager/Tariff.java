@@ -0,0 +1,220 @@
+
+package subscriptionmanager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * The Tariff class is a set of base prices for every package and duration,
+ * the discounts of the payment types and the rules for discount codes, read
+ * from a tariff file rather than the values written in the BasePackage,
+ * Subscription and Validator classes, so they can be changed without changing
+ * the program.
+ * The tariff file is a properties file with the base monthly price in pence of
+ * each package and duration, named by the package and the term in months,
+ * the percentage discount of each payment type and the discount code rules,
+ * i.e.
+ * <pre>
+ * price.bronze.1=600
+ * price.bronze.3=500
+ * price.gold.12=699
+ * discount.one-off=5
+ * discount.monthly=0
+ * code.discount.min=1
+ * code.discount.max=9
+ * code.check.year=true
+ * code.check.half=true
+ * </pre>
+ * Every package and duration must have a price, the discounts and code rules
+ * are the standard values if they are not in the file. The PricingTable of the
+ * tariff is calculated when the tariff is created and a tariff can not be
+ * changed, so a tariff can be replaced while the program is running by
+ * swapping it for a new one.
+ *
+ * @see PricingTable
+ * @see CurrentTariff
+ * @see Repricer
+ */
+public final class Tariff {
+
+    /**
+     * The tariff of the prices set by the BasePackage class.
+     */
+    public static final Tariff STANDARD = new Tariff(PricingTable.STANDARD);
+
+    private static final int MIN_CODE_DISCOUNT = 1;
+    private static final int MAX_CODE_DISCOUNT = 9;
+
+    private final PricingTable pricing;
+    private final int minCodeDiscount;
+    private final int maxCodeDiscount;
+    private final boolean yearChecked;
+    private final boolean halfChecked;
+
+    /**
+     * The constructor takes the base price of each package and duration, with
+     * the standard payment discounts and code rules.
+     *
+     * @param basePrices int[][] base monthly prices in pence, indexed by the
+     *     package type ordinal then the duration ordinal.
+     * @throws IllegalArgumentException if a price is missing or negative.
+     */
+    public Tariff(int[][] basePrices) {
+        this(new PricingTable(basePrices));
+    }
+
+    /**
+     * Overloaded constructor taking every value of the tariff.
+     *
+     * @param basePrices int[][] base monthly prices in pence, indexed by the
+     *     package type ordinal then the duration ordinal.
+     * @param paymentDiscounts int[] percentage discount of each payment type,
+     *     indexed by the payment type ordinal.
+     * @param minCodeDiscount int lowest discount a code can give.
+     * @param maxCodeDiscount int highest discount a code can give, up to 9.
+     * @param yearChecked boolean true if a code must be for the current year.
+     * @param halfChecked boolean true if a code must be for the current half
+     *     of the year.
+     * @throws IllegalArgumentException if any value is invalid.
+     */
+    public Tariff(int[][] basePrices, int[] paymentDiscounts,
+            int minCodeDiscount, int maxCodeDiscount, boolean yearChecked,
+            boolean halfChecked) {
+        if(minCodeDiscount < 0 || maxCodeDiscount >= PricingTable.DISCOUNTS
+                || minCodeDiscount > maxCodeDiscount) {
+            throw new IllegalArgumentException("Code discounts must be from 0 "
+                    + "to " + (PricingTable.DISCOUNTS - 1));
+        }
+        this.pricing = new PricingTable(basePrices, paymentDiscounts);
+        this.minCodeDiscount = minCodeDiscount;
+        this.maxCodeDiscount = maxCodeDiscount;
+        this.yearChecked = yearChecked;
+        this.halfChecked = halfChecked;
+    }
+
+    private Tariff(PricingTable pricing) {
+        this.pricing = pricing;
+        this.minCodeDiscount = MIN_CODE_DISCOUNT;
+        this.maxCodeDiscount = MAX_CODE_DISCOUNT;
+        this.yearChecked = true;
+        this.halfChecked = true;
+    }
+
+    /**
+     * Reads a tariff file.
+     *
+     * @param file File of prices in the properties format.
+     * @return Tariff of the prices in the file.
+     * @throws IOException if the file can not be read.
+     * @throws IllegalArgumentException if a price is missing or invalid.
+     */
+    public static Tariff load(File file) throws IOException {
+        Properties properties = new Properties();
+        try(InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+        return fromProperties(properties);
+    }
+
+    /**
+     * Creates a tariff from a set of properties, any discount or code rule
+     * which is not set takes the value of the STANDARD tariff.
+     *
+     * @param properties Properties with a price for every package and
+     *     duration.
+     * @return Tariff of the prices.
+     * @throws IllegalArgumentException if a value is missing or invalid.
+     */
+    public static Tariff fromProperties(Properties properties) {
+
+        PackageType[] packages = PackageType.values();
+        Duration[] durations = Duration.values();
+        int[][] prices = new int[packages.length][durations.length];
+        for(PackageType packageType: packages) {
+            for(Duration duration: durations) {
+                prices[packageType.ordinal()][duration.ordinal()] = getInt(
+                        properties, priceKey(packageType, duration));
+            }
+        }
+        PaymentType[] payments = PaymentType.values();
+        int[] paymentDiscounts = new int[payments.length];
+        for(PaymentType paymentType: payments) {
+            String key = "discount." + paymentType.payment.toLowerCase();
+            paymentDiscounts[paymentType.ordinal()] = properties.containsKey(
+                    key) ? getInt(properties, key) : STANDARD.pricing
+                            .getPaymentDiscount(paymentType.ordinal());
+        }
+        return new Tariff(prices, paymentDiscounts,
+                getInt(properties, "code.discount.min", MIN_CODE_DISCOUNT),
+                getInt(properties, "code.discount.max", MAX_CODE_DISCOUNT),
+                Boolean.parseBoolean(properties.getProperty("code.check.year",
+                        "true").trim()),
+                Boolean.parseBoolean(properties.getProperty("code.check.half",
+                        "true").trim()));
+    }
+
+    /**
+     * Gets the name of the property holding the price of a package and
+     * duration.
+     *
+     * @param packageType PackageType of the price.
+     * @param duration Duration of the price.
+     * @return String property name, i.e. price.bronze.1.
+     */
+    public static String priceKey(PackageType packageType, Duration duration) {
+        return "price." + packageType.type.toLowerCase() + "." + duration.term;
+    }
+
+    public PricingTable getPricingTable() {
+        return pricing;
+    }
+
+    /**
+     * Gets the base monthly price of a package.
+     *
+     * @param packageType PackageType of the price.
+     * @param duration Duration of the price.
+     * @return int base price in pence.
+     */
+    public int getBasePrice(PackageType packageType, Duration duration) {
+        return pricing.getBasePrice(packageType.ordinal(), duration.ordinal());
+    }
+
+    public int getMinCodeDiscount() {
+        return minCodeDiscount;
+    }
+
+    public int getMaxCodeDiscount() {
+        return maxCodeDiscount;
+    }
+
+    public boolean isYearChecked() {
+        return yearChecked;
+    }
+
+    public boolean isHalfChecked() {
+        return halfChecked;
+    }
+
+    private static int getInt(Properties properties, String key,
+            int defaultValue) {
+        return properties.containsKey(key) ? getInt(properties, key)
+                : defaultValue;
+    }
+
+    private static int getInt(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if(value == null) {
+            throw new IllegalArgumentException("Missing " + key);
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch(NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + key + ": "
+                    + value);
+        }
+    }
+}
@@ -52,14 +52,7 @@ public class Validator {
                     break;
                 }
             }while(true);
-            first = first.toUpperCase();
-            first = first.substring(0, 1);
-
-            surname = surname.toLowerCase();
-            surname = surname.substring(0, 1).toUpperCase() 
-                    + surname.substring(1);
-
-            name = first + " " + surname;
+            name = formatName(first, surname);
             save = validateConfirmInput("\n" + name + " use this name (Y/N)? ");
         }while(save == false);
         
@@ -190,6 +183,17 @@ public class Validator {
      *     be applied to the subscription.
      */
     public static String validateCode() {
+        return validateCode(CurrentTariff.get());
+    }
+
+    /**
+     * Overloaded method to validate the code against the rules of a given
+     * tariff, so a subscription is checked and priced with the same tariff.
+     *
+     * @param tariff Tariff of the discount code rules.
+     * @return String the valid code in uppercase, or '-' if it is invalid.
+     */
+    public static String validateCode(Tariff tariff) {
         
         String code = null;
         
@@ -208,52 +212,80 @@ public class Validator {
             }while(true);
         code = code.toUpperCase();
 
+        String error = checkCode(code, LocalDate.now(), tariff);
+        if(error != null) {
+            System.out.println("\n" + error);
+            return "-";
+        } else {
+            System.out.println("\nCode accepted, " 
+                    + Character.getNumericValue(code.charAt(5))
+                    + "% discount applied!");
+            return code;
+        }
+    }
+    
+    /**
+     * Checks a discount code against the rules used by validateCode(), without
+     * requesting any input, so codes can also be checked when importing
+     * subscriptions from a file. The rules of the CurrentTariff are used.
+     * 
+     * @param code String discount code in uppercase.
+     * @param date LocalDate the code is being used on.
+     * @return String message explaining why the code is invalid, or null if
+     *     the code is valid.
+     * @see CurrentTariff
+     */
+    public static String checkCode(String code, LocalDate date) {
+        return checkCode(code, date, CurrentTariff.get());
+    }
+    
+    /**
+     * Checks a discount code against the rules of a tariff.
+     * The code must be two letters, the two digit year, E or L for the early
+     * or late half of the year and a discount amount, i.e. YM21L7. The tariff
+     * sets the range of the discount amount, from 1 to 9 as standard, and if
+     * the code must be for the year and half of the year of the given date.
+     * 
+     * @param code String discount code in uppercase.
+     * @param date LocalDate the code is being used on.
+     * @param tariff Tariff of the discount code rules.
+     * @return String message explaining why the code is invalid, or null if
+     *     the code is valid.
+     */
+    public static String checkCode(String code, LocalDate date, 
+            Tariff tariff) {
+
         String[] splitCode = code.split("");
         if(splitCode.length != 6) {
-            System.out.println("\nCode invalid, incorrect length!");
-            return "-";
+            return "Code invalid, incorrect length!";
         }
         
         if (!Character.isLetter(code.charAt(0))) {
-            System.out.println("\nCode invalid, first character must be a "
-                    + "letter!");
-            return "-";
+            return "Code invalid, first character must be a letter!";
         }
         else if (!Character.isLetter(code.charAt(1))) {
-            System.out.println("\nCode invalid, second character must be a "
-                    + "letter!");
-            return "-";
+            return "Code invalid, second character must be a letter!";
         }
         else if (!Character.isDigit(code.charAt(2))) {
-            System.out.println("\nCode invalid, third character must be a "
-                    + "number!");
-            return "-";
+            return "Code invalid, third character must be a number!";
         }
         else if (!Character.isDigit(code.charAt(3))) {
-            System.out.println("\nCode invalid, fourth character must be a "
-                    + "number!");
-            return "-";
+            return "Code invalid, fourth character must be a number!";
         }
         else if (!Character.isLetter(code.charAt(4))) {
-            System.out.println("\nCode invalid, fifth character must be a "
-                    + "letter!");
-            return "-";   
+            return "Code invalid, fifth character must be a letter!";
         }
         else if(!(Character.isDigit(splitCode[5].charAt(0)))){
-            System.out.println("\nCode invalid, sixth character must be a "
-                    + "number!");
-            return "-"; 
+            return "Code invalid, sixth character must be a number!";
         }
 
-        LocalDate date = LocalDate.now();
         int currentYear = date.getYear();
         
         String yearString = "20" + splitCode[2] + splitCode[3];
         int yearCode = Integer.valueOf(yearString);
         
-        if(yearCode != currentYear) {
-            System.out.println("\nCode invalid, incorrect year!");
-            return "-";
+        if(tariff.isYearChecked() && yearCode != currentYear) {
+            return "Code invalid, incorrect year!";
         }
 
         int currentMonth = date.getMonthValue();
@@ -266,18 +298,75 @@ public class Validator {
             currentMonthChar = 'L';
         }
 
-        if(!splitCode[4].equals(String.valueOf(currentMonthChar))) {
-            System.out.println("\nCode invalid, incorrect month code!");
-            return "-";
+        if(tariff.isHalfChecked() 
+                && !splitCode[4].equals(String.valueOf(currentMonthChar))) {
+            return "Code invalid, incorrect month code!";
         } 
         
-        if(Integer.valueOf(splitCode[5]) < 1 ) {
-            System.out.println("\nCode invalid, incorrect discount amount.");
-            return "-";
-        }else {
-            System.out.println("\nCode accepted, " 
-                    + Integer.valueOf(splitCode[5]) + "% discount applied!");
-            return code;
+        int amount = Integer.valueOf(splitCode[5]);
+        if(amount < tariff.getMinCodeDiscount() 
+                || amount > tariff.getMaxCodeDiscount()) {
+            return "Code invalid, incorrect discount amount.";
+        }
+        return null;
+    }
+    
+    /**
+     * Formats a customer name in the same way as validateName(), without
+     * requesting any input, so names can also be formatted when importing
+     * subscriptions from a file.
+     * 
+     * @param first String first name or initial of the customer.
+     * @param surname String surname of the customer.
+     * @return String name in the correct format, i.e. J Smith, or null if
+     *     either part is blank.
+     */
+    public static String formatName(String first, String surname) {
+        
+        first = first.replace(".", "").replace(",", "").trim();
+        surname = surname.replace(".", "").replace(",", "").trim();
+        if(first.isEmpty() || surname.isEmpty()) {
+            return null;
         }
+        first = first.toUpperCase();
+        first = first.substring(0, 1);
+
+        surname = surname.toLowerCase();
+        surname = surname.substring(0, 1).toUpperCase() 
+                + surname.substring(1);
+
+        return first + " " + surname;
+    }
+    
+    /**
+     * Requests a filename from the user, the filename cannot be blank.
+     * 
+     * @param prompt message to the user explaining which file is required.
+     * @return String filename entered by the user.
+     */
+    public static String validateFilename(String prompt) {
+        
+        String filename;
+        do {
+            System.out.print(prompt);
+            filename = scan.nextLine().trim();
+            if(filename.isEmpty()) {
+                System.out.println("\nInvalid entry, cannot be empty!");
+            }
+        } while(filename.isEmpty());
+        return filename;
+    }
+    
+    /**
+     * Requests a line of text from the user, i.e. a search term, which may
+     * be blank. The line is read by the same Scanner as every other input, so
+     * no input typed ahead is lost to a second Scanner.
+     * 
+     * @param prompt message to the user explaining what to enter.
+     * @return String line entered by the user.
+     */
+    public static String readLine(String prompt) {
+        System.out.print(prompt);
+        return scan.nextLine();
     }
 }
@@ -0,0 +1,127 @@
+package subscriptionmanager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The AggregateCacheTest class checks the SummaryCube loaded through the
+ * AggregateCache is the same as the cube of every row of the file, when the
+ * file is first summarised, unchanged, appended to and rewritten.
+ */
+public class AggregateCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final PrintStream messages = new PrintStream(
+            new ByteArrayOutputStream());
+
+    @Test
+    public void firstLoadSummarisesEveryRow() throws Exception {
+        File file = folder.newFile("subs.txt");
+        SubscriptionFiles.append(file, 0, 1000);
+
+        assertSameCube(cubeOf(file), AggregateCache.load(file, messages));
+        assertTrue(AggregateCache.cacheFile(file).isFile());
+    }
+
+    @Test
+    public void unchangedFileIsLoadedFromTheCache() throws Exception {
+        File file = folder.newFile("subs.txt");
+        SubscriptionFiles.append(file, 0, 6000);
+        SummaryCube first = AggregateCache.load(file, messages);
+
+        // Change a row past the sampled head and tail without changing the
+        // size or time, so only the cache can give the old cube.
+        long modified = file.lastModified();
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long middle = raf.length() / 2;
+            raf.seek(middle);
+            while(raf.read() != '\n') {
+                middle++;
+            }
+            raf.seek(middle + 1 + "01-Jan-2020\t".length());
+            int packageType = raf.read();
+            raf.seek(raf.getFilePointer() - 1);
+            raf.write(packageType == 'G' ? 'B' : 'G');
+        }
+        file.setLastModified(modified);
+
+        assertSameCube(first, AggregateCache.load(file, messages));
+    }
+
+    @Test
+    public void appendedLinesAreAddedToTheCachedCube() throws Exception {
+        File file = folder.newFile("subs.txt");
+        SubscriptionFiles.append(file, 0, 1000);
+        AggregateCache.load(file, messages);
+        SubscriptionFiles.append(file, 1000, 37);
+
+        assertSameCube(cubeOf(file), AggregateCache.load(file, messages));
+        SubscriptionFiles.append(file, 1037, 1);
+        assertSameCube(cubeOf(file), AggregateCache.load(file, messages));
+        assertEquals(1038, AggregateCache.load(file, messages).getCount());
+    }
+
+    @Test
+    public void rewrittenFileIsSummarisedAgain() throws Exception {
+        File file = folder.newFile("subs.txt");
+        SubscriptionFiles.append(file, 0, 1000);
+        AggregateCache.load(file, messages);
+        assertTrue(file.delete());
+        SubscriptionFiles.append(file, 500, 1200);
+
+        assertSameCube(cubeOf(file), AggregateCache.load(file, messages));
+    }
+
+    @Test
+    public void damagedCacheIsIgnored() throws Exception {
+        File file = folder.newFile("subs.txt");
+        SubscriptionFiles.append(file, 0, 100);
+        SubscriptionFiles.append(AggregateCache.cacheFile(file), 0, 1);
+
+        assertSameCube(cubeOf(file), AggregateCache.load(file, messages));
+    }
+
+    private static SummaryCube cubeOf(File file) throws Exception {
+        SummaryCube cube = new SummaryCube();
+        cube.update(SubscriptionFiles.parse(file));
+        return cube;
+    }
+
+    private static void assertSameCube(SummaryCube expected,
+            SummaryCube actual) {
+        assertEquals(expected.getCount(), actual.getCount());
+        assertEquals(expected.getCost(), actual.getCost());
+        assertEquals(expected.getFirstYearMonth(),
+                actual.getFirstYearMonth());
+        assertEquals(expected.getLastYearMonth(), actual.getLastYearMonth());
+        for(int yearMonth = expected.getFirstYearMonth();
+                yearMonth <= expected.getLastYearMonth(); yearMonth++) {
+            for(int p = 0; p < PackageType.values().length; p++) {
+                for(int d = 0; d < Duration.values().length; d++) {
+                    for(int pay = 0; pay < PaymentType.values().length;
+                            pay++) {
+                        String cell = yearMonth + " " + p + " " + d + " "
+                                + pay;
+                        assertEquals(cell, expected.count(yearMonth,
+                                SummaryCube.ALL, p, d, pay),
+                                actual.count(yearMonth, SummaryCube.ALL, p,
+                                        d, pay));
+                        assertEquals(cell, expected.cost(yearMonth,
+                                SummaryCube.ALL, p, d, pay),
+                                actual.cost(yearMonth, SummaryCube.ALL, p,
+                                        d, pay));
+                    }
+                }
+            }
+        }
+    }
+}
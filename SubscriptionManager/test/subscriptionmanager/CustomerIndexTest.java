@@ -0,0 +1,98 @@
+package subscriptionmanager;
+
+import java.util.Date;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * The CustomerIndexTest class checks the results of a CustomerIndex search
+ * and that the results kept in its SearchCache stay correct as subscriptions
+ * are appended to the store.
+ */
+public class CustomerIndexTest {
+
+    private SubscriptionStore store;
+    private CustomerIndex index;
+
+    @Before
+    public void setUp() {
+        store = new SubscriptionStore();
+        add("J Smith");
+        add("A Lee");
+        add("K Smithson");
+        add("J Smith");
+        index = new CustomerIndex();
+        index.update(store);
+    }
+
+    @Test
+    public void findsPartialMatchesIgnoringCase() {
+        assertArrayEquals(new int[] {0, 2, 3}, index.search("smith"));
+        assertArrayEquals(new int[] {0, 2, 3}, index.search("Sm"));
+        assertArrayEquals(new int[] {1}, index.search("lee"));
+        assertArrayEquals(new int[0], index.search("Jones"));
+    }
+
+    @Test
+    public void repeatedSearchIsAnsweredFromTheCache() {
+        int[] first = index.search("Smith");
+        long hits = index.getCache().getHits();
+        assertEquals(first, index.search("smith"));
+        assertEquals(hits + 1, index.getCache().getHits());
+    }
+
+    @Test
+    public void appendForMatchingCustomerInvalidatesResult() {
+        index.search("smith");
+        index.search("lee");
+        add("J Smith");
+        index.update(store);
+
+        assertNull(index.getCache().get("smith"));
+        assertNotNull(index.getCache().get("lee"));
+        assertArrayEquals(new int[] {0, 2, 3, 4}, index.search("smith"));
+        assertArrayEquals(new int[] {1}, index.search("lee"));
+    }
+
+    @Test
+    public void appendForNewCustomerIsFound() {
+        index.search("jones");
+        add("B Jones");
+        index.update(store);
+
+        assertArrayEquals(new int[] {4}, index.search("jones"));
+        assertArrayEquals(new int[] {4}, index.search("B J"));
+    }
+
+    @Test
+    public void largeAppendClearsTheCache() {
+        index.search("lee");
+        for(int i = 0; i < 300; i++) {
+            add("C Brown");
+        }
+        index.update(store);
+
+        assertEquals(0, index.getCache().size());
+        assertEquals(300, index.search("brown").length);
+    }
+
+    @Test
+    public void newStoreRebuildsTheIndex() {
+        index.search("smith");
+        store = new SubscriptionStore();
+        add("A Lee");
+        index.update(store);
+
+        assertArrayEquals(new int[0], index.search("smith"));
+        assertArrayEquals(new int[] {0}, index.search("lee"));
+    }
+
+    private void add(String customer) {
+        store.add(new Subscription(new Date(0), PackageType.B, Duration.ONE,
+                "-", PaymentType.M, 600, customer));
+    }
+}
@@ -0,0 +1,64 @@
+package subscriptionmanager;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The PricingTableTest class checks every cost in the standard PricingTable
+ * against the formula Subscription.setTotalCost() used before the table, which
+ * took the base cost from a BasePackage and took off the discounts in turn.
+ */
+public class PricingTableTest {
+
+    @Test
+    public void standardTableMatchesBasePackageFormula() {
+        for(PackageType packageType: PackageType.values()) {
+            for(Duration subLength: Duration.values()) {
+                for(int discount = 0; discount < PricingTable.DISCOUNTS;
+                        discount++) {
+                    for(PaymentType paymentType: PaymentType.values()) {
+                        String cell = packageType + " " + subLength + " "
+                                + discount + " " + paymentType;
+                        int expected = formula(packageType, subLength,
+                                discount, paymentType);
+                        assertEquals(cell, expected, PricingTable.STANDARD
+                                .price(packageType, subLength, discount,
+                                        paymentType));
+                        assertEquals(cell, expected, Subscription
+                                .calculateCost(packageType, subLength,
+                                        discount, paymentType,
+                                        Tariff.STANDARD));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The total cost as calculated by setTotalCost() before the PricingTable.
+     */
+    private static int formula(PackageType packageType, Duration subLength,
+            int discount, PaymentType paymentType) {
+        BasePackage basePackage = new BasePackage(subLength);
+        switch(packageType) {
+            case B:
+                basePackage.setBronzePackage();
+                break;
+            case S:
+                basePackage.setSilverPackage();
+                break;
+            default:
+                basePackage.setGoldPackage();
+        }
+        int baseCost = basePackage.getBaseCost();
+        double afterDiscount = baseCost;
+        if(discount != 0) {
+            afterDiscount = baseCost - (discount / 100.0) * baseCost;
+        }
+        if(paymentType == PaymentType.O) {
+            afterDiscount = afterDiscount - (5 / 100.0) * afterDiscount;
+            afterDiscount = afterDiscount * subLength.term;
+        }
+        return (int) Math.round(afterDiscount);
+    }
+}
@@ -0,0 +1,62 @@
+package subscriptionmanager;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * The SearchCacheTest class checks the SearchCache removes the results a new
+ * subscription changes and keeps within its budget.
+ */
+public class SearchCacheTest {
+
+    @Test
+    public void invalidateRemovesTermsContainedInTheName() {
+        SearchCache<String> cache = new SearchCache<>(1 << 20,
+                value -> value.length());
+        cache.put("smith", "a");
+        cache.put("j s", "b");
+        cache.put("lee", "c");
+        cache.get("lee");
+        cache.invalidate("j smith");
+
+        assertNull(cache.get("smith"));
+        assertNull(cache.get("j s"));
+        assertNotNull(cache.get("lee"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void oversizedResultIsNotCached() {
+        SearchCache<String> cache = new SearchCache<>(10000, 10,
+                value -> value.length());
+        cache.put("small", "a");
+        cache.put("large", new String(new char[2000]));
+
+        assertNotNull(cache.get("small"));
+        assertNull(cache.get("large"));
+    }
+
+    @Test
+    public void evictsToStayWithinBudget() {
+        SearchCache<String> cache = new SearchCache<>(2000, 100,
+                value -> 100);
+        for(int i = 0; i < 100; i++) {
+            cache.put("term" + i, "x");
+        }
+
+        assertEquals(true, cache.getWeight() <= cache.getBudget());
+        assertEquals(true, cache.getEvictions() > 0);
+        assertNotNull(cache.get("term99"));
+    }
+
+    @Test
+    public void zeroBudgetCachesNothing() {
+        SearchCache<String> cache = new SearchCache<>(0, value -> 1);
+        cache.put("smith", "a");
+
+        assertNull(cache.get("smith"));
+        assertEquals(0, cache.size());
+    }
+}
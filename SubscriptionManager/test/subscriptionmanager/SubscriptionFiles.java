@@ -0,0 +1,83 @@
+package subscriptionmanager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The SubscriptionFiles class writes subscription files in the tabbed format
+ * for the tests, and reads them back the way Summary reads a file without a
+ * snapshot.
+ */
+final class SubscriptionFiles {
+
+    private static final String[] MONTHS = {"Jan", "Feb", "Mar", "Apr", "May",
+        "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+    private static final String[] CUSTOMERS = {"J Smith", "A Lee",
+        "K Smithson", "B Jones", "C Brown"};
+
+    private SubscriptionFiles() {
+    }
+
+    /**
+     * Appends generated subscriptions to a file, the rows are made from their
+     * number so the same rows are written each time.
+     *
+     * @param file File to append to, created if it does not exist.
+     * @param first int number of the first row.
+     * @param count int number of rows to write.
+     * @throws IOException if the file can not be written.
+     */
+    static void append(File file, int first, int count) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for(int i = first; i < first + count; i++) {
+            PackageType packageType = PackageType.values()[i % 3];
+            Duration subLength = Duration.values()[i / 3 % 4];
+            PaymentType paymentType = PaymentType.values()[i / 12 % 2];
+            int discount = i % 7 == 0 ? i % 10 : 0;
+            text.append(String.format("%02d-%s-%d", 1 + i % 28,
+                    MONTHS[i / 5 % 12], 2020 + i / 60 % 3)).append('\t')
+                    .append(packageType).append('\t')
+                    .append(subLength.term).append('\t')
+                    .append(discount == 0 ? "-" : "AB21E" + discount)
+                    .append('\t').append(paymentType).append('\t')
+                    .append(Subscription.calculateCost(packageType,
+                            subLength, discount, paymentType,
+                            Tariff.STANDARD)).append('\t')
+                    .append(CUSTOMERS[i % CUSTOMERS.length]).append('\n');
+        }
+        try(OutputStream out = new FileOutputStream(file, true)) {
+            out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Parses every row of a file into a new store.
+     *
+     * @param file File of subscriptions.
+     * @return SubscriptionStore of the rows.
+     * @throws IOException if the file can not be read.
+     */
+    static SubscriptionStore parse(File file) throws IOException {
+        SubscriptionStore store = new SubscriptionStore();
+        try(InputStream in = new FileInputStream(file)) {
+            new SubscriptionParser().parse(in,
+                    new SubscriptionParser.RowHandler() {
+                @Override
+                public void row(SubscriptionParser.ParsedRow row) {
+                    store.add(row);
+                }
+
+                @Override
+                public void malformed(long line, int column, String reason) {
+                    throw new AssertionError("line " + line + ": " + reason);
+                }
+            });
+        }
+        return store;
+    }
+}
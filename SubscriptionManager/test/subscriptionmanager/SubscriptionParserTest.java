@@ -0,0 +1,154 @@
+package subscriptionmanager;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The SubscriptionParserTest class checks the SubscriptionParser reads the
+ * same subscriptions as the Subscription(String...) constructor the files
+ * were read with before, and reports the line and column of malformed rows.
+ */
+public class SubscriptionParserTest {
+
+    @Test
+    public void parsesSampleFilesLikeTheSubscriptionConstructor()
+            throws Exception {
+        for(String name: new String[] {"current.txt", "sample.txt"}) {
+            File file = new File(name);
+            List<Subscription> expected = new ArrayList<>();
+            try(BufferedReader reader = Files.newBufferedReader(
+                    file.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while((line = reader.readLine()) != null) {
+                    String[] subData = line.split("\t");
+                    expected.add(new Subscription(subData[0],
+                            PackageType.valueOf(subData[1]),
+                            Duration.getTerm(Integer.valueOf(subData[2])),
+                            subData[3], PaymentType.valueOf(subData[4]),
+                            Integer.valueOf(subData[5]), subData[6]));
+                }
+            }
+            Collected parsed = new Collected();
+            try(InputStream in = new FileInputStream(file)) {
+                assertEquals(expected.size(), new SubscriptionParser().parse(
+                        in, parsed));
+            }
+            assertEquals(name, 0, parsed.malformed.size());
+            assertEquals(name, expected.size(), parsed.rows.size());
+            for(int i = 0; i < expected.size(); i++) {
+                assertSame(name + " line " + (i + 1), expected.get(i),
+                        parsed.rows.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void reportsLineAndColumnOfMalformedRows() throws Exception {
+        Collected parsed = parse("01-Jan-2020\tG\t12\tYM20E5\tO\t6374\tJ Smith\n"
+                + "bad line\n"
+                + "01-Jan-2020\tX\t12\t-\tO\t6374\tJ Smith\n"
+                + "01-Jan-2020\tG\t7\t-\tO\t6374\tJ Smith\n"
+                + "01-Jan-2020\tG\t12\t-\tO\tabc\tJ Smith\n"
+                + "31-Dec-2021\tB\t1\t-\tM\t600\tA Lee\n");
+
+        assertEquals(2, parsed.rows.size());
+        assertEquals("J Smith", parsed.rows.get(0).getCustomer());
+        assertEquals("A Lee", parsed.rows.get(1).getCustomer());
+        assertEquals(4, parsed.malformed.size());
+        assertEquals("2:9", parsed.malformed.get(0));
+        assertEquals("3:13", parsed.malformed.get(1));
+        assertEquals("4:15", parsed.malformed.get(2));
+        assertEquals("5:22", parsed.malformed.get(3));
+    }
+
+    @Test
+    public void acceptsWindowsLineSeparators() throws Exception {
+        Collected parsed = parse("01-Jan-2020\tG\t12\tYM20E5\tO\t6374\tJ Smith"
+                + "\r\n31-Dec-2021\tB\t1\t-\tM\t600\tA Lee\r\n");
+
+        assertEquals(0, parsed.malformed.size());
+        assertEquals(2, parsed.rows.size());
+        assertEquals("J Smith", parsed.rows.get(0).getCustomer());
+        assertEquals(6374, parsed.rows.get(0).getTotalCost());
+        assertEquals("A Lee", parsed.rows.get(1).getCustomer());
+        assertEquals(PaymentType.M, parsed.rows.get(1).getPaymentType());
+    }
+
+    @Test
+    public void readsFinalLineWithoutSeparator() throws Exception {
+        Collected parsed = parse("01-Jan-2020\tG\t12\t-\tO\t6374\tJ Smith\n"
+                + "31-Dec-2021\tB\t1\t-\tM\t600\tA Lee");
+
+        assertEquals(2, parsed.rows.size());
+        assertEquals("A Lee", parsed.rows.get(1).getCustomer());
+        assertEquals(600, parsed.rows.get(1).getTotalCost());
+    }
+
+    @Test
+    public void numbersLinesFromTheFirstLineOfABuffer() {
+        byte[] bytes = ("bad line\n01-Jan-2020\tG\t12\t-\tO\t6374\tJ Smith\n")
+                .getBytes(StandardCharsets.UTF_8);
+        Collected parsed = new Collected();
+        long lines = new SubscriptionParser().parse(ByteBuffer.wrap(bytes), 0,
+                bytes.length, 41, parsed);
+
+        assertEquals(2, lines);
+        assertEquals("41:9", parsed.malformed.get(0));
+        assertEquals(1, parsed.rows.size());
+    }
+
+    private static Collected parse(String text) throws IOException {
+        Collected parsed = new Collected();
+        new SubscriptionParser().parse(new ByteArrayInputStream(
+                text.getBytes(StandardCharsets.UTF_8)), parsed);
+        return parsed;
+    }
+
+    private static void assertSame(String message, Subscription expected,
+            Subscription actual) {
+        assertEquals(message, expected.getSubDate(), actual.getSubDate());
+        assertEquals(message, expected.getPackageType(),
+                actual.getPackageType());
+        assertEquals(message, expected.getSubLength(),
+                actual.getSubLength());
+        assertEquals(message, expected.getDiscountCode(),
+                actual.getDiscountCode());
+        assertEquals(message, expected.getPaymentType(),
+                actual.getPaymentType());
+        assertEquals(message, expected.getTotalCost(),
+                actual.getTotalCost());
+        assertEquals(message, expected.getCustomer(), actual.getCustomer());
+    }
+
+    /**
+     * Keeps a copy of each row and the line and column of each malformed
+     * row.
+     */
+    private static final class Collected
+            implements SubscriptionParser.RowHandler {
+
+        private final List<Subscription> rows = new ArrayList<>();
+        private final List<String> malformed = new ArrayList<>();
+
+        @Override
+        public void row(SubscriptionParser.ParsedRow row) {
+            rows.add(row.toSubscription());
+        }
+
+        @Override
+        public void malformed(long line, int column, String reason) {
+            malformed.add(line + ":" + column);
+        }
+    }
+}
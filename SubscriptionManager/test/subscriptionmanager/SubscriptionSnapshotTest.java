@@ -0,0 +1,116 @@
+package subscriptionmanager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The SubscriptionSnapshotTest class checks a SubscriptionStore saved to a
+ * snapshot loads back with every column the same, and that a file appended to
+ * after its snapshot was saved is read again.
+ */
+public class SubscriptionSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void snapshotLoadsTheSameRows() throws Exception {
+        File file = folder.newFile("subs.txt");
+        SubscriptionFiles.append(file, 0, 500);
+        SubscriptionStore store = SubscriptionFiles.parse(file);
+        File snapshot = SubscriptionSnapshot.snapshotFile(file);
+        SubscriptionSnapshot.write(store, file.length(), file.lastModified(),
+                snapshot);
+
+        assertTrue(SubscriptionSnapshot.isCurrent(file));
+        assertSameRows(store, SubscriptionSnapshot.load(snapshot));
+    }
+
+    @Test
+    public void emptyStoreRoundTrips() throws Exception {
+        File snapshot = folder.newFile("empty.snap");
+        SubscriptionSnapshot.write(new SubscriptionStore(), 0, 0, snapshot);
+
+        assertEquals(0, SubscriptionSnapshot.load(snapshot).size());
+    }
+
+    @Test
+    public void loadedStoreCanBeAppendedTo() throws Exception {
+        File file = folder.newFile("subs.txt");
+        SubscriptionFiles.append(file, 0, 20);
+        File snapshot = SubscriptionSnapshot.snapshotFile(file);
+        SubscriptionSnapshot.write(SubscriptionFiles.parse(file),
+                file.length(), file.lastModified(), snapshot);
+        SubscriptionStore loaded = SubscriptionSnapshot.load(snapshot);
+        SubscriptionFiles.append(file, 20, 30);
+        for(Subscription sub: rows(SubscriptionFiles.parse(file), 20, 50)) {
+            loaded.add(sub);
+        }
+
+        assertSameRows(SubscriptionFiles.parse(file), loaded);
+    }
+
+    @Test
+    public void appendedFileIsReadAgain() throws Exception {
+        File file = folder.newFile("subs.txt");
+        SubscriptionFiles.append(file, 0, 100);
+        PrintStream messages = new PrintStream(new ByteArrayOutputStream());
+        assertEquals(100, Summary.loadFile(file, messages).size());
+        assertTrue(SubscriptionSnapshot.isCurrent(file));
+
+        SubscriptionFiles.append(file, 100, 7);
+        assertFalse(SubscriptionSnapshot.isCurrent(file));
+        SubscriptionStore store = Summary.loadFile(file, messages);
+
+        assertSameRows(SubscriptionFiles.parse(file), store);
+        assertTrue(SubscriptionSnapshot.isCurrent(file));
+        assertSameRows(store, Summary.loadFile(file, messages));
+    }
+
+    @Test
+    public void damagedSnapshotIsNotCurrent() throws Exception {
+        File file = folder.newFile("subs.txt");
+        SubscriptionFiles.append(file, 0, 10);
+        File snapshot = SubscriptionSnapshot.snapshotFile(file);
+        SubscriptionFiles.append(snapshot, 0, 1);
+
+        assertFalse(SubscriptionSnapshot.isCurrent(file));
+    }
+
+    private static Subscription[] rows(SubscriptionStore store, int from,
+            int to) {
+        Subscription[] rows = new Subscription[to - from];
+        for(int i = from; i < to; i++) {
+            rows[i - from] = store.get(i);
+        }
+        return rows;
+    }
+
+    private static void assertSameRows(SubscriptionStore expected,
+            SubscriptionStore actual) {
+        assertEquals(expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++) {
+            String row = "row " + i;
+            assertEquals(row, expected.getEpochDay(i), actual.getEpochDay(i));
+            assertEquals(row, expected.getPackageType(i),
+                    actual.getPackageType(i));
+            assertEquals(row, expected.getDuration(i),
+                    actual.getDuration(i));
+            assertEquals(row, expected.getPaymentType(i),
+                    actual.getPaymentType(i));
+            assertEquals(row, expected.getTotalCost(i),
+                    actual.getTotalCost(i));
+            assertEquals(row, expected.getCustomer(i),
+                    actual.getCustomer(i));
+            assertEquals(row, expected.getDiscountCode(i),
+                    actual.getDiscountCode(i));
+        }
+    }
+}